@@ -1,13 +1,57 @@
 package edu.ksu.cis.macr.simulator;
 
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import edu.ksu.cis.macr.simulator.batch.RunTermination;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.display.DisplayInformation;
+import edu.ksu.cis.macr.simulator.display.LogRecorder;
+import edu.ksu.cis.macr.simulator.display.SimulationRecorder;
 import edu.ksu.cis.macr.simulator.display.WumpiWorldDisplay;
 import edu.ksu.cis.macr.simulator.environment.Environment;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
 import edu.ksu.cis.macr.simulator.utils.XMLUtils;
 
 /**
  * Launcher class for the Wumpi World application.
+ * <p>
+ * The simulation runs headless, with no windows at all, when given the
+ * --headless flag, when the gaa.headless system property is true, or when
+ * there is no screen. Headless runs start straight away. Their state can be
+ * written to a file with --record=file or the gaa.record system property.
+ * <p>
+ * A headless run ends, and the JVM exits, once every agent has run out of
+ * assignments, or after the number of turns given by --max-turns=N or the
+ * gaa.maxTurns system property. Its results can be written to a file with
+ * --summary=file or the gaa.summary system property.
+ * <p>
+ * Every random choice the agents make comes from the run's seed, given by
+ * --seed=N or the gaa.seed system property. When a seed is given, the agents
+ * also take their turns one at a time in a fixed order, so the run can be
+ * repeated exactly. When no seed is given, one is picked and printed, and the
+ * agents act at the same time within each turn. Such a run can't be repeated
+ * exactly, even with the same seed, since it depends on how the agents'
+ * threads are scheduled.
+ * <p>
+ * When the gaa.metrics system property is true, the metrics described by
+ * {@link Metrics} are kept and dumped periodically.
  * 
  * @author Kyle Hill
  */
@@ -22,7 +66,7 @@ public final class GaaLauncher {
     /**
      * Get the Wumpi World display
      * 
-     * @return the display
+     * @return the display, null if running headless
      */
     public static WumpiWorldDisplay getDisplay() {
         return display;
@@ -37,15 +81,174 @@ public final class GaaLauncher {
         return gcmFile;
     }
 
+    /**
+     * Get the recorder the simulation's state is sent to
+     * 
+     * @return the recorder, null if there is none
+     */
+    public static SimulationRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Get a random number generator for one part of the simulation, such as
+     * an agent. It is seeded from the run's seed and the part's name, so the
+     * part makes the same choices each time the run is repeated, whatever
+     * order the parts are created or run in.
+     * 
+     * @param name
+     *            the part's name, which must be unique within the simulation
+     * @return the random number generator, which should only be used by the
+     *         part
+     */
+    public static Random getRandom(final String name) {
+        // Mix the name's hash into the seed, as SplitMix64 does, so that
+        // similar names give unrelated sequences
+        long z = seed + (name.hashCode() * 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    /**
+     * Get the seed every random choice in the simulation comes from
+     * 
+     * @return the seed
+     */
+    public static long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the size of the world being simulated, which every agent's map must
+     * match. This is {@value Map#MAX_X}x{@value Map#MAX_Y} until a scenario is
+     * loaded.
+     * 
+     * @return the maximum sizes for the world's X and Y coordinates
+     */
+    public static Dimension getWorldSize() {
+        return new Dimension(worldSize);
+    }
+
+    /**
+     * Get the size of the world described by a scenario. The size can be given
+     * by maxX and maxY attributes on the environment element, otherwise the
+     * world is just large enough to hold every coordinate in the scenario.
+     * 
+     * @param document
+     *            the scenario
+     * @return the maximum sizes for the world's X and Y coordinates
+     * @throws NumberFormatException
+     *             if a size or coordinate is not a number
+     */
+    public static Dimension getWorldSize(final Document document) {
+        final Element environment = document.getDocumentElement();
+        if (environment.hasAttribute(MAX_X) && environment.hasAttribute(MAX_Y)) {
+            return new Dimension(Integer.parseInt(environment.getAttribute(MAX_X).trim()), Integer.parseInt(environment.getAttribute(MAX_Y).trim()));
+        }
+
+        int maxX = 2;
+        int maxY = 2;
+        final NodeList elements = document.getElementsByTagName("*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            final NamedNodeMap attributes = elements.item(i).getAttributes();
+            for (int a = 0; a < attributes.getLength(); a++) {
+                final String name = attributes.item(a).getNodeName();
+                if (name.equals("x") || name.equals("x1") || name.equals("x2")) {
+                    maxX = Math.max(maxX, Integer.parseInt(attributes.item(a).getNodeValue().trim()) + 1);
+                } else if (name.equals("y") || name.equals("y1") || name.equals("y2")) {
+                    maxY = Math.max(maxY, Integer.parseInt(attributes.item(a).getNodeValue().trim()) + 1);
+                }
+            }
+        }
+        return new Dimension(maxX, maxY);
+    }
+
+    /**
+     * Is the simulation running without any windows?
+     * 
+     * @return true if running headless, false otherwise
+     */
+    public static boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Can the run be repeated exactly? It can when its seed was given, in
+     * which case agents take their turns one at a time in a fixed order.
+     * 
+     * @return true if the run can be repeated, false otherwise
+     */
+    public static boolean isRepeatable() {
+        return repeatable;
+    }
+
     /**
      * Starts up the Wumpi World application.
      * 
-     * @param args
-     *            the xml configuration to load the world.
+     * @param commandLine
+     *            the xml configuration to load the world, the goal capability
+     *            map, and any flags
      */
-    public static void main(final String[] args) {
+    public static void main(final String[] commandLine) {
         final Environment e = Environment.getEnvironment();
 
+        // Pull the flags out from among the file names
+        String recordFile = System.getProperty(RECORD_PROPERTY);
+        String summaryFile = System.getProperty(SUMMARY_PROPERTY);
+        String maxTurns = System.getProperty(MAX_TURNS_PROPERTY, "0");
+        String seedValue = System.getProperty(SEED_PROPERTY);
+        final List<String> files = new ArrayList<String>();
+        for (final String arg : commandLine) {
+            if (arg.equals(HEADLESS_FLAG)) {
+                headless = true;
+            } else if (arg.startsWith(RECORD_FLAG)) {
+                recordFile = arg.substring(RECORD_FLAG.length());
+            } else if (arg.startsWith(SUMMARY_FLAG)) {
+                summaryFile = arg.substring(SUMMARY_FLAG.length());
+            } else if (arg.startsWith(MAX_TURNS_FLAG)) {
+                maxTurns = arg.substring(MAX_TURNS_FLAG.length());
+            } else if (arg.startsWith(SEED_FLAG)) {
+                seedValue = arg.substring(SEED_FLAG.length());
+            } else {
+                files.add(arg);
+            }
+        }
+        headless |= Boolean.getBoolean(HEADLESS_PROPERTY) || GraphicsEnvironment.isHeadless();
+        final String[] args = files.toArray(new String[files.size()]);
+
+        // The seed must be known before any agents are created
+        if ((seedValue == null) || (seedValue.trim().length() == 0)) {
+            seed = new Random().nextLong();
+            System.out.println("Random seed: " + seed + " (picked at random, so agents act at the same time and the run can't be repeated exactly)");
+        } else {
+            try {
+                seed = Long.parseLong(seedValue.trim());
+            } catch (final NumberFormatException ex) {
+                System.err.println("Invalid random seed: " + seedValue);
+                System.exit(1);
+            }
+            repeatable = true;
+            System.out.println("Random seed: " + seed + " (agents take their turns in a fixed order)");
+        }
+        Metrics.startReporting();
+
+        if (recordFile != null) {
+            try {
+                final LogRecorder log = new LogRecorder(new File(recordFile), seed);
+                recorder = log;
+                Runtime.getRuntime().addShutdownHook(new Thread("Recorder Shutdown") {
+                    @Override
+                    public void run() {
+                        log.close();
+                    }
+                });
+            } catch (final IOException ex) {
+                System.err.println("Unable to write recording file: " + recordFile);
+                System.exit(1);
+            }
+        }
+
         if (args.length > 1) {
             gcmFile = new File(args[1]);
             if (!gcmFile.canRead()) {
@@ -56,8 +259,26 @@ public final class GaaLauncher {
             final String configString = args[0];
             final File configFile = new File(args[0]);
             if (configFile.canRead()) {
+                // Agents build their maps as they are loaded, so the maps must
+                // know the size of the world first
+                setWorldSize(configFile);
                 XMLUtils.loadFile(configString, e);
-                display = new WumpiWorldDisplay();
+                if (headless) {
+                    final Properties details = new Properties();
+                    details.setProperty(RunTermination.SCENARIO, configFile.getPath());
+                    details.setProperty(RunTermination.CONFIG, gcmFile.getPath());
+                    details.setProperty(RunTermination.SEED, Long.toString(seed));
+                    details.setProperty(RunTermination.REPEATABLE, Boolean.toString(repeatable));
+                    try {
+                        e.addTerminationCriteria(new RunTermination(e, Long.parseLong(maxTurns.trim()), (summaryFile == null) ? null : new File(summaryFile), details));
+                    } catch (final NumberFormatException ex) {
+                        System.err.println("Invalid maximum number of turns: " + maxTurns);
+                        System.exit(1);
+                    }
+                    startHeadless(e);
+                } else {
+                    display = new WumpiWorldDisplay();
+                }
             } else {
                 System.err.println("Unable to read environment configuration file: " + configFile.getPath());
             }
@@ -66,6 +287,136 @@ public final class GaaLauncher {
         }
     }
 
+    /**
+     * Set the size of the world to the one described by the given scenario,
+     * for agents to size their maps by. The launcher exits if the size can't
+     * be read, since every agent's map would otherwise be the wrong size.
+     * 
+     * @param file
+     *            the scenario file
+     */
+    private static void setWorldSize(final File file) {
+        try {
+            final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+            final Dimension size = getWorldSize(document);
+            Map.checkSize(size.width, size.height);
+            worldSize = size;
+        } catch (final NumberFormatException e) {
+            System.err.println("Invalid coordinate in environment configuration file: " + e.getMessage());
+            System.exit(1);
+        } catch (final IllegalArgumentException e) {
+            System.err.println("Unsupported world size in environment configuration file: " + e.getMessage());
+            System.exit(1);
+        } catch (final SAXException e) {
+            System.err.println("Unable to parse environment configuration file: " + e.getMessage());
+            System.exit(1);
+        } catch (final IOException e) {
+            System.err.println("Unable to read environment configuration file: " + file.getPath());
+            System.exit(1);
+        } catch (final ParserConfigurationException e) {
+            System.err.println("Unable to create an XML parser: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Start the simulation without a display. Changes the display would have
+     * drawn are still taken from the environment, so they don't pile up, and
+     * passed to the recorder if there is one.
+     * 
+     * @param e
+     *            the environment
+     */
+    private static void startHeadless(final Environment e) {
+        final Thread drain = new Thread("Headless Display Changes") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Collection<DisplayInformation> updated = e.getUpdatedDisplayChanges();
+                        final Collection<DisplayInformation> removed = e.getRemovedDisplayChanges();
+                        if (recorder != null) {
+                            recorder.objectsChanged(updated, removed);
+                        }
+                    }
+                } catch (final InterruptedException ex) {
+                    // The simulation is shutting down
+                }
+            }
+        };
+        drain.setDaemon(true);
+        drain.start();
+
+        // As the display's play button would
+        e.run();
+    }
+
+    /**
+     * The command line flag for running headless
+     */
+    private static final String HEADLESS_FLAG = "--headless";
+
+    /**
+     * The system property for running headless
+     */
+    private static final String HEADLESS_PROPERTY = "gaa.headless";
+
+    /**
+     * The command line flag giving the most turns a headless run may take,
+     * followed by the number
+     */
+    private static final String MAX_TURNS_FLAG = "--max-turns=";
+
+    /**
+     * The system property giving the most turns a headless run may take
+     */
+    private static final String MAX_TURNS_PROPERTY = "gaa.maxTurns";
+
+    /**
+     * Attribute of the environment element giving the maximum size for the
+     * world's X coordinate
+     */
+    private static final String MAX_X = "maxX";
+
+    /**
+     * Attribute of the environment element giving the maximum size for the
+     * world's Y coordinate
+     */
+    private static final String MAX_Y = "maxY";
+
+    /**
+     * The command line flag giving the file to record to, followed by the
+     * file name
+     */
+    private static final String RECORD_FLAG = "--record=";
+
+    /**
+     * The system property giving the file to record to
+     */
+    private static final String RECORD_PROPERTY = "gaa.record";
+
+    /**
+     * The command line flag giving the run's random seed, followed by the
+     * number
+     */
+    private static final String SEED_FLAG = "--seed=";
+
+    /**
+     * The system property giving the run's random seed
+     */
+    private static final String SEED_PROPERTY = "gaa.seed";
+
+    /**
+     * The command line flag giving the file to write a headless run's results
+     * to, followed by the file name
+     */
+    private static final String SUMMARY_FLAG = "--summary=";
+
+    /**
+     * The system property giving the file to write a headless run's results to
+     */
+    private static final String SUMMARY_PROPERTY = "gaa.summary";
+
     /**
      * The Wumpi World Display
      */
@@ -75,4 +426,30 @@ public final class GaaLauncher {
      * The GoalCapabilityMap file
      */
     private static File gcmFile = null;
+
+    /**
+     * true when running without any windows
+     */
+    private static volatile boolean headless = false;
+
+    /**
+     * The recorder the simulation's state is sent to, null if there is none
+     */
+    private static volatile SimulationRecorder recorder = null;
+
+    /**
+     * true when the run's seed was given, so agents take their turns in a
+     * fixed order
+     */
+    private static volatile boolean repeatable = false;
+
+    /**
+     * The seed every random choice in the simulation comes from
+     */
+    private static volatile long seed = 0;
+
+    /**
+     * The size of the world being simulated
+     */
+    private static volatile Dimension worldSize = new Dimension(Map.MAX_X, Map.MAX_Y);
 }
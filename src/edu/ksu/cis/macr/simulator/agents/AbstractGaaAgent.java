@@ -1,9 +1,7 @@
 package edu.ksu.cis.macr.simulator.agents;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.GridLayout;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,11 +11,10 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Random;
 
 import javax.imageio.ImageIO;
-import javax.swing.JButton;
 import javax.swing.JFrame;
-import javax.swing.JPanel;
 
 import org.w3c.dom.Element;
 
@@ -38,15 +35,16 @@ import edu.ksu.cis.macr.simulator.capabilities.AdvancedSensors;
 import edu.ksu.cis.macr.simulator.capabilities.CommunicationImpl;
 import edu.ksu.cis.macr.simulator.capabilities.LocationData;
 import edu.ksu.cis.macr.simulator.capabilities.OmacsInterface;
-import edu.ksu.cis.macr.simulator.capabilities.map.LocationComparator;
 import edu.ksu.cis.macr.simulator.capabilities.map.Map;
-import edu.ksu.cis.macr.simulator.capabilities.map.MapUtils;
-import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+import edu.ksu.cis.macr.simulator.capabilities.map.TravelDistances;
 import edu.ksu.cis.macr.simulator.capability.Failure;
 import edu.ksu.cis.macr.simulator.display.DisplayInformation;
+import edu.ksu.cis.macr.simulator.display.SimulationRecorder;
 import edu.ksu.cis.macr.simulator.environment.Environment;
 import edu.ksu.cis.macr.simulator.goals.GoalParameters;
 import edu.ksu.cis.macr.simulator.goals.SearchArea;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
+import edu.ksu.cis.macr.simulator.metrics.Timer;
 import edu.ksu.cis.macr.simulator.roles.AbstractGaaRole;
 import edu.ksu.cis.macr.simulator.roles.AreaSearcherRole;
 import edu.ksu.cis.macr.simulator.roles.interpreter.GoalCapabilityMap;
@@ -69,12 +67,12 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         /**
          * Compares one AssignmentTask with another to impose a total ordering
          * 
-         * @param loc
-         *            the location to compare all other locations within
-         *            AssignmentTasks to
+         * @param distances
+         *            the travel distances from our current location, to
+         *            compare the locations within AssignmentTasks by
          */
-        public AssignmentTaskComparator(final LocationData loc) {
-            locationComparator = new LocationComparator(loc);
+        public AssignmentTaskComparator(final TravelDistances distances) {
+            travelDistances = distances;
         }
 
         @Override
@@ -86,23 +84,23 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
             // highest priority
             int delta = r2.getPriority() - r1.getPriority();
 
-            // If the priority is equal, compare based on the goal's distance to
-            // our current location, if possible.
+            // If the priority is equal, compare based on how far we would
+            // have to walk to the goal, if possible.
             if (delta == 0) {
                 final LocationData l1 = getLocationFromAssignmentTask(a1);
                 final LocationData l2 = getLocationFromAssignmentTask(a2);
 
                 if ((l1 != null) && (l2 != null)) {
-                    delta = locationComparator.compare(l1, l2);
+                    delta = travelDistances.compare(l1, l2);
                 }
             }
             return delta;
         }
 
         /**
-         * The location to compare our goal locations to
+         * The travel distances from our current location
          */
-        private final LocationComparator locationComparator;
+        private final TravelDistances travelDistances;
     }
 
     /**
@@ -122,8 +120,17 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
     public AbstractGaaAgent(final Environment environment, final String identifier, final int x, final int y, final Element organization) {
         super(environment, identifier, x, y, organization);
 
-        // Construct the map
-        map = new Map();
+        // Construct the map, the size of the world
+        final Dimension size = GaaLauncher.getWorldSize();
+        map = new Map(size.width, size.height);
+
+        // Seed this agent's random choices from the run's seed, and take
+        // turns in a fixed order if the run is to be repeatable
+        random = GaaLauncher.getRandom(identifier);
+        if (GaaLauncher.isRepeatable()) {
+            TURN_ORDER.join(this);
+        }
+        iterationTime = Metrics.timer("agent." + identifier + ".iteration.time");
 
         // Create common capabilities
         mover = new AdvancedMovement(this, environment);
@@ -138,21 +145,14 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         setCommunicationCapability(communication);
 
         // Setup GUI
+        if (GaaLauncher.isHeadless()) {
+            view = null;
+            return;
+        }
         final JFrame frame = new JFrame(getUniqueIdentifier().toString());
         frame.setLayout(new BorderLayout());
-
-        final JPanel panel = new JPanel(new GridLayout(Map.MAX_Y, Map.MAX_X));
-        final Dimension size = new Dimension(13, 13);
-        for (int pY = Map.MAX_Y - 1; pY >= 0; pY--) {
-            for (int pX = 1; pX < Map.MAX_X; pX++) {
-                panels[pX][pY] = new JButton();
-                panels[pX][pY].setEnabled(false);
-                panels[pX][pY].setBackground(Color.lightGray);
-                panels[pX][pY].setPreferredSize(size);
-                panel.add(panels[pX][pY]);
-            }
-        }
-        frame.getContentPane().add(panel, BorderLayout.CENTER);
+        view = new MapView(map);
+        frame.getContentPane().add(view, BorderLayout.CENTER);
         frame.pack();
         frame.setVisible(true);
     }
@@ -171,6 +171,22 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         return agentIdentifier;
     }
 
+    /**
+     * Ends this agent's turn. In a repeatable run, the next agent in the turn
+     * order takes its turn while this one waits for the next turn, and then
+     * for every agent before it.
+     */
+    @Override
+    public final void endTurn() {
+        if (GaaLauncher.isRepeatable()) {
+            TURN_ORDER.endTurn(this);
+            super.endTurn();
+            TURN_ORDER.startTurn(this);
+        } else {
+            super.endTurn();
+        }
+    }
+
     @Override
     public final GoalCapabilityMap getGoalCapabilityMap() {
         // Extending classes must call setupGoalCapabilityMap() once all
@@ -207,6 +223,16 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         return omacsInterface;
     }
 
+    /**
+     * Get the random number generator all of this agent's random choices come
+     * from, which must only be used by this agent's thread
+     * 
+     * @return the random number generator
+     */
+    public final Random getRandom() {
+        return random;
+    }
+
     /**
      * Get this agent's sensors capability
      * 
@@ -216,6 +242,15 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         return sensors;
     }
 
+    /**
+     * Has this agent run out of assignments?
+     * 
+     * @return true if the agent is done, false otherwise
+     */
+    public final boolean isDone() {
+        return isDone;
+    }
+
     @Override
     public final Object receive() {
         return super.receive();
@@ -223,55 +258,70 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
 
     @Override
     public final void robotCode() {
-        // Get some initial sensor data
-        getSensors().readSensors();
-
-        while (isAlive() && !isDone) {
-            // Get new maps from other agents (free, no capabilities used)
-            getSensors().readOthersMaps();
-
-            // Remove any old, obsolete assignments
-            cleanupOldAssignmentTasks();
-
-            // Instantiate any new assignments
-            createNewAssignmentTasks();
-
-            // Get the highest priority assignment
-            final AssignmentTask task = getBestAssignmentTask();
-            if (task != null) {
-                if (!task.equals(currentTask)) {
-                    // If our current task has been interrupted, reset its plan
-                    // to null so that a new RLGM will be constructed the next
-                    // time it is executed
-                    if (currentTask != null) {
-                        currentTask.setPlan(null);
+        if (GaaLauncher.isRepeatable()) {
+            TURN_ORDER.startTurn(this);
+        }
+        try {
+            // Get some initial sensor data
+            getSensors().readSensors();
+
+            while (isAlive() && !isDone) {
+                final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+
+                // Get new maps from other agents (free, no capabilities used)
+                getSensors().readOthersMaps();
+
+                // Remove any old, obsolete assignments
+                cleanupOldAssignmentTasks();
+
+                // Instantiate any new assignments
+                createNewAssignmentTasks();
+
+                // Get the highest priority assignment
+                final AssignmentTask task = getBestAssignmentTask();
+                if (task != null) {
+                    if (!task.equals(currentTask)) {
+                        // If our current task has been interrupted, reset its plan
+                        // to null so that a new RLGM will be constructed the next
+                        // time it is executed
+                        if (currentTask != null) {
+                            currentTask.setPlan(null);
+                        }
+                        currentTask = task;
                     }
-                    currentTask = task;
-                }
 
-                // If this AssignmentTask's plan is null, set a plan for it
-                ExecutionPlan plan = task.getPlan();
-                if (plan == null) {
-                    final Assignment assignment = task.getAssignment();
-                    plan = ((RolePlan) assignment.getRole()).getPlan(assignment.getInstanceGoal());
-                    task.setPlan(plan);
-                }
+                    // If this AssignmentTask's plan is null, set a plan for it
+                    ExecutionPlan plan = task.getPlan();
+                    if (plan == null) {
+                        final Assignment assignment = task.getAssignment();
+                        plan = ((RolePlan) assignment.getRole()).getPlan(assignment.getInstanceGoal());
+                        task.setPlan(plan);
+                    }
 
-                if (!plan.isDone()) {
-                    // Redraw the GUI
-                    updateGui();
+                    if (!plan.isDone()) {
+                        // Redraw the GUI
+                        showProgress();
 
-                    // Execute this assignment task's plan
-                    plan.execute(this, task.getAssignment().getInstanceGoal());
+                        // Execute this assignment task's plan
+                        plan.execute(this, task.getAssignment().getInstanceGoal());
+                    } else {
+                        // Set the assignment's status now that we're done
+                        task.setStatus(((RoleInterpreter) plan).getGoalStatus());
+                    }
                 } else {
-                    // Set the assignment's status now that we're done
-                    task.setStatus(((RoleInterpreter) plan).getGoalStatus());
+                    isDone = true;
+
+                    // Redraw the GUI
+                    showProgress();
                 }
-            } else {
-                isDone = true;
 
-                // Redraw the GUI
-                updateGui();
+                if (Metrics.ENABLED) {
+                    iterationTime.stop(start);
+                }
+            }
+        } finally {
+            if (GaaLauncher.isRepeatable()) {
+                TURN_ORDER.leave(this);
             }
         }
 
@@ -282,6 +332,10 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
     @Override
     public final DisplayInformation toDisplayInformation() {
         final DisplayInformation displayObject = super.toDisplayInformation();
+        if (GaaLauncher.isHeadless()) {
+            // Nothing will draw the image
+            return displayObject;
+        }
         try {
             displayObject.image = ImageIO.read(new File("resources/Robot.png"));
         } catch (final IOException e) {
@@ -311,11 +365,12 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
                 }
             }
 
-            // If we found an existing AreaSearcher role, figure out how far it
-            // is from us
+            // If we found an existing AreaSearcher role, figure out how far we
+            // would have to walk to it
+            final TravelDistances distances = map.getTravelDistances(getMover().getCurrentLocation());
             int distToTarget = Integer.MAX_VALUE;
             if (targetLocation != null) {
-                distToTarget = MapUtils.getManhattanDistance(getMover().getCurrentLocation(), targetLocation);
+                distToTarget = distances.getDistance(targetLocation);
             } else {
                 i = null;
             }
@@ -323,7 +378,7 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
             // If we're closer to another location than our current search
             // target, drop our current AreaSearcher assignment and create a new
             // one for the closer location
-            if (MapUtils.getManhattanDistance(getMover().getCurrentLocation(), location) < distToTarget) {
+            if (distances.getDistance(location) < distToTarget) {
                 if (i != null) {
                     i.remove();
                 }
@@ -373,51 +428,24 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         }
 
         // Sort tasks by priority and proximity to the agent
-        Collections.sort(assignmentTasks, new AssignmentTaskComparator(getMover().getCurrentLocation()));
+        Collections.sort(assignmentTasks, new AssignmentTaskComparator(map.getTravelDistances(getMover().getCurrentLocation())));
 
         // Return the first (best) task
         return assignmentTasks.peek();
     }
 
     /**
-     * Update the GUI to reflect what this agent knows about its surroundings
+     * Show our progress: on the GUI, or when headless, to the recorder if
+     * there is one
      */
-    private final void updateGui() {
-        for (int x = 1; x < Map.MAX_X; x++) {
-            for (int y = 1; y < Map.MAX_Y; y++) {
-                final Tile tile = map.getTile(x, y);
-                if (tile.isClaimed()) {
-                    panels[x][y].setBackground(Color.green);
-                } else if (tile.hasObstruction()) {
-                    if (tile.isWumpi()) {
-                        panels[x][y].setBackground(Color.red);
-                    } else if (tile.isWall()) {
-                        panels[x][y].setBackground(Color.black);
-                    } else {
-                        panels[x][y].setBackground(Color.darkGray);
-                    }
-                } else {
-                    if (tile.hasSmell()) {
-                        panels[x][y].setBackground(Color.orange.darker());
-                    } else if (tile.hasBreeze()) {
-                        panels[x][y].setBackground(Color.orange);
-                    } else if (tile.hasGlitter()) {
-                        panels[x][y].setBackground(Color.yellow);
-                    } else if (tile.hasSearched()) {
-                        panels[x][y].setBackground(Color.white);
-                    } else {
-                        panels[x][y].setBackground(Color.lightGray);
-                    }
-                }
-            }
-        }
-
-        // Color our own tile
-        final LocationData location = mover.getCurrentLocation();
-        if (isDone) {
-            panels[location.getX()][location.getY()].setBackground(Color.magenta);
+    private final void showProgress() {
+        if (view != null) {
+            view.update(mover.getCurrentLocation(), isDone);
         } else {
-            panels[location.getX()][location.getY()].setBackground(Color.blue);
+            final SimulationRecorder recorder = GaaLauncher.getRecorder();
+            if (recorder != null) {
+                recorder.agentStepped(getUniqueIdentifier().toString(), mover.getCurrentLocation(), isDone);
+            }
         }
     }
 
@@ -441,6 +469,11 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
         return location;
     }
 
+    /**
+     * The order agents take their turns in, in a repeatable run
+     */
+    private static final TurnOrder TURN_ORDER = new TurnOrder(Environment.getEnvironment());
+
     /**
      * An agent identifier for assignment purposes
      */
@@ -474,7 +507,13 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
     /**
      * true when this agent no longer has any uncompleted AssignmentTasks
      */
-    private boolean isDone = false;
+    private volatile boolean isDone = false;
+
+    /**
+     * The time each pass of this agent's main loop takes, including any time
+     * spent waiting for the other agents to end the turn
+     */
+    private final Timer iterationTime;
 
     /**
      * The agent's map of the world
@@ -492,9 +531,9 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
     private final OmacsInterface omacsInterface;
 
     /**
-     * UI panels for visible display
+     * This agent's random number generator
      */
-    private final JButton[][] panels = new JButton[Map.MAX_X][Map.MAX_Y];
+    private final Random random;
 
     /**
      * The specification goal for searching an area
@@ -505,4 +544,9 @@ public abstract class AbstractGaaAgent extends AbstractAgent implements GaaAgent
      * The agent's advanced sensors capability
      */
     private final AdvancedSensors sensors;
+
+    /**
+     * The view of this agent's map, null when running headless
+     */
+    private final MapView view;
 }
@@ -1,6 +1,7 @@
 package edu.ksu.cis.macr.simulator.agents;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.w3c.dom.Element;
@@ -62,7 +63,8 @@ public class GoldDigger extends AbstractGaaAgent {
         super.createNewAssignmentTasks();
 
         // Find all gold locations on the map and generate goals for them
-        for (final LocationData loc : getMap().findGold(getMover().getCurrentLocation())) {
+        for (final Iterator<LocationData> i = getMap().nearestGold(getMover().getCurrentLocation()); i.hasNext();) {
+            final LocationData loc = i.next();
             getMap().getTile(loc).setClaimed();
 
             // Add a new assignment task to fetch the newly-found gold
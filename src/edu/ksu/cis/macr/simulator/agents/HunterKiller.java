@@ -1,6 +1,7 @@
 package edu.ksu.cis.macr.simulator.agents;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.w3c.dom.Element;
@@ -63,7 +64,8 @@ public class HunterKiller extends AbstractGaaAgent {
 
         if (getBazooka().hasAmmo()) {
             // Find all Wumpi locations on the map and generate goals for them
-            for (final LocationData loc : getMap().findWumpi(getMover().getCurrentLocation())) {
+            for (final Iterator<LocationData> i = getMap().nearestWumpi(getMover().getCurrentLocation()); i.hasNext();) {
+                final LocationData loc = i.next();
                 getMap().getTile(loc).setClaimed();
 
                 final Map<UniqueIdentifier, Object> paramMap = new HashMap<UniqueIdentifier, Object>();
@@ -0,0 +1,299 @@
+package edu.ksu.cis.macr.simulator.agents;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.JComponent;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.capabilities.map.DirtyRegion;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+
+/**
+ * Shows what an agent knows about the world, one colored cell per tile.
+ * <p>
+ * The agent's thread only works out colors: those of the tiles that changed
+ * since its last update, kept in an array of its own. It hands a copy of the
+ * array to the view through a queue that holds a single frame, and never
+ * waits. A new frame replaces one that hasn't been drawn yet, so the newest
+ * state is always the one shown. The arrays of drawn and replaced frames are
+ * reused for later frames, so updating allocates nothing once running.
+ * A single renderer thread shared by every view takes the waiting frames
+ * FRAMES_PER_SECOND times a second, copies them into each view's image, one
+ * pixel per tile, and asks Swing to repaint. So a slow display drops frames
+ * rather than slowing the agents down. Once an agent is done and its final
+ * frame has been drawn, the renderer stops visiting its view.
+ * 
+ * @author Kyle Hill
+ */
+final class MapView extends JComponent {
+    /**
+     * Constructs a new MapView, and starts rendering it as it changes
+     * 
+     * @param m
+     *            the map to show, which is only read when the view is updated
+     */
+    MapView(final Map m) {
+        map = m;
+        map.addMapListener(changes);
+
+        // Row y = 0 is shown at the bottom, and column x = 0 not at all
+        image = new BufferedImage(map.getMaxX() - 1, map.getMaxY(), BufferedImage.TYPE_INT_RGB);
+        colors = new int[image.getWidth() * image.getHeight()];
+        Arrays.fill(colors, Color.lightGray.getRGB());
+        pending.set(colors.clone());
+        setPreferredSize(new Dimension(image.getWidth() * CELL_SIZE, image.getHeight() * CELL_SIZE));
+
+        VIEWS.add(this);
+    }
+
+    /**
+     * Bring the view up to date with the map and the agent. This must be
+     * called from the thread that changes the map, and never waits on the
+     * display.
+     * 
+     * @param location
+     *            the agent's current location
+     * @param done
+     *            true if the agent has no more assignments, false otherwise
+     */
+    void update(final LocationData location, final boolean done) {
+        // Only color the tiles whose color could have changed. A tile's color
+        // depends on its own flags and those of its direct neighbors.
+        if (!changes.isEmpty()) {
+            for (int x = Math.max(1, changes.getMinX() - 1); x <= Math.min(map.getMaxX() - 1, changes.getMaxX() + 1); x++) {
+                for (int y = Math.max(1, changes.getMinY() - 1); y <= Math.min(map.getMaxY() - 1, changes.getMaxY() + 1); y++) {
+                    if (changes.intersects(x - 1, y - 1, x + 1, y + 1)) {
+                        setColor(x, y, colorOf(x, y));
+                    }
+                }
+            }
+            changes.clear();
+        }
+
+        // Color the tile the agent was shown on last time, then its own
+        if (agentLocation != null) {
+            setColor(agentLocation.getX(), agentLocation.getY(), colorOf(agentLocation.getX(), agentLocation.getY()));
+        }
+        setColor(location.getX(), location.getY(), done ? Color.magenta : Color.blue);
+        agentLocation = location;
+
+        // Hand over a copy of the colors, in an array the renderer has
+        // finished with if there is one. The newest frame always wins.
+        int[] frame = spare.getAndSet(null);
+        if (frame == null) {
+            frame = new int[colors.length];
+        }
+        System.arraycopy(colors, 0, frame, 0, colors.length);
+        final int[] replaced = pending.getAndSet(frame);
+        if (replaced != null) {
+            spare.set(replaced);
+        }
+
+        // Set only once the final frame is waiting, so that the renderer
+        // can't stop visiting the view before drawing it
+        if (done) {
+            isFinished = true;
+        }
+    }
+
+    @Override
+    protected void paintComponent(final Graphics g) {
+        // Every cell is drawn the same whole number of pixels in size
+        final int cellWidth = Math.max(1, getWidth() / image.getWidth());
+        final int cellHeight = Math.max(1, getHeight() / image.getHeight());
+        final int width = cellWidth * image.getWidth();
+        final int height = cellHeight * image.getHeight();
+        synchronized (image) {
+            g.drawImage(image, 0, 0, width, height, null);
+        }
+
+        // Outline the cells, if they are large enough to see
+        if ((cellWidth >= MIN_OUTLINED_CELL_SIZE) && (cellHeight >= MIN_OUTLINED_CELL_SIZE)) {
+            g.setColor(Color.gray);
+            for (int x = 0; x <= image.getWidth(); x++) {
+                g.drawLine(x * cellWidth, 0, x * cellWidth, height);
+            }
+            for (int y = 0; y <= image.getHeight(); y++) {
+                g.drawLine(0, y * cellHeight, width, y * cellHeight);
+            }
+        }
+    }
+
+    /**
+     * Draw the waiting frame, if there is one, and ask for the view to be
+     * repainted. This is only called from the renderer thread.
+     */
+    private void render() {
+        final int[] frame = pending.getAndSet(null);
+        if (frame != null) {
+            synchronized (image) {
+                image.setRGB(0, 0, image.getWidth(), image.getHeight(), frame, 0, image.getWidth());
+            }
+            spare.set(frame);
+            repaint();
+        }
+
+        // Nothing more will be shown once the agent's final frame is drawn
+        if (isFinished && (pending.get() == null)) {
+            VIEWS.remove(this);
+        }
+    }
+
+    /**
+     * Work out the color of a tile from what the agent knows about it
+     * 
+     * @param x
+     *            the tile's x-coordinate
+     * @param y
+     *            the tile's y-coordinate
+     * @return the color
+     */
+    private Color colorOf(final int x, final int y) {
+        final Tile tile = map.getTile(x, y);
+        if (tile.isClaimed()) {
+            return Color.green;
+        } else if (tile.hasObstruction()) {
+            if (tile.isWumpi()) {
+                return Color.red;
+            } else if (tile.isWall()) {
+                return Color.black;
+            } else {
+                return Color.darkGray;
+            }
+        } else if (tile.hasSmell()) {
+            return SMELL_COLOR;
+        } else if (tile.hasBreeze()) {
+            return Color.orange;
+        } else if (tile.hasGlitter()) {
+            return Color.yellow;
+        } else if (tile.hasSearched()) {
+            return Color.white;
+        } else {
+            return Color.lightGray;
+        }
+    }
+
+    /**
+     * Set the color of a tile's cell
+     * 
+     * @param x
+     *            the tile's x-coordinate
+     * @param y
+     *            the tile's y-coordinate
+     * @param color
+     *            the color
+     */
+    private void setColor(final int x, final int y, final Color color) {
+        colors[((image.getHeight() - 1 - y) * image.getWidth()) + (x - 1)] = color.getRGB();
+    }
+
+    /**
+     * The size of each tile's cell, in pixels, before the view is resized
+     */
+    private static final int CELL_SIZE = 13;
+
+    /**
+     * The most times a second the view is repainted
+     */
+    private static final int FRAMES_PER_SECOND = 20;
+
+    /**
+     * The smallest cells that are outlined, in pixels
+     */
+    private static final int MIN_OUTLINED_CELL_SIZE = 4;
+
+    /**
+     * The thread that draws every view's frames, at a fixed rate
+     */
+    private static final ScheduledExecutorService RENDERER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Map View Renderer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The color of tiles with a smell
+     */
+    private static final Color SMELL_COLOR = Color.orange.darker();
+
+    /**
+     * Every view whose agent may still hand it frames
+     */
+    private static final List<MapView> VIEWS = new CopyOnWriteArrayList<MapView>();
+
+    static {
+        RENDERER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (final MapView view : VIEWS) {
+                    view.render();
+                }
+            }
+        }, 0, 1000 / FRAMES_PER_SECOND, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The location the agent was last shown at
+     */
+    private LocationData agentLocation = null;
+
+    /**
+     * The tiles of the map that changed since the view was last updated
+     */
+    private final DirtyRegion changes = new DirtyRegion();
+
+    /**
+     * The color of each cell as of the agent's last update, row by row from
+     * the top, only used by the agent's thread
+     */
+    private final int[] colors;
+
+    /**
+     * Has the agent handed over its final frame?
+     */
+    private volatile boolean isFinished = false;
+
+    /**
+     * The image drawn on screen, one pixel per cell, only written by the
+     * renderer thread
+     */
+    private final BufferedImage image;
+
+    /**
+     * The map being shown
+     */
+    private final Map map;
+
+    /**
+     * The colors of the frame waiting to be drawn, row by row from the top,
+     * null if the last has been drawn. They are not modified once handed to
+     * the renderer.
+     */
+    private final AtomicReference<int[]> pending = new AtomicReference<int[]>();
+
+    /**
+     * An array of colors the renderer has finished with, for the agent to
+     * reuse for a later frame, null if there is none
+     */
+    private final AtomicReference<int[]> spare = new AtomicReference<int[]>();
+}
@@ -0,0 +1,134 @@
+package edu.ksu.cis.macr.simulator.agents;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import edu.ksu.cis.macr.organization.model.identifiers.UniqueIdentifier;
+import edu.ksu.cis.macr.simulator.environment.Environment;
+
+/**
+ * Makes agents take their turns one at a time, in order of their identifiers.
+ * Agents otherwise act at the same time within a turn, so which of two agents
+ * reaches a tile first, or whose message another agent reads first, depends on
+ * how their threads happen to be scheduled. With the order fixed, a run with
+ * the same seed repeats exactly.
+ * <p>
+ * An agent waits in {@link #startTurn(AbstractGaaAgent)} until every agent
+ * before it has called {@link #endTurn(AbstractGaaAgent)} for the turn, or has
+ * left. Agents the environment doesn't hold, because they could not be placed
+ * or have yet to join, are not waited for. Other agents, such as Wumpi, still
+ * act whenever they like.
+ * 
+ * @author Kyle Hill
+ */
+final class TurnOrder {
+    /**
+     * Constructs a new TurnOrder
+     * 
+     * @param e
+     *            the environment the agents act in
+     */
+    TurnOrder(final Environment e) {
+        environment = e;
+    }
+
+    /**
+     * Finish an agent's turn, letting the next agent start its own
+     * 
+     * @param agent
+     *            the agent
+     */
+    synchronized void endTurn(final AbstractGaaAgent agent) {
+        finished.add(agent.getUniqueIdentifier().toString());
+        nextTurnIfOver();
+        notifyAll();
+    }
+
+    /**
+     * Add an agent to the order
+     * 
+     * @param agent
+     *            the agent
+     */
+    synchronized void join(final AbstractGaaAgent agent) {
+        agents.put(agent.getUniqueIdentifier().toString(), agent.getUniqueIdentifier());
+    }
+
+    /**
+     * Remove an agent from the order, once it has stopped taking turns
+     * 
+     * @param agent
+     *            the agent
+     */
+    synchronized void leave(final AbstractGaaAgent agent) {
+        final String name = agent.getUniqueIdentifier().toString();
+        agents.remove(name);
+        finished.remove(name);
+        nextTurnIfOver();
+        notifyAll();
+    }
+
+    /**
+     * Wait until it is an agent's turn
+     * 
+     * @param agent
+     *            the agent
+     */
+    synchronized void startTurn(final AbstractGaaAgent agent) {
+        final String name = agent.getUniqueIdentifier().toString();
+        while (!isNext(name)) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                // Give up our place rather than hang the simulation
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Has every agent before the given one finished its turn?
+     * 
+     * @param name
+     *            the agent's identifier
+     * @return true if it is the agent's turn, false otherwise
+     */
+    private boolean isNext(final String name) {
+        for (final Map.Entry<String, UniqueIdentifier> before : agents.headMap(name).entrySet()) {
+            if (!finished.contains(before.getKey()) && environment.containsAgent(before.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start the next turn if every agent has finished this one
+     */
+    private void nextTurnIfOver() {
+        for (final Map.Entry<String, UniqueIdentifier> agent : agents.entrySet()) {
+            if (!finished.contains(agent.getKey()) && environment.containsAgent(agent.getValue())) {
+                return;
+            }
+        }
+        finished.clear();
+    }
+
+    /**
+     * The agents taking turns, by identifier
+     */
+    private final TreeMap<String, UniqueIdentifier> agents = new TreeMap<String, UniqueIdentifier>();
+
+    /**
+     * The environment the agents act in
+     */
+    private final Environment environment;
+
+    /**
+     * The agents that have finished the current turn
+     */
+    private final Set<String> finished = new HashSet<String>();
+}
@@ -0,0 +1,514 @@
+package edu.ksu.cis.macr.simulator.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ksu.cis.macr.simulator.GaaLauncher;
+import edu.ksu.cis.macr.simulator.benchmark.ScenarioMaps;
+
+/**
+ * Runs every combination of scenario, goal capability map and random seed as a
+ * headless simulation, several at a time, and collects their results into CSV
+ * and JSON files.
+ * <p>
+ * The environment is a singleton, so each simulation is run in a JVM of its
+ * own, started with the same class path as this one. Nothing is shared
+ * between runs: each gets its own process, log file and summary file, and a
+ * run that goes on too long is killed without affecting the others.
+ * <p>
+ * Usage: BatchRunner [options] [scenario files], where the scenario files
+ * default to every file in the scenarios directory and the options are
+ * <ul>
+ * <li>--configs=file,... the goal capability maps to run each scenario with,
+ * by default configs/GoalCapabilityMap.xml</li>
+ * <li>--seeds=n,... the random seeds to run each with, by default 1</li>
+ * <li>--parallel=n the number of simulations to run at once, by default the
+ * number of processors</li>
+ * <li>--max-turns=n the most turns a simulation may take, by default 5000</li>
+ * <li>--timeout=seconds the longest a simulation may run for, by default 600
+ * </li>
+ * <li>--metrics to keep each simulation's metrics, which are written as JSON
+ * next to its output</li>
+ * <li>--out=prefix where to write the results, by default batch, giving
+ * batch.csv, batch.json and a batch-runs directory holding each run's output
+ * </li>
+ * </ul>
+ * 
+ * @author Kyle Hill
+ */
+public final class BatchRunner {
+    /**
+     * A single simulation of a scenario with a goal capability map and seed
+     * 
+     * @author Kyle Hill
+     * 
+     */
+    private static final class Run {
+        /**
+         * Constructs a new Run
+         * 
+         * @param n
+         *            the run's number, from 1
+         * @param s
+         *            the scenario file
+         * @param c
+         *            the goal capability map file
+         * @param r
+         *            the random seed
+         */
+        Run(final int n, final File s, final File c, final long r) {
+            number = n;
+            scenario = s;
+            config = c;
+            seed = r;
+        }
+
+        /**
+         * Get the name the run's files are given
+         * 
+         * @return the name
+         */
+        String getName() {
+            return String.format("%03d-%s-%s-%d", number, baseName(scenario), baseName(config), seed);
+        }
+
+        /**
+         * The goal capability map file
+         */
+        final File config;
+
+        /**
+         * The run's number, from 1
+         */
+        final int number;
+
+        /**
+         * The results, read back from the run's summary file, empty if it
+         * didn't write one
+         */
+        final Properties results = new Properties();
+
+        /**
+         * The scenario file
+         */
+        final File scenario;
+
+        /**
+         * The random seed
+         */
+        final long seed;
+
+        /**
+         * How the run ended, one of the STATUS_ constants
+         */
+        String status = STATUS_FAILED;
+    }
+
+    /**
+     * Constructor
+     */
+    private BatchRunner() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Runs the batch
+     * 
+     * @param args
+     *            the options, followed by the scenario files
+     * @throws IOException
+     *             if the results cannot be written
+     * @throws InterruptedException
+     *             if interrupted while waiting for the runs
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        String configs = DEFAULT_CONFIG;
+        String seeds = "1";
+        int parallel = Runtime.getRuntime().availableProcessors();
+        long maxTurns = DEFAULT_MAX_TURNS;
+        long timeout = DEFAULT_TIMEOUT;
+        String out = DEFAULT_OUT;
+        boolean metrics = false;
+
+        final List<String> scenarioArgs = new ArrayList<String>();
+        final List<Long> seedList = new ArrayList<Long>();
+        try {
+            for (final String arg : args) {
+                if (arg.startsWith(CONFIGS_FLAG)) {
+                    configs = arg.substring(CONFIGS_FLAG.length());
+                } else if (arg.startsWith(SEEDS_FLAG)) {
+                    seeds = arg.substring(SEEDS_FLAG.length());
+                } else if (arg.startsWith(PARALLEL_FLAG)) {
+                    parallel = Integer.parseInt(arg.substring(PARALLEL_FLAG.length()).trim());
+                } else if (arg.startsWith(MAX_TURNS_FLAG)) {
+                    maxTurns = Long.parseLong(arg.substring(MAX_TURNS_FLAG.length()).trim());
+                } else if (arg.startsWith(TIMEOUT_FLAG)) {
+                    timeout = Long.parseLong(arg.substring(TIMEOUT_FLAG.length()).trim());
+                } else if (arg.equals(METRICS_FLAG)) {
+                    metrics = true;
+                } else if (arg.startsWith(OUT_FLAG)) {
+                    out = arg.substring(OUT_FLAG.length());
+                } else if (arg.startsWith("--")) {
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(1);
+                } else {
+                    scenarioArgs.add(arg);
+                }
+            }
+            for (final String seed : seeds.split(",")) {
+                seedList.add(Long.valueOf(seed.trim()));
+            }
+        } catch (final NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // Every combination of scenario, configuration and seed
+        final File runDirectory = new File(out + "-runs");
+        if (!runDirectory.isDirectory() && !runDirectory.mkdirs()) {
+            System.err.println("Unable to create directory: " + runDirectory.getPath());
+            System.exit(1);
+        }
+        final List<Run> runs = new ArrayList<Run>();
+        for (final File scenario : ScenarioMaps.getScenarioFiles(scenarioArgs.toArray(new String[scenarioArgs.size()]))) {
+            for (final String config : configs.split(",")) {
+                for (final Long seed : seedList) {
+                    runs.add(new Run(runs.size() + 1, scenario, new File(config.trim()), seed));
+                }
+            }
+        }
+
+        // Run them, a few at a time
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallel));
+        final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        final AtomicInteger finished = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Run run : runs) {
+            final long maxRunTurns = maxTurns;
+            final long runTimeout = timeout;
+            final boolean runMetrics = metrics;
+            futures.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        execute(run, runDirectory, maxRunTurns, runTimeout, runMetrics, watchdog);
+                    } catch (final IOException e) {
+                        System.err.println(run.getName() + ": " + e.getMessage());
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    System.out.println(String.format("[%d/%d] %s: %s", finished.incrementAndGet(), runs.size(), run.getName(), run.status));
+                }
+            }));
+        }
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        pool.shutdown();
+        watchdog.shutdownNow();
+
+        writeCsv(runs, new File(out + ".csv"));
+        writeJson(runs, new File(out + ".json"));
+    }
+
+    /**
+     * Get a file's name without its extension
+     * 
+     * @param file
+     *            the file
+     * @return the name
+     */
+    private static String baseName(final File file) {
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+        return (dot > 0) ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Run a simulation in a JVM of its own, and wait for it to end
+     * 
+     * @param run
+     *            the run, which is given its results
+     * @param directory
+     *            the directory to put the run's files in
+     * @param maxTurns
+     *            the most turns the simulation may take
+     * @param timeout
+     *            the longest the simulation may run for, in seconds
+     * @param metrics
+     *            true to keep the simulation's metrics
+     * @param watchdog
+     *            the executor used to kill the simulation when it runs too
+     *            long
+     * @throws IOException
+     *             if the simulation cannot be started or its files cannot be
+     *             written
+     * @throws InterruptedException
+     *             if interrupted while waiting for the simulation
+     */
+    private static void execute(final Run run, final File directory, final long maxTurns, final long timeout, final boolean metrics, final ScheduledExecutorService watchdog) throws IOException, InterruptedException {
+        final File summary = new File(directory, run.getName() + ".properties");
+        final File log = new File(directory, run.getName() + ".log");
+        summary.delete();
+
+        final List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Djava.awt.headless=true");
+        command.add("-Dgaa.seed=" + run.seed);
+        if (metrics) {
+            command.add("-Dgaa.metrics=true");
+            command.add("-Dgaa.metrics.format=json");
+            command.add("-Dgaa.metrics.file=" + new File(directory, run.getName() + ".metrics.json").getPath());
+        }
+        command.add(GaaLauncher.class.getName());
+        command.add(run.scenario.getPath());
+        command.add(run.config.getPath());
+        command.add("--headless");
+        command.add("--max-turns=" + maxTurns);
+        command.add("--summary=" + summary.getPath());
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final AtomicBoolean killed = new AtomicBoolean();
+        final ScheduledFuture<?> kill = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                killed.set(true);
+                process.destroy();
+            }
+        }, timeout, TimeUnit.SECONDS);
+
+        // The output must be read for the simulation not to block on it
+        final InputStream in = process.getInputStream();
+        final OutputStream logOut = new FileOutputStream(log);
+        try {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                logOut.write(buffer, 0, n);
+            }
+        } finally {
+            logOut.close();
+            in.close();
+        }
+        final int exitValue = process.waitFor();
+        kill.cancel(false);
+
+        if (summary.canRead()) {
+            final InputStream summaryIn = new FileInputStream(summary);
+            try {
+                run.results.load(summaryIn);
+            } finally {
+                summaryIn.close();
+            }
+        }
+        if (killed.get()) {
+            run.status = STATUS_TIMED_OUT;
+        } else if ((exitValue != 0) || run.results.isEmpty()) {
+            run.status = STATUS_FAILED;
+        } else if (Boolean.parseBoolean(run.results.getProperty(RunTermination.COMPLETED))) {
+            run.status = STATUS_COMPLETED;
+        } else {
+            run.status = STATUS_TURN_LIMIT;
+        }
+    }
+
+    /**
+     * Quote a string for CSV, if it needs it: strings holding a comma, quote
+     * or line break are put in quotes, with any quotes in them doubled
+     * 
+     * @param s
+     *            the string
+     * @return the string as a CSV field
+     */
+    private static String csvString(final String s) {
+        if ((s.indexOf(',') < 0) && (s.indexOf('"') < 0) && (s.indexOf('\n') < 0) && (s.indexOf('\r') < 0)) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Quote a string for JSON
+     * 
+     * @param s
+     *            the string
+     * @return the quoted string
+     */
+    private static String jsonString(final String s) {
+        final StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Write the runs' results as CSV, one line per run
+     * 
+     * @param runs
+     *            the runs
+     * @param file
+     *            the file to write to
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void writeCsv(final List<Run> runs, final File file) throws IOException {
+        final PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            writer.print("scenario,config,seed,status");
+            for (final String column : RESULT_COLUMNS) {
+                writer.print("," + column);
+            }
+            writer.println();
+
+            for (final Run run : runs) {
+                writer.print(csvString(run.scenario.getPath()) + "," + csvString(run.config.getPath()) + "," + run.seed + "," + csvString(run.status));
+                for (final String column : RESULT_COLUMNS) {
+                    writer.print("," + csvString(run.results.getProperty(column, "")));
+                }
+                writer.println();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write the runs' results as a JSON array, one object per run
+     * 
+     * @param runs
+     *            the runs
+     * @param file
+     *            the file to write to
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void writeJson(final List<Run> runs, final File file) throws IOException {
+        final PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            writer.println("[");
+            for (int r = 0; r < runs.size(); r++) {
+                final Run run = runs.get(r);
+                writer.print("  {\"scenario\": " + jsonString(run.scenario.getPath()) + ", \"config\": " + jsonString(run.config.getPath()) + ", \"seed\": " + run.seed + ", \"status\": " + jsonString(run.status));
+                for (final String column : RESULT_COLUMNS) {
+                    final String value = run.results.getProperty(column);
+                    writer.print(", " + jsonString(column) + ": " + ((value == null) ? "null" : value));
+                }
+                writer.println((r < (runs.size() - 1)) ? "}," : "}");
+            }
+            writer.println("]");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The option giving the goal capability maps, separated by commas
+     */
+    private static final String CONFIGS_FLAG = "--configs=";
+
+    /**
+     * The goal capability map used when none are given
+     */
+    private static final String DEFAULT_CONFIG = "configs/GoalCapabilityMap.xml";
+
+    /**
+     * The most turns a simulation may take, when not given
+     */
+    private static final long DEFAULT_MAX_TURNS = 5000;
+
+    /**
+     * Where the results are written, when not given
+     */
+    private static final String DEFAULT_OUT = "batch";
+
+    /**
+     * The longest a simulation may run for, in seconds, when not given
+     */
+    private static final long DEFAULT_TIMEOUT = 600;
+
+    /**
+     * The option giving the most turns a simulation may take
+     */
+    private static final String MAX_TURNS_FLAG = "--max-turns=";
+
+    /**
+     * The option for keeping each simulation's metrics
+     */
+    private static final String METRICS_FLAG = "--metrics";
+
+    /**
+     * The option giving where the results are written
+     */
+    private static final String OUT_FLAG = "--out=";
+
+    /**
+     * The option giving the number of simulations to run at once
+     */
+    private static final String PARALLEL_FLAG = "--parallel=";
+
+    /**
+     * The numeric results of a run, in the order they are written
+     */
+    private static final String[] RESULT_COLUMNS = { RunTermination.TURNS, RunTermination.ELAPSED_MILLIS, RunTermination.SCORE, RunTermination.GOLD_RETURNED, RunTermination.WUMPI_KILLED, RunTermination.AGENTS_KILLED, RunTermination.STEPS, RunTermination.MESSAGES };
+
+    /**
+     * The option giving the random seeds, separated by commas
+     */
+    private static final String SEEDS_FLAG = "--seeds=";
+
+    /**
+     * Status of a run in which every agent ran out of assignments
+     */
+    private static final String STATUS_COMPLETED = "completed";
+
+    /**
+     * Status of a run that ended without writing its results
+     */
+    private static final String STATUS_FAILED = "failed";
+
+    /**
+     * Status of a run that was killed for running too long
+     */
+    private static final String STATUS_TIMED_OUT = "timedOut";
+
+    /**
+     * Status of a run that reached the most turns it could take
+     */
+    private static final String STATUS_TURN_LIMIT = "turnLimit";
+
+    /**
+     * The option giving the longest a simulation may run for, in seconds
+     */
+    private static final String TIMEOUT_FLAG = "--timeout=";
+}
@@ -0,0 +1,183 @@
+package edu.ksu.cis.macr.simulator.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import edu.ksu.cis.macr.simulator.agent.IExecutionComponent;
+import edu.ksu.cis.macr.simulator.agents.AbstractGaaAgent;
+import edu.ksu.cis.macr.simulator.display.WumpiWorldDisplay;
+import edu.ksu.cis.macr.simulator.environment.Environment;
+import edu.ksu.cis.macr.simulator.environment.TerminationCriteria;
+
+/**
+ * Ends a headless run once every agent has run out of assignments, or once it
+ * has gone on for a given number of turns. When the run ends its results are
+ * written to a summary file, if one was given, as Java properties that
+ * {@link BatchRunner} reads back, and the JVM exits.
+ * 
+ * @author Kyle Hill
+ */
+public final class RunTermination implements TerminationCriteria {
+    /**
+     * Constructs a new RunTermination
+     * 
+     * @param e
+     *            the environment
+     * @param max
+     *            the most turns the run may take, 0 for no limit
+     * @param summary
+     *            the file to write the run's results to, null for none
+     * @param details
+     *            properties describing the run, such as its scenario, which
+     *            are copied into the summary
+     */
+    public RunTermination(final Environment e, final long max, final File summary, final Properties details) {
+        environment = e;
+        maxTurns = max;
+        summaryFile = summary;
+        properties.putAll(details);
+    }
+
+    @Override
+    public void cleanUp() {
+        final long elapsed = System.currentTimeMillis() - startTime;
+        properties.setProperty(COMPLETED, Boolean.toString(completed));
+        properties.setProperty(TURNS, Long.toString(environment.getTurns()));
+        properties.setProperty(ELAPSED_MILLIS, Long.toString(elapsed));
+        properties.setProperty(SCORE, Integer.toString(WumpiWorldDisplay.getScore()));
+        properties.setProperty(GOLD_RETURNED, Integer.toString(WumpiWorldDisplay.getGoldRetrieved()));
+        properties.setProperty(WUMPI_KILLED, Integer.toString(WumpiWorldDisplay.getWumpiKilled()));
+        properties.setProperty(AGENTS_KILLED, Integer.toString(WumpiWorldDisplay.getAgentsKilled()));
+        properties.setProperty(STEPS, Integer.toString(WumpiWorldDisplay.getActions()));
+        properties.setProperty(MESSAGES, Integer.toString(WumpiWorldDisplay.getCommunications()));
+
+        int status = 0;
+        if (summaryFile != null) {
+            try {
+                final OutputStream out = new FileOutputStream(summaryFile);
+                try {
+                    properties.store(out, "Wumpi World run summary");
+                } finally {
+                    out.close();
+                }
+            } catch (final IOException e) {
+                System.err.println("Unable to write summary file: " + summaryFile.getPath());
+                status = 1;
+            }
+        }
+
+        // The agents are still blocked on the environment's barrier
+        System.exit(status);
+    }
+
+    @Override
+    public boolean isAccomplished() {
+        completed = true;
+        for (final IExecutionComponent agent : environment.getAgents()) {
+            if ((agent instanceof AbstractGaaAgent) && !((AbstractGaaAgent) agent).isDone()) {
+                completed = false;
+                break;
+            }
+        }
+        return completed || ((maxTurns > 0) && (environment.getTurns() >= maxTurns));
+    }
+
+    /**
+     * Summary property: the number of agents killed
+     */
+    public static final String AGENTS_KILLED = "agentsKilled";
+
+    /**
+     * Summary property: true if every agent ran out of assignments, false if
+     * the run was cut short
+     */
+    public static final String COMPLETED = "completed";
+
+    /**
+     * Summary property: the goal capability map file
+     */
+    public static final String CONFIG = "config";
+
+    /**
+     * Summary property: the wall clock time the run took, in milliseconds
+     */
+    public static final String ELAPSED_MILLIS = "elapsedMillis";
+
+    /**
+     * Summary property: the number of pieces of gold brought back
+     */
+    public static final String GOLD_RETURNED = "goldReturned";
+
+    /**
+     * Summary property: the number of communications
+     */
+    public static final String MESSAGES = "messages";
+
+    /**
+     * Summary property: whether the run can be repeated exactly from its seed
+     */
+    public static final String REPEATABLE = "repeatable";
+
+    /**
+     * Summary property: the scenario file
+     */
+    public static final String SCENARIO = "scenario";
+
+    /**
+     * Summary property: the final score
+     */
+    public static final String SCORE = "score";
+
+    /**
+     * Summary property: the random seed
+     */
+    public static final String SEED = "seed";
+
+    /**
+     * Summary property: the number of actions taken
+     */
+    public static final String STEPS = "steps";
+
+    /**
+     * Summary property: the number of turns taken
+     */
+    public static final String TURNS = "turns";
+
+    /**
+     * Summary property: the number of Wumpi killed
+     */
+    public static final String WUMPI_KILLED = "wumpiKilled";
+
+    /**
+     * true if every agent had run out of assignments when last checked
+     */
+    private boolean completed = false;
+
+    /**
+     * The environment
+     */
+    private final Environment environment;
+
+    /**
+     * The most turns the run may take, 0 for no limit
+     */
+    private final long maxTurns;
+
+    /**
+     * The run's results
+     */
+    private final Properties properties = new Properties();
+
+    /**
+     * The time the run started
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * The file to write the run's results to, null for none
+     */
+    private final File summaryFile;
+}
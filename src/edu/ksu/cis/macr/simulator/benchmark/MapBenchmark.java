@@ -0,0 +1,381 @@
+package edu.ksu.cis.macr.simulator.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.capabilities.map.MapDelta;
+import edu.ksu.cis.macr.simulator.capabilities.map.Navigator;
+import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+
+/**
+ * Measures the map and navigation operations agents spend their time in, over
+ * the bundled scenarios and over random maps of a small and a large size. Each
+ * operation is run repeatedly for a fixed time after warming up, and the
+ * number of operations per second and the bytes allocated per operation and
+ * per second are reported, so that the effect of a change can be measured.
+ * <p>
+ * The operations are: finding paths, getting the tiles in sonar range,
+ * finding gold, Wumpi and the nearest unsearched tile, asking for the nearest
+ * gold and Wumpi when none are known, merging whole maps and deltas, asking
+ * whether tiles are walls or Wumpi, and applying one step of sensor readings
+ * through the update methods.
+ * <p>
+ * Usage: MapBenchmark [scenario files], by default every file in the
+ * scenarios directory. Allocation is only reported on JVMs that can measure
+ * it for a thread.
+ * 
+ * @author Kyle Hill
+ */
+public final class MapBenchmark {
+    /**
+     * An operation to measure, which is run over and over
+     * 
+     * @author Kyle Hill
+     * 
+     */
+    private abstract static class Operation {
+        /**
+         * Run the operation once
+         * 
+         * @param k
+         *            the number of times the operation has been run before,
+         *            to pick which of its inputs to use
+         * @return a value depending on the result, so that the work can't be
+         *         skipped
+         */
+        abstract int run(int k);
+    }
+
+    /**
+     * Constructor
+     */
+    private MapBenchmark() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Runs the benchmark
+     * 
+     * @param args
+     *            the scenario files to benchmark
+     */
+    public static void main(final String[] args) {
+        final java.util.Map<String, Map> maps = new LinkedHashMap<String, Map>();
+        for (final File file : ScenarioMaps.getScenarioFiles(args)) {
+            try {
+                maps.put(file.getName(), ScenarioMaps.load(file));
+            } catch (final IOException e) {
+                System.err.println("Unable to load scenario: " + e.getMessage());
+            }
+        }
+        maps.put("random " + SMALL_SIZE + "x" + SMALL_SIZE, ScenarioMaps.random(SMALL_SIZE, SMALL_SIZE, SEED));
+        maps.put("random " + LARGE_SIZE + "x" + LARGE_SIZE, ScenarioMaps.random(LARGE_SIZE, LARGE_SIZE, SEED));
+
+        System.out.println(String.format("%-34s %-24s %14s %12s %10s", "map", "operation", "ops/s", "B/op", "MB/s"));
+        for (final java.util.Map.Entry<String, Map> entry : maps.entrySet()) {
+            for (final java.util.Map.Entry<String, Operation> operation : operations(entry.getValue()).entrySet()) {
+                measure(operation.getValue(), WARMUP_NANOS);
+                final double[] result = measure(operation.getValue(), MEASURE_NANOS);
+                final String perOp = (result[1] < 0) ? "n/a" : String.format("%.1f", result[1]);
+                final String perSecond = (result[1] < 0) ? "n/a" : String.format("%.1f", (result[0] * result[1]) / (1024 * 1024));
+                System.out.println(String.format("%-34s %-24s %14.1f %12s %10s", entry.getKey(), operation.getKey(), result[0], perOp, perSecond));
+            }
+        }
+
+        // Keep the results alive, so that no operation can be optimized away
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Get the number of bytes the current thread has allocated
+     * 
+     * @return the number of bytes, -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.isThreadAllocatedMemorySupported() ? bean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Run an operation over and over for a while. Operations are run in
+     * batches, doubling until each batch is long enough that reading the clock
+     * takes no noticeable part of the time.
+     * 
+     * @param operation
+     *            the operation
+     * @param nanos
+     *            how long to run it for, in nanoseconds
+     * @return the number of operations per second, and the number of bytes
+     *         allocated per operation or -1 if the JVM can't tell
+     */
+    private static double[] measure(final Operation operation, final long nanos) {
+        final long bytes = allocatedBytes();
+        final long start = System.nanoTime();
+        long elapsed = 0;
+        int batch = 1;
+        int k = 0;
+        while (elapsed < nanos) {
+            final long batchStart = System.nanoTime();
+            for (int b = 0; b < batch; b++) {
+                sink += operation.run(k++);
+            }
+            final long now = System.nanoTime();
+            if (((now - batchStart) < BATCH_NANOS) && (batch < (Integer.MAX_VALUE / 2))) {
+                batch *= 2;
+            }
+            elapsed = now - start;
+        }
+        final long allocated = allocatedBytes() - bytes;
+        return new double[] { (k * 1e9) / elapsed, (bytes < 0) ? -1 : (double) allocated / k };
+    }
+
+    /**
+     * Build the operations to measure over a map
+     * 
+     * @param world
+     *            the fully explored map
+     * @return the operations, by name
+     */
+    private static java.util.Map<String, Operation> operations(final Map world) {
+        final Random random = new Random(SEED);
+        final LocationData[] passable = pickPassable(world, random);
+        final java.util.Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+        final Navigator navigator = new Navigator();
+        operations.put("findPath", new Operation() {
+            @Override
+            int run(final int k) {
+                final Queue<LocationData> path = navigator.findPath(world, passable[k % passable.length], passable[(k + 1) % passable.length]);
+                return (path == null) ? 0 : path.size();
+            }
+        });
+
+        operations.put("getNeighbors", new Operation() {
+            @Override
+            int run(final int k) {
+                return world.getNeighbors(passable[k % passable.length], Map.SONAR_RANGE, Map.SONAR_RANGE_TYPE).size();
+            }
+        });
+
+        operations.put("findGold", new Operation() {
+            @Override
+            int run(final int k) {
+                return world.findGold(passable[k % passable.length]).size();
+            }
+        });
+
+        operations.put("findWumpi", new Operation() {
+            @Override
+            int run(final int k) {
+                return world.findWumpi(passable[k % passable.length]).size();
+            }
+        });
+
+        // Early on no gold or Wumpi are known, and agents still ask for the
+        // nearest of them every cycle
+        final Map empty = new Map(world.getMaxX(), world.getMaxY());
+        operations.put("nearest (none known)", new Operation() {
+            @Override
+            int run(final int k) {
+                final LocationData from = passable[k % passable.length];
+                return (empty.nearestGold(from).hasNext() ? 1 : 0) + (empty.nearestWumpi(from).hasNext() ? 2 : 0);
+            }
+        });
+
+        // Half the world has been searched, so the nearest unsearched tile is
+        // some way off from much of it
+        final Map halfSearched = new Map(world);
+        for (int x = 1; x < (world.getMaxX() / 2); x++) {
+            for (int y = 1; y < world.getMaxY(); y++) {
+                halfSearched.getTile(x, y).setSearched(true);
+            }
+        }
+        operations.put("findNearestUnsearched", new Operation() {
+            @Override
+            int run(final int k) {
+                final LocationData location = halfSearched.findNearestUnsearchedLocation(passable[k % passable.length]);
+                return (location == null) ? 0 : location.getX();
+            }
+        });
+
+        // Merging what is already known, as most merges between agents do
+        final Map known = new Map(world);
+        operations.put("mergeFrom(Map)", new Operation() {
+            @Override
+            int run(final int k) {
+                known.mergeFrom(world);
+                return 1;
+            }
+        });
+
+        // Merging the changes of one sensor step at a time
+        final Map sender = new Map(world.getMaxX(), world.getMaxY());
+        final Map receiver = new Map(world.getMaxX(), world.getMaxY());
+        operations.put("mergeFrom(MapDelta)", new Operation() {
+            @Override
+            int run(final int k) {
+                final LocationData location = passable[k % passable.length];
+                sender.getTile(location).setSearched((k / passable.length) % 2 == 0);
+                final MapDelta delta = sender.takeDelta();
+                receiver.mergeFrom(delta);
+                return 1;
+            }
+        });
+
+        operations.put("isWumpi/isWall", new Operation() {
+            @Override
+            int run(final int k) {
+                final Tile tile = world.getTile(passable[k % passable.length]);
+                return (tile.isWumpi() ? 1 : 0) + (tile.isWall() ? 2 : 0);
+            }
+        });
+
+        operations.put("update*", sensorStep(world, passable));
+        return operations;
+    }
+
+    /**
+     * Pick random passable tiles to run operations from. Consecutive tiles are
+     * used as the start and goal of paths.
+     * 
+     * @param world
+     *            the map
+     * @param random
+     *            the random number generator
+     * @return the tiles
+     */
+    private static LocationData[] pickPassable(final Map world, final Random random) {
+        final List<LocationData> passable = new ArrayList<LocationData>();
+        for (int x = 1; x < world.getMaxX(); x++) {
+            for (int y = 1; y < world.getMaxY(); y++) {
+                final Tile tile = world.getTile(x, y);
+                if (!tile.hasObstruction() && !tile.isDangerous()) {
+                    passable.add(new LocationData(x, y));
+                }
+            }
+        }
+
+        final LocationData[] picked = new LocationData[INPUTS];
+        for (int k = 0; k < picked.length; k++) {
+            picked[k] = passable.get(random.nextInt(passable.size()));
+        }
+        return picked;
+    }
+
+    /**
+     * Build the operation of applying one step of sensor readings to an
+     * agent's map, as AdvancedSensors does. The agent walks between the
+     * passable tiles given, which need not be next to each other, and every
+     * time it has been to them all it starts again on a new map.
+     * 
+     * @param world
+     *            the fully explored map, which the readings are taken from
+     * @param passable
+     *            the tiles to walk between
+     * @return the operation
+     */
+    private static Operation sensorStep(final Map world, final LocationData[] passable) {
+        // Take every reading up front, so only the map's work is measured
+        final boolean[][] readings = new boolean[passable.length][3];
+        final List<Collection<LocationData>> sonar = new ArrayList<Collection<LocationData>>();
+        for (int k = 0; k < passable.length; k++) {
+            final LocationData location = passable[k];
+            final Collection<LocationData> obstructions = new ArrayList<LocationData>();
+            for (final Tile tile : world.getNeighbors(location, Map.SONAR_RANGE, Map.SONAR_RANGE_TYPE)) {
+                if (tile.hasObstruction()) {
+                    obstructions.add(new LocationData(tile.getLocation().getX() - location.getX(), tile.getLocation().getY() - location.getY()));
+                }
+            }
+            sonar.add(obstructions);
+
+            // Wumpi are smelled, and pits felt, from the tiles around them
+            for (final Tile tile : world.getNeighbors(location, Map.SMELL_RANGE, Map.SMELL_RANGE_TYPE)) {
+                readings[k][0] |= tile.hasSmell();
+            }
+            for (final Tile tile : world.getNeighbors(location, Map.BREEZE_RANGE, Map.BREEZE_RANGE_TYPE)) {
+                readings[k][1] |= tile.hasBreeze();
+            }
+            readings[k][2] = world.getTile(location).hasGlitter();
+        }
+
+        return new Operation() {
+            @Override
+            int run(final int k) {
+                final int step = k % passable.length;
+                if (step == 0) {
+                    map = new Map(world.getMaxX(), world.getMaxY());
+                }
+                final LocationData from = passable[(step == 0) ? 0 : (step - 1)];
+                final LocationData to = passable[step];
+
+                boolean updated = map.updateVisited(to);
+                updated |= map.updateObstructions(to, sonar.get(step));
+                updated |= map.updateSmell(from, to, readings[step][0]);
+                updated |= map.updateBreeze(from, to, readings[step][1]);
+                updated |= map.updateGlitter(from, to, readings[step][2]);
+                updated |= map.updateSearched(to);
+                return updated ? 1 : 0;
+            }
+
+            /**
+             * The agent's map
+             */
+            private Map map = null;
+        };
+    }
+
+    /**
+     * The shortest batch of operations, in nanoseconds
+     */
+    private static final long BATCH_NANOS = 10000000L;
+
+    /**
+     * The number of inputs picked for each operation to cycle through
+     */
+    private static final int INPUTS = 1024;
+
+    /**
+     * The size of the large random map
+     */
+    private static final int LARGE_SIZE = 512;
+
+    /**
+     * How long each operation is measured for, in nanoseconds
+     */
+    private static final long MEASURE_NANOS = 2000000000L;
+
+    /**
+     * The seed for building random maps and picking inputs, so that every run
+     * does the same work
+     */
+    private static final long SEED = 1;
+
+    /**
+     * The size of the small random map
+     */
+    private static final int SMALL_SIZE = 64;
+
+    /**
+     * A running total of the operations' results
+     */
+    private static int sink = 0;
+
+    /**
+     * How long each operation is warmed up for, in nanoseconds
+     */
+    private static final long WARMUP_NANOS = 1000000000L;
+}
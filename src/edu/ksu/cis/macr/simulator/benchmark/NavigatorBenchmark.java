@@ -0,0 +1,145 @@
+package edu.ksu.cis.macr.simulator.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.capabilities.map.Navigator;
+import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+
+/**
+ * Compares the search strategies of {@link Navigator} over the bundled
+ * scenarios. Each strategy finds paths between the same random pairs of
+ * passable tiles, and the number of nodes expanded and the time taken per call
+ * to findPath are reported. Every strategy must find paths of the same length.
+ * <p>
+ * Usage: NavigatorBenchmark [scenario files], by default every file in the
+ * scenarios directory.
+ * 
+ * @author Kyle Hill
+ */
+public final class NavigatorBenchmark {
+    /**
+     * Constructor
+     */
+    private NavigatorBenchmark() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Runs the benchmark
+     * 
+     * @param args
+     *            the scenario files to benchmark
+     */
+    public static void main(final String[] args) {
+        System.out.println(String.format("%-34s %8s %12s %12s %10s %10s", "scenario", "queries", "A* nodes", "JPS nodes", "A* us", "JPS us"));
+        for (final File file : ScenarioMaps.getScenarioFiles(args)) {
+            final Map map;
+            try {
+                map = ScenarioMaps.load(file);
+            } catch (final IOException e) {
+                System.err.println("Unable to load scenario: " + e.getMessage());
+                continue;
+            }
+
+            final LocationData[] queries = pickQueries(map);
+            final Navigator aStar = new Navigator(Navigator.Strategy.A_STAR);
+            final Navigator jumpPoint = new Navigator(Navigator.Strategy.JUMP_POINT);
+
+            // Warm up, and check that both strategies agree
+            final int[] lengths = new int[queries.length / 2];
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                run(aStar, map, queries, lengths, round == 0);
+                run(jumpPoint, map, queries, lengths, false);
+            }
+
+            final long[] aStarResult = run(aStar, map, queries, lengths, false);
+            final long[] jumpPointResult = run(jumpPoint, map, queries, lengths, false);
+            final int n = lengths.length;
+            System.out.println(String.format("%-34s %8d %12.1f %12.1f %10.2f %10.2f", file.getName(), n, (double) aStarResult[0] / n, (double) jumpPointResult[0] / n, aStarResult[1] / 1000.0 / n, jumpPointResult[1] / 1000.0 / n));
+        }
+    }
+
+    /**
+     * Pick random pairs of passable tiles to find paths between
+     * 
+     * @param map
+     *            the map
+     * @return the start and goal of each query, one after the other
+     */
+    private static LocationData[] pickQueries(final Map map) {
+        final List<LocationData> passable = new ArrayList<LocationData>();
+        for (int x = 1; x < map.getMaxX(); x++) {
+            for (int y = 1; y < map.getMaxY(); y++) {
+                final Tile tile = map.getTile(x, y);
+                if (!tile.hasObstruction() && !tile.isDangerous()) {
+                    passable.add(new LocationData(x, y));
+                }
+            }
+        }
+
+        final Random random = new Random(SEED);
+        final LocationData[] queries = new LocationData[QUERIES * 2];
+        for (int q = 0; q < queries.length; q++) {
+            queries[q] = passable.get(random.nextInt(passable.size()));
+        }
+        return queries;
+    }
+
+    /**
+     * Find the path for every query
+     * 
+     * @param navigator
+     *            the navigator to use
+     * @param map
+     *            the map to search within
+     * @param queries
+     *            the start and goal of each query
+     * @param lengths
+     *            the length of each path found earlier, -1 if there was none
+     * @param record
+     *            true to record the length of each path, false to check it
+     * @return the total number of nodes expanded, and the total time taken in
+     *         nanoseconds
+     */
+    private static long[] run(final Navigator navigator, final Map map, final LocationData[] queries, final int[] lengths, final boolean record) {
+        long expanded = 0;
+        long time = 0;
+        for (int q = 0; q < lengths.length; q++) {
+            final long start = System.nanoTime();
+            final Queue<LocationData> path = navigator.findPath(map, queries[q * 2], queries[(q * 2) + 1]);
+            time += System.nanoTime() - start;
+            expanded += navigator.getExpandedNodes();
+
+            final int length = (path == null) ? -1 : path.size();
+            if (record) {
+                lengths[q] = length;
+            } else if (length != lengths[q]) {
+                throw new IllegalStateException(navigator.getStrategy() + " found a path of length " + length + " from " + queries[q * 2] + " to " + queries[(q * 2) + 1] + ", expected " + lengths[q]);
+            }
+        }
+        return new long[] { expanded, time };
+    }
+
+    /**
+     * The number of paths found for each scenario
+     */
+    private static final int QUERIES = 2000;
+
+    /**
+     * The seed for picking the paths to find, so that every run finds the same
+     * paths
+     */
+    private static final long SEED = 1;
+
+    /**
+     * The number of times each strategy finds every path before it is timed
+     */
+    private static final int WARMUP_ROUNDS = 10;
+}
@@ -0,0 +1,193 @@
+package edu.ksu.cis.macr.simulator.benchmark;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import edu.ksu.cis.macr.simulator.GaaLauncher;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+
+/**
+ * Builds maps for benchmarks from the scenario files, as an agent would know
+ * them after exploring the whole world. Walls are obstructions, pits have a
+ * breeze and Wumpi have a smell, so that all three are impassable. Gold
+ * glitters. Random maps of any size can be built the same way.
+ * 
+ * @author Kyle Hill
+ */
+public final class ScenarioMaps {
+    /**
+     * Constructor
+     */
+    private ScenarioMaps() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Get the scenario files to benchmark: those named on the command line, or
+     * else every scenario in the scenarios directory
+     * 
+     * @param args
+     *            the command line arguments
+     * @return the scenario files
+     */
+    public static File[] getScenarioFiles(final String[] args) {
+        if (args.length > 0) {
+            final File[] files = new File[args.length];
+            for (int i = 0; i < args.length; i++) {
+                files[i] = new File(args[i]);
+            }
+            return files;
+        }
+
+        final File[] files = new File(SCENARIO_DIRECTORY).listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Build the fully explored map of a scenario
+     * 
+     * @param file
+     *            the scenario file
+     * @return the map
+     * @throws IOException
+     *             if the scenario cannot be read
+     */
+    public static Map load(final File file) throws IOException {
+        final Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        } catch (final SAXException e) {
+            throw new IOException(file.getPath() + ": " + e.getMessage());
+        } catch (final ParserConfigurationException e) {
+            throw new IOException(file.getPath() + ": " + e.getMessage());
+        }
+
+        final Dimension size = GaaLauncher.getWorldSize(document);
+        final Map map = new Map(size.width, size.height);
+
+        // Wumpi are agents, but are placed where the scenario starts them
+        final NodeList groups = document.getDocumentElement().getChildNodes();
+        for (int g = 0; g < groups.getLength(); g++) {
+            if (!(groups.item(g) instanceof Element)) {
+                continue;
+            }
+            final Element group = (Element) groups.item(g);
+            final String type = group.getAttribute("type");
+            if (!type.equals("Wall") && !type.equals("Pit") && !type.equals("Wumpus") && !type.equals("Gold")) {
+                continue;
+            }
+
+            final NodeList objects = group.getElementsByTagName("*");
+            for (int o = 0; o < objects.getLength(); o++) {
+                final Element object = (Element) objects.item(o);
+                final int x1 = coordinate(object, "x", "x1");
+                final int y1 = coordinate(object, "y", "y1");
+                final int x2 = coordinate(object, "x", "x2");
+                final int y2 = coordinate(object, "y", "y2");
+                for (int x = Math.max(1, Math.min(x1, x2)); x <= Math.min(size.width - 1, Math.max(x1, x2)); x++) {
+                    for (int y = Math.max(1, Math.min(y1, y2)); y <= Math.min(size.height - 1, Math.max(y1, y2)); y++) {
+                        if (type.equals("Wall")) {
+                            map.getTile(x, y).setObstruction(true);
+                        } else if (type.equals("Pit")) {
+                            map.getTile(x, y).setBreeze(true);
+                        } else if (type.equals("Gold")) {
+                            map.getTile(x, y).setGlitter(true);
+                        } else {
+                            map.getTile(x, y).setSmell(true);
+                        }
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Build a fully explored map with walls, pits, Wumpi and gold scattered
+     * at random
+     * 
+     * @param maxX
+     *            the maximum size for the X coordinate
+     * @param maxY
+     *            the maximum size for the Y coordinate
+     * @param seed
+     *            the seed for placing objects, so that every run builds the
+     *            same map
+     * @return the map
+     */
+    public static Map random(final int maxX, final int maxY, final long seed) {
+        final Random random = new Random(seed);
+        final Map map = new Map(maxX, maxY);
+        for (int x = 1; x < maxX; x++) {
+            for (int y = 1; y < maxY; y++) {
+                final double u = random.nextDouble();
+                if (u < RANDOM_WALLS) {
+                    map.getTile(x, y).setObstruction(true);
+                } else if (u < (RANDOM_WALLS + RANDOM_PITS)) {
+                    map.getTile(x, y).setBreeze(true);
+                } else if (u < (RANDOM_WALLS + RANDOM_PITS + RANDOM_WUMPI)) {
+                    map.getTile(x, y).setSmell(true);
+                } else if (u < (RANDOM_WALLS + RANDOM_PITS + RANDOM_WUMPI + RANDOM_GOLD)) {
+                    map.getTile(x, y).setGlitter(true);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Read one coordinate of a scenario object
+     * 
+     * @param object
+     *            the object's element
+     * @param simple
+     *            the attribute holding the coordinate of a simple object
+     * @param complex
+     *            the attribute holding the coordinate of a complex object
+     * @return the coordinate
+     */
+    private static int coordinate(final Element object, final String simple, final String complex) {
+        final String value = object.hasAttribute(simple) ? object.getAttribute(simple) : object.getAttribute(complex);
+        return Integer.parseInt(value.trim());
+    }
+
+    /**
+     * The share of a random map's tiles holding gold
+     */
+    private static final double RANDOM_GOLD = 0.01;
+
+    /**
+     * The share of a random map's tiles holding pits
+     */
+    private static final double RANDOM_PITS = 0.02;
+
+    /**
+     * The share of a random map's tiles holding walls
+     */
+    private static final double RANDOM_WALLS = 0.2;
+
+    /**
+     * The share of a random map's tiles holding Wumpi
+     */
+    private static final double RANDOM_WUMPI = 0.01;
+
+    /**
+     * The directory holding the bundled scenarios
+     */
+    private static final String SCENARIO_DIRECTORY = "scenarios";
+}
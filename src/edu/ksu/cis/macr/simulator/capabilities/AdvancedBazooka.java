@@ -5,11 +5,11 @@ import java.util.LinkedList;
 
 import edu.ksu.cis.macr.simulator.agent.IExecutionComponent;
 import edu.ksu.cis.macr.simulator.agents.AbstractGaaAgent;
-import edu.ksu.cis.macr.simulator.capabilities.map.LocationComparator;
 import edu.ksu.cis.macr.simulator.capabilities.map.Map;
 import edu.ksu.cis.macr.simulator.capabilities.map.Map.RangeType;
 import edu.ksu.cis.macr.simulator.capabilities.map.MapUtils;
 import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+import edu.ksu.cis.macr.simulator.capabilities.map.TileVisitor;
 import edu.ksu.cis.macr.simulator.capability.AbstractCapabilityAction;
 import edu.ksu.cis.macr.simulator.environment.Environment;
 import edu.ksu.cis.macr.simulator.roles.interpreter.Name;
@@ -54,9 +54,7 @@ public class AdvancedBazooka extends AbstractCapabilityAction implements GaaCapa
 
             // Clear the smell flag on all tiles within the kill radius.
             // NOTE: This assumes no wumpi are ever adjacent to each other!
-            for (final Tile tile : agent.getMap().getNeighbors(loc, Map.SMELL_RANGE - 1, Map.SMELL_RANGE_TYPE)) {
-                tile.setSmell(false);
-            }
+            agent.getMap().forEachNeighbor(loc, Map.SMELL_RANGE - 1, Map.SMELL_RANGE_TYPE, CLEAR_SMELL);
             wumpiKilled = true;
         }
         return wumpiKilled;
@@ -112,29 +110,28 @@ public class AdvancedBazooka extends AbstractCapabilityAction implements GaaCapa
     public final void setTarget(@Name("loc") final LocationData loc) {
         final Map map = agent.getMap();
 
-        firingLocations = new LinkedList<LocationData>();
+        final LinkedList<LocationData> locations = new LinkedList<LocationData>();
 
         // Search all tiles within TARGETING_RANGE for possible firing positions
-        for (final Tile candidate : map.getNeighbors(loc, TARGETING_RANGE, TARGETING_RANGE_TYPE)) {
-            // Only add safe, navigable tiles that are in line with the target
-            final LocationData candidateLoc = candidate.getLocation();
-            if (!candidate.hasObstruction() && !candidate.isDangerous() && MapUtils.inLine(candidateLoc, loc)) {
-                // Only add firing positions to the list if there are no
-                // other obstructions between that position and the target
-                boolean canAdd = true;
-                for (final Tile between : map.getTilesBetween(candidateLoc, loc)) {
-                    if (between.hasObstruction()) {
-                        canAdd = false;
-                        break;
+        map.forEachNeighbor(loc, TARGETING_RANGE, TARGETING_RANGE_TYPE, new TileVisitor() {
+            @Override
+            public boolean visit(final Tile candidate) {
+                // Only add safe, navigable tiles that are in line with the
+                // target
+                if (!candidate.hasObstruction() && !candidate.isDangerous()) {
+                    final LocationData candidateLoc = candidate.getLocation();
+                    if (MapUtils.inLine(candidateLoc, loc) && !map.isObstructionBetween(candidateLoc, loc)) {
+                        // Only add firing positions to the list if there are
+                        // no other obstructions between that position and the
+                        // target
+                        locations.add(candidateLoc);
                     }
                 }
-
-                if (canAdd) {
-                    firingLocations.add(candidateLoc);
-                }
+                return true;
             }
-        }
-        Collections.sort(firingLocations, new LocationComparator(agent.getMover().getCurrentLocation()));
+        });
+        firingLocations = locations;
+        Collections.sort(firingLocations, map.getTravelDistances(agent.getMover().getCurrentLocation()));
     }
 
     /**
@@ -160,6 +157,17 @@ public class AdvancedBazooka extends AbstractCapabilityAction implements GaaCapa
         return canFire;
     }
 
+    /**
+     * Clears the smell flag on every tile visited
+     */
+    private static final TileVisitor CLEAR_SMELL = new TileVisitor() {
+        @Override
+        public boolean visit(final Tile tile) {
+            tile.setSmell(false);
+            return true;
+        }
+    };
+
     /**
      * The range to use for targeting Wumpis
      */
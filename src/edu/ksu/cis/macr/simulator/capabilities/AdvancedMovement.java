@@ -1,16 +1,23 @@
 package edu.ksu.cis.macr.simulator.capabilities;
 
-import java.util.Queue;
+import java.util.Iterator;
+import java.util.LinkedList;
 
 import edu.ksu.cis.macr.simulator.agent.Direction;
 import edu.ksu.cis.macr.simulator.agent.IExecutionComponent;
 import edu.ksu.cis.macr.simulator.agents.AbstractGaaAgent;
+import edu.ksu.cis.macr.simulator.capabilities.map.DistanceFieldNavigator;
+import edu.ksu.cis.macr.simulator.capabilities.map.HierarchicalNavigator;
+import edu.ksu.cis.macr.simulator.capabilities.map.IncrementalNavigator;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
 import edu.ksu.cis.macr.simulator.capabilities.map.MapUtils;
-import edu.ksu.cis.macr.simulator.capabilities.map.Navigator;
+import edu.ksu.cis.macr.simulator.capabilities.map.RouteFinder;
 import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
 import edu.ksu.cis.macr.simulator.capability.AbstractCapabilityAction;
 import edu.ksu.cis.macr.simulator.capability.Failure;
 import edu.ksu.cis.macr.simulator.environment.Environment;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
+import edu.ksu.cis.macr.simulator.metrics.Timer;
 import edu.ksu.cis.macr.simulator.roles.interpreter.Name;
 
 /**
@@ -142,22 +149,26 @@ public class AdvancedMovement extends AbstractCapabilityAction implements GaaCap
     private final Direction getNextMovement() {
         final LocationData destination = getDestinationLocation();
         if (destination != null) {
-            // Find a path to our destination location
-            final Queue<LocationData> path = navigator.findPath(agent.getMap(), getCurrentLocation(), destination);
-            if (path == null) {
-                // We cannot get to our destination if we get a null path
+            // We shouldn't be trying to move if we're already at our
+            // destination!
+            if (isAtDestinationLocation()) {
+                assert false;
                 return null;
+            }
 
-            } else if (path.isEmpty()) {
-                // We've reached our destination if we get an empty path. We
-                // shouldn't be trying to move since we're already at
-                // our destination!
-                assert false;
+            // Find the next step towards our destination location
+            final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            final LocationData next = getNavigator(destination).getNextStep(agent.getMap(), getCurrentLocation());
+            if (Metrics.ENABLED) {
+                NEXT_STEP_TIME.stop(start);
+            }
+            if (next == null) {
+                // We cannot get to our destination if there is no next step
                 return null;
             }
 
             // Move towards our destination location
-            return MapUtils.getDirection(getCurrentLocation(), path.peek());
+            return MapUtils.getDirection(getCurrentLocation(), next);
         }
 
         // We have no destination location set
@@ -165,6 +176,56 @@ public class AdvancedMovement extends AbstractCapabilityAction implements GaaCap
         return null;
     }
 
+    /**
+     * Get the navigator for the given destination. Navigators keep their
+     * search between moves, so the most recently used ones are kept around in
+     * case we return to their destinations. Small maps are searched tile by
+     * tile, which finds the shortest paths. The first trip to a destination
+     * uses D* Lite, which only searches as far as it needs to reach us. A
+     * destination we come back to after its navigator has gone, such as a gold
+     * return location, uses the distances the map keeps from every tile to it,
+     * which are searched once and then only repaired. Large maps are searched
+     * hierarchically, which is much cheaper.
+     * 
+     * @param destination
+     *            the destination
+     * @return the navigator that finds the way to the destination
+     */
+    private final RouteFinder getNavigator(final LocationData destination) {
+        final Iterator<RouteFinder> it = navigators.iterator();
+        while (it.hasNext()) {
+            final RouteFinder navigator = it.next();
+            if (navigator.getDestination().equals(destination)) {
+                it.remove();
+                navigators.addFirst(navigator);
+                return navigator;
+            }
+        }
+
+        if (navigators.size() >= MAX_NAVIGATORS) {
+            navigators.removeLast();
+        }
+
+        // Remember the destinations we have been going to
+        final boolean isReturning = destinations.remove(destination);
+        if (destinations.size() >= MAX_DESTINATIONS) {
+            destinations.removeLast();
+        }
+        destinations.addFirst(destination);
+
+        final Map map = agent.getMap();
+        final RouteFinder navigator;
+        if (((long) map.getMaxX() * map.getMaxY()) > HIERARCHICAL_TILES) {
+            navigator = new HierarchicalNavigator(destination);
+        } else if (isReturning) {
+            navigator = new DistanceFieldNavigator(destination);
+        } else {
+            navigator = new IncrementalNavigator(destination);
+        }
+        navigators.addFirst(navigator);
+        return navigator;
+    }
+
     /**
      * Handle collisions with unknown obstacles (other agents) by moving in a
      * random direction temporarily, and then recalculating our route
@@ -181,7 +242,7 @@ public class AdvancedMovement extends AbstractCapabilityAction implements GaaCap
 
             // Attempt to move in a new random direction until we've actually
             // moved
-            final Direction d = MapUtils.getRandomDirection();
+            final Direction d = MapUtils.getRandomDirection(agent.getRandom());
 
             final LocationData curLoc = getCurrentLocation();
             final Tile nextTile = agent.getMap().getTile(curLoc, d);
@@ -200,6 +261,27 @@ public class AdvancedMovement extends AbstractCapabilityAction implements GaaCap
         return hasMoved;
     }
 
+    /**
+     * The number of tiles above which maps are searched hierarchically
+     */
+    private static final long HIERARCHICAL_TILES = 128 * 128;
+
+    /**
+     * The number of destinations remembered, which matches the number of
+     * distance fields a map keeps
+     */
+    private static final int MAX_DESTINATIONS = 8;
+
+    /**
+     * The number of destinations whose navigators are kept
+     */
+    private static final int MAX_NAVIGATORS = 4;
+
+    /**
+     * The time each search for the next step towards a destination takes
+     */
+    private static final Timer NEXT_STEP_TIME = Metrics.timer("movement.nextStep.time");
+
     /**
      * The agent who owns this capability
      */
@@ -215,15 +297,20 @@ public class AdvancedMovement extends AbstractCapabilityAction implements GaaCap
      */
     private LocationData destinationLocation = null;
 
+    /**
+     * The destinations this capability has found the way to, most recent first
+     */
+    private final LinkedList<LocationData> destinations = new LinkedList<LocationData>();
+
     /**
      * The underlying GPS capability;
      */
     private final GPSImpl gps;
 
     /**
-     * The navigator used by this capability
+     * The navigators used by this capability, most recently used first
      */
-    private final Navigator navigator = new Navigator();
+    private final LinkedList<RouteFinder> navigators = new LinkedList<RouteFinder>();
 
     /**
      * This capability's agent's previous destination
@@ -1,14 +1,19 @@
 package edu.ksu.cis.macr.simulator.capabilities;
 
-import java.io.Serializable;
+import java.util.HashMap;
 
 import edu.ksu.cis.macr.simulator.agent.IExecutionComponent;
 import edu.ksu.cis.macr.simulator.agents.AbstractGaaAgent;
 import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.capabilities.map.MapMessage;
 import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+import edu.ksu.cis.macr.simulator.capabilities.map.TileVisitor;
 import edu.ksu.cis.macr.simulator.capability.AbstractCapabilityAction;
 import edu.ksu.cis.macr.simulator.capability.Failure;
 import edu.ksu.cis.macr.simulator.environment.Environment;
+import edu.ksu.cis.macr.simulator.metrics.Counter;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
+import edu.ksu.cis.macr.simulator.metrics.Timer;
 import edu.ksu.cis.macr.simulator.roles.interpreter.Name;
 
 /**
@@ -19,73 +24,6 @@ import edu.ksu.cis.macr.simulator.roles.interpreter.Name;
  * 
  */
 public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapability {
-    /**
-     * Message that is passed between agents for coordination purposes
-     * 
-     * @author Kyle Hill
-     * 
-     */
-    private static final class Message implements Serializable {
-        /**
-         * The type of mesage this is
-         * 
-         * @author Kyle Hill
-         * 
-         */
-        public static enum MessageType {
-            /**
-             * The message sent is a map
-             */
-            MAP
-        }
-
-        /**
-         * Constructs a message of the given type with the given contents
-         * 
-         * @param t
-         *            type of message
-         * @param c
-         *            message contents
-         */
-        public Message(final MessageType t, final Object c) {
-            type = t;
-            contents = c;
-        }
-
-        /**
-         * Returns the message contents
-         * 
-         * @return the message contents
-         */
-        public Object getContents() {
-            return contents;
-        }
-
-        /**
-         * Returns the message type
-         * 
-         * @return the message type
-         */
-        public MessageType getType() {
-            return type;
-        }
-
-        /**
-         * The serialVersionUID
-         */
-        private static final long serialVersionUID = 1L;
-
-        /**
-         * The message contents
-         */
-        private final Object contents;
-
-        /**
-         * The message type
-         */
-        private final MessageType type;
-    }
-
     /**
      * Constructs a new AdvancedSensors capability
      * 
@@ -145,18 +83,58 @@ public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapa
     }
 
     /**
-     * Read all incoming messages from other agents
+     * Read all incoming messages from other agents. Messages that can't be
+     * decoded, or that don't fit our map, are skipped and counted. Skipping a
+     * delta leaves our map without its changes until the sender's next
+     * snapshot, which is at most SNAPSHOT_INTERVAL messages later.
      */
     public final void readOthersMaps() {
-        for (Message message = (Message) agent.receive(); message != null; message = (Message) agent.receive()) {
-            switch (message.getType()) {
-                case MAP:
-                    agent.getMap().mergeFrom((Map) message.getContents());
-                    break;
-
-                default:
-                    assert false;
-                    break;
+        for (Object content = agent.receive(); content != null; content = agent.receive()) {
+            if (!(content instanceof byte[])) {
+                // Only map messages are sent between agents
+                assert false;
+                continue;
+            }
+
+            final MapMessage message;
+            try {
+                message = MapMessage.fromBytes((byte[]) content);
+            } catch (final IllegalArgumentException e) {
+                // We can't tell who sent it, so just drop it. If it was a
+                // delta, the sender's following deltas still merge, and its
+                // next snapshot brings back what this one held.
+                UNDECODABLE_MESSAGES.increment();
+                continue;
+            }
+
+            // Ignore anything older than what we have already merged from the
+            // sender
+            final Long lastSequence = lastSequences.get(message.getSender());
+            if ((lastSequence != null) && (message.getSequence() <= lastSequence.longValue())) {
+                continue;
+            }
+            lastSequences.put(message.getSender(), Long.valueOf(message.getSequence()));
+
+            try {
+                switch (message.getType()) {
+                    case SNAPSHOT:
+                        agent.getMap().mergeFrom(message.getSnapshot());
+                        break;
+
+                    case DELTA:
+                        agent.getMap().mergeFrom(message.getDelta());
+                        break;
+
+                    default:
+                        assert false;
+                        break;
+                }
+            } catch (final IllegalArgumentException e) {
+                // The sender's map doesn't match ours. Forget where we were
+                // with the sender, so that its next snapshot is accepted
+                // whatever its sequence number.
+                lastSequences.remove(message.getSender());
+                UNMERGEABLE_MESSAGES.increment();
             }
         }
     }
@@ -169,6 +147,7 @@ public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapa
      *         otherwise
      */
     public final boolean readSensors() {
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
         final LocationData currentLocation = agent.getMover().getCurrentLocation();
         final LocationData oldLocation = agent.getMover().getOldLocation();
         final Map map = agent.getMap();
@@ -177,45 +156,53 @@ public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapa
         boolean updated = map.updateVisited(currentLocation);
 
         // Do we need to use the sonar?
-        for (final Tile tile : map.getNeighbors(currentLocation, Map.SONAR_RANGE, Map.SONAR_RANGE_TYPE)) {
-            if (!tile.hasObstruction() && !tile.hasSearched() && !tile.hasVisited()) {
-                updated |= map.updateObstructions(currentLocation, sonar.sense());
-                break;
+        if (!map.forEachNeighbor(currentLocation, Map.SONAR_RANGE, Map.SONAR_RANGE_TYPE, SONAR_NOT_NEEDED)) {
+            updated |= map.updateObstructions(currentLocation, sonar.sense());
+            if (Metrics.ENABLED) {
+                SONAR_READS.increment();
             }
         }
 
         // Do we need to use the smell sensor?
-        for (final Tile tile : map.getNeighbors(currentLocation, Map.SMELL_RANGE, Map.SMELL_RANGE_TYPE)) {
-            if (tile.hasSmell() || (!tile.hasObstruction() && !tile.hasSearched())) {
-                updated |= map.updateSmell(oldLocation, currentLocation, smell.sense());
-                break;
+        if (!map.forEachNeighbor(currentLocation, Map.SMELL_RANGE, Map.SMELL_RANGE_TYPE, SMELL_NOT_NEEDED)) {
+            updated |= map.updateSmell(oldLocation, currentLocation, smell.sense());
+            if (Metrics.ENABLED) {
+                SMELL_READS.increment();
             }
         }
 
         // Do we need to use the breeze sensor?
-        for (final Tile tile : map.getNeighbors(currentLocation, Map.BREEZE_RANGE, Map.BREEZE_RANGE_TYPE)) {
-            if (tile.hasBreeze() || (!tile.hasObstruction() && !tile.hasSearched())) {
-                updated |= map.updateBreeze(oldLocation, currentLocation, breeze.sense());
-                break;
+        if (!map.forEachNeighbor(currentLocation, Map.BREEZE_RANGE, Map.BREEZE_RANGE_TYPE, BREEZE_NOT_NEEDED)) {
+            updated |= map.updateBreeze(oldLocation, currentLocation, breeze.sense());
+            if (Metrics.ENABLED) {
+                BREEZE_READS.increment();
             }
         }
 
         // Do we need to use the glitter sensor?
-        for (final Tile tile : map.getNeighbors(currentLocation, Map.GLITTER_RANGE, Map.GLITTER_RANGE_TYPE)) {
-            if (tile.hasGlitter() || (!tile.hasObstruction() && !tile.hasSearched() && !tile.isDangerous())) {
-                updated |= map.updateGlitter(oldLocation, currentLocation, sparkleSensor.sense());
-                break;
+        if (!map.forEachNeighbor(currentLocation, Map.GLITTER_RANGE, Map.GLITTER_RANGE_TYPE, GLITTER_NOT_NEEDED)) {
+            updated |= map.updateGlitter(oldLocation, currentLocation, sparkleSensor.sense());
+            if (Metrics.ENABLED) {
+                GLITTER_READS.increment();
             }
         }
 
         // Update the searched locations near us
         updated |= map.updateSearched(currentLocation);
 
+        // Broadcast whenever our own map has changed, including changes made
+        // outside of this method such as claims. Merged changes don't count.
         readOthersMaps();
-        if (updated) {
+        if (map.isDirty()) {
             sendOthersMaps();
+            if (Metrics.ENABLED) {
+                BROADCASTS.increment();
+            }
         }
 
+        if (Metrics.ENABLED) {
+            READ_TIME.stop(start);
+        }
         return updated;
     }
 
@@ -228,10 +215,21 @@ public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapa
     }
 
     /**
-     * Send this agent's map to other agents
+     * Send the tiles that have changed in this agent's map since the last call
+     * to other agents. Every SNAPSHOT_INTERVAL messages, a snapshot of the
+     * whole map is sent instead so that agents who missed a message catch up.
+     * Messages are sent in the compact encoding of {@link MapMessage}.
      */
     public final void sendOthersMaps() {
-        agent.broadcast(null, new Message(Message.MessageType.MAP, agent.getMap()));
+        final Map map = agent.getMap();
+        final String sender = agent.getUniqueIdentifier().toString();
+        if ((sequence % SNAPSHOT_INTERVAL) == 0) {
+            sequence++;
+            agent.broadcast(null, new MapMessage(sender, sequence, map.takeSnapshot()).toBytes());
+        } else if (map.isDirty()) {
+            sequence++;
+            agent.broadcast(null, new MapMessage(sender, sequence, map.takeDelta()).toBytes());
+        }
     }
 
     /**
@@ -248,6 +246,94 @@ public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapa
         }
     }
 
+    /**
+     * The number of messages sent between full map snapshots
+     */
+    private static final int SNAPSHOT_INTERVAL = 16;
+
+    /**
+     * The number of times the breeze sensor is read
+     */
+    private static final Counter BREEZE_READS = Metrics.counter("sensors.breeze.reads");
+
+    /**
+     * The number of times reading the sensors leads to a broadcast
+     */
+    private static final Counter BROADCASTS = Metrics.counter("sensors.broadcasts");
+
+    /**
+     * The number of times the glitter sensor is read
+     */
+    private static final Counter GLITTER_READS = Metrics.counter("sensors.glitter.reads");
+
+    /**
+     * The time each reading of the sensors takes, including the broadcast
+     */
+    private static final Timer READ_TIME = Metrics.timer("sensors.readSensors.time");
+
+    /**
+     * The number of times the smell sensor is read
+     */
+    private static final Counter SMELL_READS = Metrics.counter("sensors.smell.reads");
+
+    /**
+     * The number of times the sonar is read
+     */
+    private static final Counter SONAR_READS = Metrics.counter("sensors.sonar.reads");
+
+    /**
+     * The number of messages from other agents that are skipped because they
+     * can't be decoded. These are counted whether or not metrics are enabled,
+     * as each may leave our map missing another agent's changes.
+     */
+    private static final Counter UNDECODABLE_MESSAGES = Metrics.counter("sensors.messages.undecodable");
+
+    /**
+     * The number of messages from other agents that are skipped because they
+     * don't fit our map. These are counted whether or not metrics are enabled.
+     */
+    private static final Counter UNMERGEABLE_MESSAGES = Metrics.counter("sensors.messages.unmergeable");
+
+    /**
+     * Stops at the first tile the breeze sensor could tell us about
+     */
+    private static final TileVisitor BREEZE_NOT_NEEDED = new TileVisitor() {
+        @Override
+        public boolean visit(final Tile tile) {
+            return !tile.hasBreeze() && (tile.hasObstruction() || tile.hasSearched());
+        }
+    };
+
+    /**
+     * Stops at the first tile the glitter sensor could tell us about
+     */
+    private static final TileVisitor GLITTER_NOT_NEEDED = new TileVisitor() {
+        @Override
+        public boolean visit(final Tile tile) {
+            return !tile.hasGlitter() && (tile.hasObstruction() || tile.hasSearched() || tile.isDangerous());
+        }
+    };
+
+    /**
+     * Stops at the first tile the smell sensor could tell us about
+     */
+    private static final TileVisitor SMELL_NOT_NEEDED = new TileVisitor() {
+        @Override
+        public boolean visit(final Tile tile) {
+            return !tile.hasSmell() && (tile.hasObstruction() || tile.hasSearched());
+        }
+    };
+
+    /**
+     * Stops at the first tile the sonar could tell us about
+     */
+    private static final TileVisitor SONAR_NOT_NEEDED = new TileVisitor() {
+        @Override
+        public boolean visit(final Tile tile) {
+            return tile.hasObstruction() || tile.hasSearched() || tile.hasVisited();
+        }
+    };
+
     /**
      * The agent who owns this capability
      */
@@ -258,6 +344,16 @@ public class AdvancedSensors extends AbstractCapabilityAction implements GaaCapa
      */
     private final BreezeSensor breeze;
 
+    /**
+     * The sequence number of the last message merged from each agent
+     */
+    private final java.util.Map<String, Long> lastSequences = new HashMap<String, Long>();
+
+    /**
+     * The sequence number of the last message this agent sent
+     */
+    private long sequence = 0;
+
     /**
      * The agent's smell sensor capability
      */
@@ -47,7 +47,7 @@ public class OmacsInterface extends AbstractCapabilityAction implements GaaCapab
         // Instantiate a new ReturnGold goal
         final ReturnGold returnGold = new ReturnGold();
         final GoldReturnerRole goldReturnerRole = new GoldReturnerRole();
-        final LocationData loc = MapUtils.getGoldReturnLocation();
+        final LocationData loc = MapUtils.getGoldReturnLocation(agent.getRandom());
 
         final java.util.Map<UniqueIdentifier, Object> paramMap = new HashMap<UniqueIdentifier, Object>();
         paramMap.put(GoalParameters.LOCATION_DATA, loc);
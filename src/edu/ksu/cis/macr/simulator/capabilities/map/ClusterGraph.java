@@ -0,0 +1,441 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.util.Arrays;
+
+/**
+ * An abstraction of a map for hierarchical path finding. The map is divided
+ * into SIZE x SIZE clusters. Wherever an agent can cross the border between two
+ * neighboring clusters, entrances are placed on each side of the border, and
+ * the distances between the entrances of each cluster, moving only within the
+ * cluster, are kept. A search between entrances visits a few tiles per cluster
+ * instead of every tile, and only the clusters the path passes through need to
+ * be searched tile by tile.
+ * <p>
+ * Clusters are built the first time they are searched. When a tile changes
+ * between passable and not, the clusters that contain it or border it are
+ * thrown away and built again when next needed.
+ * 
+ * @author Kyle Hill
+ */
+final class ClusterGraph {
+    /**
+     * A single cluster: its entrances, and the distances between them
+     */
+    private static final class Cluster {
+        /**
+         * Constructs a new Cluster
+         * 
+         * @param e
+         *            the entrances' tile indexes, in increasing order
+         * @param d
+         *            the distances between the entrances
+         */
+        Cluster(final int[] e, final int[] d) {
+            entrances = e;
+            distances = d;
+        }
+
+        /**
+         * The distance from each entrance to each other entrance, indexed by
+         * from * number of entrances + to, INFINITY if there is no way within
+         * the cluster
+         */
+        final int[] distances;
+
+        /**
+         * The entrances' tile indexes, in increasing order
+         */
+        final int[] entrances;
+    }
+
+    /**
+     * Constructs a new ClusterGraph
+     * 
+     * @param m
+     *            the map to abstract
+     */
+    ClusterGraph(final Map m) {
+        map = m;
+        maxX = m.getMaxX();
+        maxY = m.getMaxY();
+        clustersX = (maxX + SIZE - 1) / SIZE;
+        clustersY = (maxY + SIZE - 1) / SIZE;
+        clusters = new Cluster[clustersX * clustersY];
+        neighborOffsets = Navigator.neighborOffsets(m);
+        blocked = m.getBlockedBits();
+        version = m.getPassabilityVersion();
+    }
+
+    /**
+     * Get the cluster containing the given tile
+     * 
+     * @param i
+     *            the tile index
+     * @return the cluster index
+     */
+    int clusterOf(final int i) {
+        return (((i / maxY) / SIZE) * clustersY) + ((i % maxY) / SIZE);
+    }
+
+    /**
+     * Get the distance between two entrances of a cluster, moving only within
+     * the cluster
+     * 
+     * @param c
+     *            the cluster index
+     * @param from
+     *            the position of the first entrance in
+     *            {@link #entrances(int)}
+     * @param to
+     *            the position of the second entrance
+     * @return the distance, INFINITY if there is no way within the cluster
+     */
+    int distance(final int c, final int from, final int to) {
+        final Cluster cluster = cluster(c);
+        return cluster.distances[(from * cluster.entrances.length) + to];
+    }
+
+    /**
+     * Get the distance from the given tile to each tile of its cluster, moving
+     * only within the cluster
+     * 
+     * @param source
+     *            the tile index
+     * @return the distances, indexed by {@link #localIndex(int)}, INFINITY
+     *         where there is no way within the cluster
+     */
+    int[] distancesFrom(final int source) {
+        final int c = clusterOf(source);
+        final int minX = Math.max(1, (c / clustersY) * SIZE);
+        final int maxTX = Math.min(maxX - 1, (((c / clustersY) + 1) * SIZE) - 1);
+        final int minY = Math.max(1, (c % clustersY) * SIZE);
+        final int maxTY = Math.min(maxY - 1, (((c % clustersY) + 1) * SIZE) - 1);
+
+        final int[] distances = new int[SIZE * SIZE];
+        Arrays.fill(distances, INFINITY);
+        final int[] queue = new int[SIZE * SIZE];
+        int head = 0;
+        int tail = 0;
+        distances[localIndex(source)] = 0;
+        queue[tail++] = source;
+
+        // Every step costs the same, so a breadth first search finds the
+        // shortest distances
+        while (head < tail) {
+            final int u = queue[head++];
+            final int next = distances[localIndex(u)] + Tile.getCost();
+            for (final int offset : neighborOffsets) {
+                final int n = u + offset;
+                final int x = n / maxY;
+                final int y = n % maxY;
+                if ((x >= minX) && (x <= maxTX) && (y >= minY) && (y <= maxTY) && isPassable(n) && (distances[localIndex(n)] == INFINITY)) {
+                    distances[localIndex(n)] = next;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Get the position of the given tile among the entrances of its cluster
+     * 
+     * @param i
+     *            the tile index
+     * @return the position in {@link #entrances(int)}, negative if the tile is
+     *         not an entrance
+     */
+    int entranceIndex(final int i) {
+        return Arrays.binarySearch(cluster(clusterOf(i)).entrances, i);
+    }
+
+    /**
+     * Get the entrances of a cluster
+     * 
+     * @param c
+     *            the cluster index
+     * @return the entrances' tile indexes, in increasing order, which must not
+     *         be modified
+     */
+    int[] entrances(final int c) {
+        return cluster(c).entrances;
+    }
+
+    /**
+     * Get the version of the map's passability this graph was last brought up
+     * to date with
+     * 
+     * @return the version
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Is the given tile passable, as of the last time this graph was brought up
+     * to date?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is passable, false otherwise
+     */
+    boolean isPassable(final int i) {
+        return !blocked.get(i);
+    }
+
+    /**
+     * Get the position of the given tile within its cluster
+     * 
+     * @param i
+     *            the tile index
+     * @return the index into the arrays returned by
+     *         {@link #distancesFrom(int)}
+     */
+    int localIndex(final int i) {
+        return (((i / maxY) % SIZE) * SIZE) + ((i % maxY) % SIZE);
+    }
+
+    /**
+     * Bring this graph up to date with the map, throwing away every cluster
+     * whose entrances or distances may have changed
+     */
+    void update() {
+        final long v = map.getPassabilityVersion();
+        if (v == version) {
+            return;
+        }
+        version = v;
+        final TileBits previous = blocked;
+        blocked = map.getBlockedBits();
+
+        // A changed tile affects its own cluster, and the entrances of any
+        // cluster across a border from it
+        for (int p = 0; p < blocked.pageCount(); p++) {
+            if (!blocked.hasPage(p) && !previous.hasPage(p)) {
+                continue;
+            }
+            for (int w = p << TileBits.PAGE_SHIFT; w < Math.min(blocked.words(), (p + 1) << TileBits.PAGE_SHIFT); w++) {
+                long bits = blocked.word(w) ^ previous.word(w);
+                while (bits != 0) {
+                    final int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    clusters[clusterOf(i)] = null;
+                    for (final int offset : neighborOffsets) {
+                        if (map.contains(i + offset)) {
+                            clusters[clusterOf(i + offset)] = null;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Append the shortest path between two tiles of the same cluster, moving
+     * only within the cluster
+     * 
+     * @param from
+     *            the tile to start from, which is not appended
+     * @param to
+     *            the tile to get to
+     * @param path
+     *            the path to append to
+     */
+    void walk(final int from, final int to, final TilePath path) {
+        assert clusterOf(from) == clusterOf(to);
+
+        // Follow the distances to the destination downhill
+        final int[] distances = distancesFrom(to);
+        final int c = clusterOf(to);
+        int u = from;
+        while (u != to) {
+            final int d = distances[localIndex(u)];
+            assert d < INFINITY;
+            for (final int offset : neighborOffsets) {
+                final int n = u + offset;
+                if (map.contains(n) && (clusterOf(n) == c) && (distances[localIndex(n)] == (d - Tile.getCost()))) {
+                    u = n;
+                    break;
+                }
+            }
+            path.add(u);
+        }
+    }
+
+    /**
+     * Find the entrances on one side of a cluster. The border is split into
+     * runs of tiles that can be crossed. Short runs get a single entrance in
+     * the middle, long runs one at each end. The runs are the same from both
+     * sides of the border, so the entrances on each side line up.
+     * 
+     * @param first
+     *            the index of the first tile inside the cluster along the side
+     * @param step
+     *            the index offset from one tile along the side to the next
+     * @param length
+     *            the number of tiles along the side
+     * @param across
+     *            the index offset from a tile to its neighbor across the
+     *            border
+     * @param entrances
+     *            the entrances found so far, to append to
+     * @param n
+     *            the number of entrances found so far
+     * @return the number of entrances found, including these
+     */
+    private int addEntrances(final int first, final int step, final int length, final int across, final int[] entrances, final int n) {
+        int count = n;
+        int runStart = -1;
+        for (int k = 0; k <= length; k++) {
+            final int i = first + (k * step);
+            final boolean open = (k < length) && isPassable(i) && isPassable(i + across);
+            if (open && (runStart < 0)) {
+                runStart = k;
+            } else if (!open && (runStart >= 0)) {
+                final int runLength = k - runStart;
+                if (runLength < LONG_RUN) {
+                    entrances[count++] = first + ((runStart + ((runLength - 1) / 2)) * step);
+                } else {
+                    entrances[count++] = first + (runStart * step);
+                    entrances[count++] = first + ((k - 1) * step);
+                }
+                runStart = -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get a cluster, building it if needed
+     * 
+     * @param c
+     *            the cluster index
+     * @return the cluster
+     */
+    private Cluster cluster(final int c) {
+        Cluster cluster = clusters[c];
+        if (cluster == null) {
+            cluster = build(c);
+            clusters[c] = cluster;
+        }
+        return cluster;
+    }
+
+    /**
+     * Build a cluster from the map as of the last update
+     * 
+     * @param c
+     *            the cluster index
+     * @return the cluster
+     */
+    private Cluster build(final int c) {
+        final int cX = c / clustersY;
+        final int cY = c % clustersY;
+        final int minX = Math.max(1, cX * SIZE);
+        final int maxTX = Math.min(maxX - 1, ((cX + 1) * SIZE) - 1);
+        final int minY = Math.max(1, cY * SIZE);
+        final int maxTY = Math.min(maxY - 1, ((cY + 1) * SIZE) - 1);
+        final int width = (maxTX - minX) + 1;
+        final int height = (maxTY - minY) + 1;
+
+        // Each side has at most one entrance per tile
+        int[] entrances = new int[4 * SIZE];
+        int n = 0;
+        if (cX > 0) {
+            n = addEntrances((minX * maxY) + minY, 1, height, -maxY, entrances, n);
+        }
+        if (cX < (clustersX - 1)) {
+            n = addEntrances((maxTX * maxY) + minY, 1, height, maxY, entrances, n);
+        }
+        if (cY > 0) {
+            n = addEntrances((minX * maxY) + minY, maxY, width, -1, entrances, n);
+        }
+        if (cY < (clustersY - 1)) {
+            n = addEntrances((minX * maxY) + maxTY, maxY, width, 1, entrances, n);
+        }
+
+        // Corner tiles may be entrances on two sides
+        Arrays.sort(entrances, 0, n);
+        int unique = 0;
+        for (int k = 0; k < n; k++) {
+            if ((unique == 0) || (entrances[k] != entrances[unique - 1])) {
+                entrances[unique++] = entrances[k];
+            }
+        }
+        entrances = Arrays.copyOf(entrances, unique);
+
+        final int[] distances = new int[unique * unique];
+        for (int from = 0; from < unique; from++) {
+            final int[] d = distancesFrom(entrances[from]);
+            for (int to = 0; to < unique; to++) {
+                distances[(from * unique) + to] = d[localIndex(entrances[to])];
+            }
+        }
+        return new Cluster(entrances, distances);
+    }
+
+    /**
+     * The distance used for tiles that cannot be reached
+     */
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     * The length of a run of crossable border tiles from which it gets an
+     * entrance at each end, rather than a single one in the middle
+     */
+    private static final int LONG_RUN = 6;
+
+    /**
+     * The width and height of a cluster
+     */
+    static final int SIZE = 16;
+
+    /**
+     * One bit per tile, set if the tile was not passable the last time this
+     * graph was brought up to date
+     */
+    private TileBits blocked;
+
+    /**
+     * The clusters, indexed by cluster x * clustersY + cluster y, null where
+     * not built yet
+     */
+    private final Cluster[] clusters;
+
+    /**
+     * The number of clusters along the x axis
+     */
+    private final int clustersX;
+
+    /**
+     * The number of clusters along the y axis
+     */
+    private final int clustersY;
+
+    /**
+     * The map this graph abstracts
+     */
+    private final Map map;
+
+    /**
+     * The maximum size for the world's X coordinate
+     */
+    private final int maxX;
+
+    /**
+     * The maximum size for the world's Y coordinate
+     */
+    private final int maxY;
+
+    /**
+     * Index offsets of a tile's orthogonal neighbors
+     */
+    private final int[] neighborOffsets;
+
+    /**
+     * The map's passability version the last time this graph was brought up
+     * to date
+     */
+    private long version;
+}
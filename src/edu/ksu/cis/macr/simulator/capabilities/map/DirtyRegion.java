@@ -0,0 +1,160 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+/**
+ * A {@link MapListener} that remembers which tiles have changed since it was
+ * last cleared, along with their bounding rectangle
+ * 
+ * @author Kyle Hill
+ */
+public class DirtyRegion implements MapListener {
+    /**
+     * Constructs a new, empty DirtyRegion
+     */
+    public DirtyRegion() {
+        clear();
+    }
+
+    /**
+     * Forget every change seen so far
+     */
+    public final void clear() {
+        if (tiles != null) {
+            tiles.clear();
+        }
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Has the tile at the given location changed?
+     * 
+     * @param x
+     *            the x-coordinate
+     * @param y
+     *            the y-coordinate
+     * @return true if the tile has changed, false otherwise
+     */
+    public final boolean contains(final int x, final int y) {
+        if ((x < minX) || (x > maxX) || (y < minY) || (y > maxY)) {
+            return false;
+        }
+        return tiles.get((x * rows) + y);
+    }
+
+    /**
+     * Get the largest x-coordinate of any changed tile
+     * 
+     * @return the largest x-coordinate, Integer.MIN_VALUE if nothing changed
+     */
+    public final int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the largest y-coordinate of any changed tile
+     * 
+     * @return the largest y-coordinate, Integer.MIN_VALUE if nothing changed
+     */
+    public final int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Get the smallest x-coordinate of any changed tile
+     * 
+     * @return the smallest x-coordinate, Integer.MAX_VALUE if nothing changed
+     */
+    public final int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the smallest y-coordinate of any changed tile
+     * 
+     * @return the smallest y-coordinate, Integer.MAX_VALUE if nothing changed
+     */
+    public final int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Has any tile within the given rectangle changed?
+     * 
+     * @param x1
+     *            the smallest x-coordinate of the rectangle
+     * @param y1
+     *            the smallest y-coordinate of the rectangle
+     * @param x2
+     *            the largest x-coordinate of the rectangle
+     * @param y2
+     *            the largest y-coordinate of the rectangle
+     * @return true if a tile within the rectangle has changed, false otherwise
+     */
+    public final boolean intersects(final int x1, final int y1, final int x2, final int y2) {
+        for (int x = Math.max(x1, minX); x <= Math.min(x2, maxX); x++) {
+            for (int y = Math.max(y1, minY); y <= Math.min(y2, maxY); y++) {
+                if (contains(x, y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has nothing changed?
+     * 
+     * @return true if no tile has changed, false otherwise
+     */
+    public final boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    @Override
+    public void tileChanged(final Map map, final int x, final int y, final int flags) {
+        if ((tiles == null) || (rows != map.getMaxY())) {
+            // Size the changed tiles to the first map we hear from
+            tiles = new TileBits(((map.getMaxX() * map.getMaxY()) + 63) >>> 6);
+            rows = map.getMaxY();
+        }
+        tiles.set((x * rows) + y, true);
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    /**
+     * The largest x-coordinate of any changed tile
+     */
+    private int maxX;
+
+    /**
+     * The largest y-coordinate of any changed tile
+     */
+    private int maxY;
+
+    /**
+     * The smallest x-coordinate of any changed tile
+     */
+    private int minX;
+
+    /**
+     * The smallest y-coordinate of any changed tile
+     */
+    private int minY;
+
+    /**
+     * The maximum size for the Y coordinate of the map the changed tiles
+     * belong to
+     */
+    private int rows = 0;
+
+    /**
+     * One bit per tile, set if the tile has changed, null until the first
+     * change is seen
+     */
+    private TileBits tiles = null;
+}
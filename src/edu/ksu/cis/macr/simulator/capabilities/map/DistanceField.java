@@ -0,0 +1,267 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+/**
+ * The number of steps from every tile of a map to a single target, found by a
+ * breadth first search outwards from the target over passable tiles. Once
+ * built, the next step towards the target from any tile is a single lookup:
+ * the neighbor one step closer.
+ * <p>
+ * When tiles change between passable and not, only the distances that depended
+ * on them are searched again. Tiles whose every shortest path went through a
+ * newly blocked tile are cut loose, and they and any newly opened tiles are
+ * then searched outwards from their neighbors that are still reachable.
+ * 
+ * @author Kyle Hill
+ */
+final class DistanceField {
+    /**
+     * Constructs a new DistanceField, searching the whole map
+     * 
+     * @param m
+     *            the map
+     * @param t
+     *            the target's index
+     */
+    DistanceField(final Map m, final int t) {
+        map = m;
+        target = t;
+        neighborOffsets = Navigator.neighborOffsets(m);
+        distances = new TileInts(m.getMaxX() * m.getMaxY(), INFINITY);
+        open = new IndexedHeap(m.getMaxX() * m.getMaxY());
+        blocked = m.getBlockedBits();
+        version = m.getPassabilityVersion();
+
+        if (isPassable(target)) {
+            distances.set(target, 0);
+            open.put(target, 0);
+        }
+        search();
+    }
+
+    /**
+     * Get the number of steps from the given tile to the target, as of the
+     * last update
+     * 
+     * @param i
+     *            the tile index
+     * @return the number of steps, INFINITY if the target cannot be reached
+     */
+    int distance(final int i) {
+        return distances.get(i);
+    }
+
+    /**
+     * Get the next step towards the target from the given tile, as of the last
+     * update
+     * 
+     * @param from
+     *            the tile index
+     * @return the index of the neighbor one step closer to the target, -1 if
+     *         the target cannot be reached or if at the target already
+     */
+    int nextStep(final int from) {
+        if (!isPassable(from)) {
+            // We may be standing on a tile the map thinks is blocked. Like
+            // the path searches, treat the tile we start from as passable, and
+            // step to whichever neighbor is nearest the target.
+            int best = -1;
+            for (final int offset : neighborOffsets) {
+                final int n = from + offset;
+                if (map.contains(n) && isPassable(n) && (distances.get(n) < INFINITY) && ((best < 0) || (distances.get(n) < distances.get(best)))) {
+                    best = n;
+                }
+            }
+            return best;
+        }
+
+        final int d = distances.get(from);
+        if ((d == 0) || (d >= INFINITY)) {
+            return -1;
+        }
+        for (final int offset : neighborOffsets) {
+            final int n = from + offset;
+            if (map.contains(n) && (distances.get(n) == (d - 1))) {
+                return n;
+            }
+        }
+        assert false;
+        return -1;
+    }
+
+    /**
+     * Bring this field up to date with the map's passability
+     */
+    void update() {
+        final long v = map.getPassabilityVersion();
+        if (v == version) {
+            return;
+        }
+        version = v;
+        final TileBits previous = blocked;
+        blocked = map.getBlockedBits();
+
+        final TilePath changed = new TilePath();
+        for (int p = 0; p < blocked.pageCount(); p++) {
+            if (!blocked.hasPage(p) && !previous.hasPage(p)) {
+                continue;
+            }
+            for (int w = p << TileBits.PAGE_SHIFT; w < Math.min(blocked.words(), (p + 1) << TileBits.PAGE_SHIFT); w++) {
+                long bits = blocked.word(w) ^ previous.word(w);
+                while (bits != 0) {
+                    changed.add((w << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        // Cut loose every tile that can no longer reach the target the way it
+        // used to. Tiles are examined nearest first, so by the time a tile is
+        // examined, every tile that could still support it is known.
+        for (int k = 0; k < changed.size(); k++) {
+            final int i = changed.get(k);
+            if (!isPassable(i) && (distances.get(i) < INFINITY)) {
+                open.put(i, distances.get(i));
+            }
+        }
+        final TilePath loose = new TilePath();
+        while (!open.isEmpty()) {
+            final int u = open.poll();
+            if (isPassable(u) && isSupported(u)) {
+                continue;
+            }
+            final int d = distances.get(u);
+            distances.set(u, INFINITY);
+            loose.add(u);
+            for (final int offset : neighborOffsets) {
+                final int n = u + offset;
+                if (map.contains(n) && (distances.get(n) == (d + 1))) {
+                    open.put(n, d + 1);
+                }
+            }
+        }
+
+        // Search again from the neighbors of the tiles cut loose, and of the
+        // tiles newly opened
+        seed(loose);
+        seed(changed);
+        search();
+    }
+
+    /**
+     * Is the given tile passable, as of the last update?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is passable, false otherwise
+     */
+    private boolean isPassable(final int i) {
+        return !blocked.get(i);
+    }
+
+    /**
+     * Does the given tile still have a neighbor one step closer to the target?
+     * 
+     * @param u
+     *            the tile index
+     * @return true if the tile's distance still holds, false otherwise
+     */
+    private boolean isSupported(final int u) {
+        final int d = distances.get(u);
+        if (d == 0) {
+            return true;
+        }
+        for (final int offset : neighborOffsets) {
+            final int n = u + offset;
+            if (map.contains(n) && isPassable(n) && (distances.get(n) == (d - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Search outwards from the tiles in the open list, lowering distances
+     * wherever a shorter way is found
+     */
+    private void search() {
+        while (!open.isEmpty()) {
+            final int u = open.poll();
+            final int next = distances.get(u) + 1;
+            for (final int offset : neighborOffsets) {
+                final int n = u + offset;
+                if (map.contains(n) && isPassable(n) && (next < distances.get(n))) {
+                    distances.set(n, next);
+                    open.put(n, next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Place the given tiles in the open list with the distance their
+     * neighbors give them, if they are passable and can reach the target
+     * 
+     * @param tiles
+     *            the tiles
+     */
+    private void seed(final TilePath tiles) {
+        for (int k = 0; k < tiles.size(); k++) {
+            final int u = tiles.get(k);
+            if (!isPassable(u)) {
+                continue;
+            }
+
+            int best = (u == target) ? 0 : INFINITY;
+            for (final int offset : neighborOffsets) {
+                final int n = u + offset;
+                if (map.contains(n) && isPassable(n) && (distances.get(n) < INFINITY)) {
+                    best = Math.min(best, distances.get(n) + 1);
+                }
+            }
+            if (best < distances.get(u)) {
+                distances.set(u, best);
+                open.put(u, best);
+            }
+        }
+    }
+
+    /**
+     * The distance of tiles that cannot reach the target
+     */
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     * One bit per tile, set if the tile was not passable at the last update
+     */
+    private TileBits blocked;
+
+    /**
+     * The number of steps from each tile to the target
+     */
+    private final TileInts distances;
+
+    /**
+     * The map this field covers
+     */
+    private final Map map;
+
+    /**
+     * Index offsets of a tile's orthogonal neighbors
+     */
+    private final int[] neighborOffsets;
+
+    /**
+     * The tiles waiting to be examined, nearest to the target first
+     */
+    private final IndexedHeap open;
+
+    /**
+     * The target's index
+     */
+    private final int target;
+
+    /**
+     * The map's passability version at the last update
+     */
+    private long version;
+}
@@ -0,0 +1,46 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+
+/**
+ * Finds the way to a single destination by following the map's distances to
+ * it downhill. The distances are kept by the map and shared by every
+ * navigator going to the same destination, so after the first search each
+ * step is a single lookup, plus whatever searching changes to the map call for.
+ * 
+ * @author Kyle Hill
+ */
+public class DistanceFieldNavigator implements RouteFinder {
+    /**
+     * Constructs a new DistanceFieldNavigator
+     * 
+     * @param to
+     *            the location to get to
+     */
+    public DistanceFieldNavigator(final LocationData to) {
+        destination = new LocationData(to.getX(), to.getY());
+    }
+
+    @Override
+    public final LocationData getDestination() {
+        return destination;
+    }
+
+    @Override
+    public final LocationData getNextStep(final Map map, final LocationData from) {
+        final int target = map.indexOf(destination.getX(), destination.getY());
+        if (!map.contains(target)) {
+            return null;
+        }
+
+        final DistanceField field = map.getDistanceField(target);
+        field.update();
+        final int next = field.nextStep(map.indexOf(from.getX(), from.getY()));
+        return (next < 0) ? null : new LocationData(map.xOf(next), map.yOf(next));
+    }
+
+    /**
+     * The location this navigator finds the way to
+     */
+    private final LocationData destination;
+}
@@ -0,0 +1,352 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.util.Queue;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+
+/**
+ * Finds the way to a single destination using hierarchical path finding
+ * (HPA*). The search first runs over the entrances between clusters of the
+ * map's {@link ClusterGraph}, and the path is then filled in within each
+ * cluster it passes through. The path found is followed until the map changes
+ * in a way that blocks it, or the agent strays from it.
+ * <p>
+ * Paths found this way are at most a little longer than the shortest path,
+ * but take far less searching on large maps. When the destination is in the
+ * same cluster as the agent or one next to it, the tiles are searched directly
+ * with jump point search instead, which gives the shortest path.
+ * 
+ * @author Kyle Hill
+ */
+public class HierarchicalNavigator implements RouteFinder {
+    /**
+     * Constructs a new HierarchicalNavigator
+     * 
+     * @param to
+     *            the location to get to
+     */
+    public HierarchicalNavigator(final LocationData to) {
+        destination = new LocationData(to.getX(), to.getY());
+    }
+
+    @Override
+    public final LocationData getDestination() {
+        return destination;
+    }
+
+    @Override
+    public final LocationData getNextStep(final Map map, final LocationData from) {
+        final int start = map.indexOf(from.getX(), from.getY());
+        final int goal = map.indexOf(destination.getX(), destination.getY());
+        final ClusterGraph graph = map.getClusterGraph();
+        graph.update();
+
+        // If we know we can't reach our goal, or we are there already, there
+        // is no step to take
+        if (!map.contains(goal) || !graph.isPassable(goal) || (start == goal)) {
+            return null;
+        }
+
+        if ((map != this.map) || (start != expected) || ((graph.getVersion() != version) && ((next == path.size()) || !isOpen(graph)))) {
+            // Search again if we strayed from the path, the path has been
+            // blocked, or there was no path and the map has changed since
+            this.map = map;
+            next = 0;
+            path.clear();
+            findPath(graph, start, goal);
+            if ((path.size() > 0) && isNearby(start, goal)) {
+                // There is a path, so searching the tiles directly won't have
+                // to cover everything we can reach to find out there isn't
+                final Queue<LocationData> shortest = nearby.findPath(map, from, destination);
+                if (shortest != null) {
+                    path.clear();
+                    for (final LocationData location : shortest) {
+                        path.add(map.indexOf(location.getX(), location.getY()));
+                    }
+                }
+            }
+        }
+        version = graph.getVersion();
+
+        if (next == path.size()) {
+            // There is no path
+            expected = start;
+            return null;
+        }
+        final int step = path.get(next++);
+        expected = step;
+        return new LocationData(map.xOf(step), map.yOf(step));
+    }
+
+    /**
+     * Find a path between two tiles, appending it to the current path. Nothing
+     * is appended if there is no path.
+     * 
+     * @param graph
+     *            the graph of the map to search within
+     * @param source
+     *            the tile to start from
+     * @param goal
+     *            the tile to get to
+     */
+    private final void findPath(final ClusterGraph graph, final int source, final int goal) {
+        nextGeneration();
+
+        final int goalCluster = graph.clusterOf(goal);
+        final int[] sourceDistances = graph.distancesFrom(source);
+        final int[] goalDistances = graph.distancesFrom(goal);
+
+        visit(source, 0, source, goal);
+
+        // Search the graph of entrances, along with the source and the goal
+        boolean found = false;
+        while (!open.isEmpty()) {
+            final int cur = open.poll();
+            if (cur == goal) {
+                found = true;
+                break;
+            }
+            closed.set(cur, generation);
+
+            final int c = graph.clusterOf(cur);
+            final int[] entrances = graph.entrances(c);
+            final int k = graph.entranceIndex(cur);
+            if (k >= 0) {
+                // Every other entrance of the cluster it can get to
+                for (int j = 0; j < entrances.length; j++) {
+                    final int d = graph.distance(c, k, j);
+                    if ((j != k) && (d < ClusterGraph.INFINITY)) {
+                        relax(entrances[j], cost.get(cur) + d, cur, goal);
+                    }
+                }
+
+                // The entrances across the cluster's borders
+                for (final int offset : neighborOffsets) {
+                    final int n = cur + offset;
+                    if (map.contains(n) && (graph.clusterOf(n) != c) && (graph.entranceIndex(n) >= 0)) {
+                        relax(n, cost.get(cur) + Tile.getCost(), cur, goal);
+                    }
+                }
+            } else if (cur == source) {
+                for (final int entrance : entrances) {
+                    final int d = sourceDistances[graph.localIndex(entrance)];
+                    if (d < ClusterGraph.INFINITY) {
+                        relax(entrance, d, cur, goal);
+                    }
+                }
+            }
+
+            // The goal itself, if it can be reached within the cluster
+            if (c == goalCluster) {
+                final int d = goalDistances[graph.localIndex(cur)];
+                if (d < ClusterGraph.INFINITY) {
+                    relax(goal, cost.get(cur) + d, cur, goal);
+                }
+            }
+        }
+
+        if (!found) {
+            return;
+        }
+
+        // Follow the parent pointers back to the start, then fill in the path
+        // between each pair of nodes
+        final TilePath nodes = new TilePath();
+        for (int i = goal; i != source; i = parent.get(i)) {
+            nodes.add(i);
+        }
+        int previous = source;
+        for (int k = nodes.size() - 1; k >= 0; k--) {
+            final int node = nodes.get(k);
+            if (graph.clusterOf(node) == graph.clusterOf(previous)) {
+                graph.walk(previous, node, path);
+            } else {
+                path.add(node);
+            }
+            previous = node;
+        }
+    }
+
+    /**
+     * Are two tiles in the same cluster, or in clusters next to each other,
+     * including diagonally?
+     * 
+     * @param a
+     *            the first tile
+     * @param b
+     *            the second tile
+     * @return true if the tiles are near each other, false otherwise
+     */
+    private final boolean isNearby(final int a, final int b) {
+        return (Math.abs((map.xOf(a) / ClusterGraph.SIZE) - (map.xOf(b) / ClusterGraph.SIZE)) <= 1) && (Math.abs((map.yOf(a) / ClusterGraph.SIZE) - (map.yOf(b) / ClusterGraph.SIZE)) <= 1);
+    }
+
+    /**
+     * Is the rest of the current path still passable?
+     * 
+     * @param graph
+     *            the graph of the map being searched
+     * @return true if the path can still be followed, false otherwise
+     */
+    private final boolean isOpen(final ClusterGraph graph) {
+        for (int k = next; k < path.size(); k++) {
+            if (!graph.isPassable(path.get(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start a new search, invalidating every node's per-search state
+     */
+    private final void nextGeneration() {
+        if ((map.getMaxX() != maxX) || (map.getMaxY() != maxY)) {
+            // Nodes are numbered differently on a map of a different size
+            maxX = map.getMaxX();
+            maxY = map.getMaxY();
+            neighborOffsets = Navigator.neighborOffsets(map);
+
+            final int size = maxX * maxY;
+            cost = new TileInts(size, 0);
+            parent = new TileInts(size, 0);
+            seen = new TileInts(size, 0);
+            closed = new TileInts(size, 0);
+            open = new IndexedHeap(size);
+            generation = 0;
+        }
+
+        generation++;
+        if (generation == 0) {
+            // The stamps have wrapped around, so old stamps may look current
+            seen.clear();
+            closed.clear();
+            generation = 1;
+        }
+        open.clear();
+    }
+
+    /**
+     * Visit a node, unless it has been closed or already has a cheaper way to
+     * it
+     * 
+     * @param node
+     *            the node
+     * @param c
+     *            the cost of getting to the node
+     * @param from
+     *            the node we got here from
+     * @param goal
+     *            the node we are trying to get to
+     */
+    private final void relax(final int node, final int c, final int from, final int goal) {
+        if ((closed.get(node) != generation) && ((seen.get(node) != generation) || (c < cost.get(node)))) {
+            visit(node, c, from, goal);
+        }
+    }
+
+    /**
+     * Add a node to the open list, or update it if we've found a cheaper way to
+     * it. Nodes are ordered by cost + heuristic, then by the highest cost. On
+     * open ground many nodes have the same cost + heuristic, and preferring the
+     * ones furthest along keeps the search from spreading out over all of
+     * them.
+     * 
+     * @param node
+     *            the node
+     * @param c
+     *            the cost of getting to the node
+     * @param from
+     *            the node we got here from
+     * @param goal
+     *            the node we are trying to get to
+     */
+    private final void visit(final int node, final int c, final int from, final int goal) {
+        seen.set(node, generation);
+        cost.set(node, c);
+        parent.set(node, from);
+        final int heuristic = MapUtils.getManhattanDistance(map.xOf(node), map.yOf(node), map.xOf(goal), map.yOf(goal));
+        open.put(node, ((long) (c + heuristic) << 32) | (Integer.MAX_VALUE - c));
+    }
+
+    /**
+     * The generation each node was closed in
+     */
+    private TileInts closed = null;
+
+    /**
+     * The cost of getting to each node
+     */
+    private TileInts cost = null;
+
+    /**
+     * The location this navigator finds the way to
+     */
+    private final LocationData destination;
+
+    /**
+     * The tile the agent should be on if it took the last step given, or the
+     * tile it was on if there was no path
+     */
+    private int expected = -1;
+
+    /**
+     * The current search's generation
+     */
+    private int generation = 0;
+
+    /**
+     * The map being searched
+     */
+    private Map map = null;
+
+    /**
+     * The maximum size for the X coordinate of the map last searched
+     */
+    private int maxX = 0;
+
+    /**
+     * The maximum size for the Y coordinate of the map last searched
+     */
+    private int maxY = 0;
+
+    /**
+     * Searches the tiles directly when the destination is nearby
+     */
+    private final Navigator nearby = new Navigator(Navigator.Strategy.JUMP_POINT);
+
+    /**
+     * Index offsets of a node's orthogonal neighbors
+     */
+    private int[] neighborOffsets = null;
+
+    /**
+     * The position along the path of the next step to take
+     */
+    private int next = 0;
+
+    /**
+     * The open list
+     */
+    private IndexedHeap open = null;
+
+    /**
+     * The node each node was reached from
+     */
+    private TileInts parent = null;
+
+    /**
+     * The path being followed, not including the tile it starts from
+     */
+    private final TilePath path = new TilePath();
+
+    /**
+     * The generation each node was last seen in
+     */
+    private TileInts seen = null;
+
+    /**
+     * The graph's version when the path was last known to be open
+     */
+    private long version = 0;
+}
@@ -0,0 +1,303 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+
+/**
+ * Finds the way to a single destination using D* Lite. The search runs
+ * backwards from the destination, and the result is kept between calls. When
+ * the map changes, only the tiles whose passability changed, and the tiles
+ * affected by them, are searched again.
+ * 
+ * @author Kyle Hill
+ */
+public class IncrementalNavigator implements RouteFinder {
+    /**
+     * Constructs a new IncrementalNavigator
+     * 
+     * @param to
+     *            the location to get to
+     */
+    public IncrementalNavigator(final LocationData to) {
+        destination = new LocationData(to.getX(), to.getY());
+    }
+
+    @Override
+    public final LocationData getDestination() {
+        return destination;
+    }
+
+    /**
+     * Get the next step on a shortest path from the given location to the
+     * destination. Paths are only searched again where the map has changed
+     * since the previous call.
+     */
+    @Override
+    public final LocationData getNextStep(final Map map, final LocationData from) {
+        final int start = map.indexOf(from.getX(), from.getY());
+        if (map != this.map) {
+            initialize(map, start);
+        } else {
+            if (start != this.start) {
+                // Account for the start location having moved, which keeps
+                // the keys already in the open list valid
+                km += distance(this.start, start);
+                this.start = start;
+            }
+            if (map.getVersion() != version) {
+                update();
+            }
+        }
+
+        // If we know we can't reach our goal, or we are there already, there
+        // is no step to take
+        if (!map.contains(goal) || !isPassable(goal) || (start == goal)) {
+            return null;
+        }
+
+        computeShortestPath();
+        if (g.get(start) >= INFINITY) {
+            return null;
+        }
+
+        // The next step is the neighbor with the shortest distance left
+        int best = -1;
+        for (final int offset : neighborOffsets) {
+            final int n = start + offset;
+            if (map.contains(n) && isPassable(n) && ((best < 0) || (g.get(n) < g.get(best)))) {
+                best = n;
+            }
+        }
+        assert (best >= 0) && (g.get(best) < g.get(start));
+        return new LocationData(map.xOf(best), map.yOf(best));
+    }
+
+    /**
+     * Get the cost of moving into the given tile
+     * 
+     * @param i
+     *            the tile index
+     * @return the cost of moving into the tile, INFINITY if it is not passable
+     */
+    private final int costOf(final int i) {
+        return isPassable(i) ? Tile.getCost() : INFINITY;
+    }
+
+    /**
+     * Search until the distance from the start location to the destination is
+     * known
+     */
+    private final void computeShortestPath() {
+        while (!open.isEmpty() && ((open.peekKey() < keyOf(start)) || (rhs.get(start) != g.get(start)))) {
+            final long oldKey = open.peekKey();
+            final int u = open.poll();
+            final long newKey = keyOf(u);
+            if (oldKey < newKey) {
+                // The key is out of date since the start location moved
+                open.put(u, newKey);
+            } else if (g.get(u) > rhs.get(u)) {
+                g.set(u, rhs.get(u));
+                updateNeighbors(u);
+            } else {
+                g.set(u, INFINITY);
+                updateNeighbors(u);
+                updateVertex(u);
+            }
+        }
+    }
+
+    /**
+     * Get the Manhattan distance between two tiles
+     * 
+     * @param a
+     *            the first tile index
+     * @param b
+     *            the second tile index
+     * @return the distance between the two tiles
+     */
+    private final int distance(final int a, final int b) {
+        return Math.abs(map.xOf(a) - map.xOf(b)) + Math.abs(map.yOf(a) - map.yOf(b));
+    }
+
+    /**
+     * Throw away any previous search and start over on the given map
+     * 
+     * @param m
+     *            the map to search within
+     * @param s
+     *            the start location's index
+     */
+    private final void initialize(final Map m, final int s) {
+        map = m;
+        version = m.getVersion();
+        blocked = m.getBlockedBits();
+        goal = m.indexOf(destination.getX(), destination.getY());
+        neighborOffsets = Navigator.neighborOffsets(m);
+
+        final int size = m.getMaxX() * m.getMaxY();
+        g = new TileInts(size, INFINITY);
+        rhs = new TileInts(size, INFINITY);
+        open = new IndexedHeap(size);
+        km = 0;
+        start = s;
+
+        if (m.contains(goal)) {
+            rhs.set(goal, 0);
+            open.put(goal, keyOf(goal));
+        }
+    }
+
+    /**
+     * Is the given tile passable, as of the last time the map was examined?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is passable, false otherwise
+     */
+    private final boolean isPassable(final int i) {
+        return !blocked.get(i);
+    }
+
+    /**
+     * Calculate the priority of the given tile. The first component is stored
+     * in the upper half of the key, the second in the lower half.
+     * 
+     * @param u
+     *            the tile index
+     * @return the tile's key
+     */
+    private final long keyOf(final int u) {
+        final int k2 = Math.min(g.get(u), rhs.get(u));
+        final long k1 = (long) k2 + distance(start, u) + km;
+        return (k1 << 32) | k2;
+    }
+
+    /**
+     * Bring the search up to date with the tiles that changed since the map
+     * was last examined
+     */
+    private final void update() {
+        version = map.getVersion();
+        final TileBits previous = blocked;
+        blocked = map.getBlockedBits();
+
+        // Moving into a changed tile now costs something different, which
+        // affects the distance of each of its neighbors. Only pages with
+        // blocked tiles before or after can have changed.
+        for (int p = 0; p < blocked.pageCount(); p++) {
+            if (!blocked.hasPage(p) && !previous.hasPage(p)) {
+                continue;
+            }
+            for (int w = p << TileBits.PAGE_SHIFT; w < Math.min(blocked.words(), (p + 1) << TileBits.PAGE_SHIFT); w++) {
+                long bits = blocked.word(w) ^ previous.word(w);
+                while (bits != 0) {
+                    final int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    updateNeighbors(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update every in-bounds neighbor of the given tile
+     * 
+     * @param u
+     *            the tile index
+     */
+    private final void updateNeighbors(final int u) {
+        for (final int offset : neighborOffsets) {
+            final int n = u + offset;
+            if (map.contains(n)) {
+                updateVertex(n);
+            }
+        }
+    }
+
+    /**
+     * Recalculate the given tile's distance from its neighbors, and place it
+     * in the open list if its distance is now inconsistent
+     * 
+     * @param u
+     *            the tile index
+     */
+    private final void updateVertex(final int u) {
+        if (u != goal) {
+            int best = INFINITY;
+            for (final int offset : neighborOffsets) {
+                final int n = u + offset;
+                if (map.contains(n) && (g.get(n) < INFINITY)) {
+                    best = Math.min(best, costOf(n) + g.get(n));
+                }
+            }
+            rhs.set(u, best);
+        }
+
+        if (g.get(u) != rhs.get(u)) {
+            open.put(u, keyOf(u));
+        } else {
+            open.remove(u);
+        }
+    }
+
+    /**
+     * The distance used for tiles that cannot reach the destination
+     */
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /**
+     * One bit per tile, set if the tile was not passable the last time the
+     * map was examined
+     */
+    private TileBits blocked = null;
+
+    /**
+     * The location this navigator finds the way to
+     */
+    private final LocationData destination;
+
+    /**
+     * The distance from each tile to the destination
+     */
+    private TileInts g = null;
+
+    /**
+     * The destination's index
+     */
+    private int goal = 0;
+
+    /**
+     * The amount the start location has moved since the search began, which
+     * keeps old keys in the open list valid
+     */
+    private int km = 0;
+
+    /**
+     * The map being searched
+     */
+    private Map map = null;
+
+    /**
+     * Index offsets of a tile's orthogonal neighbors in the map being searched
+     */
+    private int[] neighborOffsets = null;
+
+    /**
+     * The open list
+     */
+    private IndexedHeap open = null;
+
+    /**
+     * The one-step lookahead distance from each tile to the destination
+     */
+    private TileInts rhs = null;
+
+    /**
+     * The current start location
+     */
+    private int start = 0;
+
+    /**
+     * The map's version the last time it was examined
+     */
+    private long version = 0;
+}
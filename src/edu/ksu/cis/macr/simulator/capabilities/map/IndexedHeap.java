@@ -0,0 +1,208 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of tile indexes ordered by a long key, supporting key
+ * updates and removal of arbitrary indexes. Used as the open list of the path
+ * finding searches. Keys are stored alongside their indexes, and the heap
+ * grows as needed, so the heap only takes up room for the indexes in it.
+ * 
+ * @author Kyle Hill
+ */
+final class IndexedHeap {
+    /**
+     * Constructs a new, empty IndexedHeap
+     * 
+     * @param capacity
+     *            one more than the largest index that will be stored
+     */
+    IndexedHeap(final int capacity) {
+        heap = new int[INITIAL_CAPACITY];
+        keys = new long[INITIAL_CAPACITY];
+        positions = new TileInts(capacity, -1);
+    }
+
+    /**
+     * Remove every index from this heap
+     */
+    void clear() {
+        for (int p = 0; p < size; p++) {
+            positions.set(heap[p], -1);
+        }
+        size = 0;
+    }
+
+    /**
+     * Is the given index in this heap?
+     * 
+     * @param i
+     *            the index
+     * @return true if the index is in this heap, false otherwise
+     */
+    boolean contains(final int i) {
+        return positions.get(i) >= 0;
+    }
+
+    /**
+     * Is this heap empty?
+     * 
+     * @return true if this heap is empty, false otherwise
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the smallest key in this heap
+     * 
+     * @return the smallest key, Long.MAX_VALUE if this heap is empty
+     */
+    long peekKey() {
+        return (size == 0) ? Long.MAX_VALUE : keys[0];
+    }
+
+    /**
+     * Remove and return the index with the smallest key
+     * 
+     * @return the index with the smallest key
+     */
+    int poll() {
+        final int first = heap[0];
+        remove(first);
+        return first;
+    }
+
+    /**
+     * Add the given index to this heap, or change its key if it is already in
+     * this heap
+     * 
+     * @param i
+     *            the index
+     * @param key
+     *            the index's key
+     */
+    void put(final int i, final long key) {
+        final int p = positions.get(i);
+        if (p < 0) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            heap[size] = i;
+            keys[size] = key;
+            positions.set(i, size);
+            size++;
+            siftUp(size - 1);
+        } else {
+            keys[p] = key;
+            siftDown(siftUp(p));
+        }
+    }
+
+    /**
+     * Remove the given index from this heap, if it is in it
+     * 
+     * @param i
+     *            the index
+     */
+    void remove(final int i) {
+        final int p = positions.get(i);
+        if (p < 0) {
+            return;
+        }
+        positions.set(i, -1);
+        size--;
+        if (p < size) {
+            heap[p] = heap[size];
+            keys[p] = keys[size];
+            positions.set(heap[p], p);
+            siftDown(siftUp(p));
+        }
+    }
+
+    /**
+     * Move the index at the given heap position towards the bottom of the heap
+     * until the heap is ordered again
+     * 
+     * @param position
+     *            the heap position
+     */
+    private void siftDown(final int position) {
+        final int i = heap[position];
+        final long key = keys[position];
+        int p = position;
+        while (true) {
+            int child = (2 * p) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (((child + 1) < size) && (keys[child + 1] < keys[child])) {
+                child++;
+            }
+            if (keys[child] >= key) {
+                break;
+            }
+            heap[p] = heap[child];
+            keys[p] = keys[child];
+            positions.set(heap[p], p);
+            p = child;
+        }
+        heap[p] = i;
+        keys[p] = key;
+        positions.set(i, p);
+    }
+
+    /**
+     * Move the index at the given heap position towards the top of the heap
+     * until the heap is ordered again
+     * 
+     * @param position
+     *            the heap position
+     * @return the index's new heap position
+     */
+    private int siftUp(final int position) {
+        final int i = heap[position];
+        final long key = keys[position];
+        int p = position;
+        while (p > 0) {
+            final int up = (p - 1) / 2;
+            if (keys[up] <= key) {
+                break;
+            }
+            heap[p] = heap[up];
+            keys[p] = keys[up];
+            positions.set(heap[p], p);
+            p = up;
+        }
+        heap[p] = i;
+        keys[p] = key;
+        positions.set(i, p);
+        return p;
+    }
+
+    /**
+     * The number of indexes a new heap has room for
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The indexes in this heap, in heap order
+     */
+    private int[] heap;
+
+    /**
+     * The key of the index at each heap position
+     */
+    private long[] keys;
+
+    /**
+     * The heap position of each index, -1 if it is not in this heap
+     */
+    private final TileInts positions;
+
+    /**
+     * The number of indexes in this heap
+     */
+    private int size = 0;
+}
@@ -2,16 +2,29 @@ package edu.ksu.cis.macr.simulator.capabilities.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import edu.ksu.cis.macr.simulator.agent.Direction;
 import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.metrics.Histogram;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
+import edu.ksu.cis.macr.simulator.metrics.Timer;
 
 /**
- * Map of Wumpi World as the agent sees it
+ * Map of Wumpi World as the agent sees it. Tile state is stored as one bit per
+ * tile in a separate {@link TileBits} for each flag, indexed by
+ * x * getMaxY() + y. Storage is only allocated for the parts of the map where
+ * some flag has been set, so very large worlds only cost as much memory as
+ * the area that has been explored. {@link Tile} objects are lightweight views
+ * over this storage.
  * 
  * @author Kyle Hill
  */
@@ -35,13 +48,258 @@ public class Map implements Serializable {
     }
 
     /**
-     * Map Constructor
+     * Iterates over a set of tiles, nearest by travel distance first, finding
+     * each tile only when it is needed. Tiles that cannot be reached come
+     * last, nearest by Manhattan distance first.
+     * 
+     * @author Kyle Hill
+     * 
      */
-    public Map() {
-        for (int x = 1; x < MAX_X; x++) {
-            for (int y = 1; y < MAX_Y; y++) {
-                map[x][y] = new Tile(this, new LocationData(x, y));
+    private final class NearestIterator implements Iterator<LocationData> {
+        /**
+         * Constructs a new NearestIterator
+         * 
+         * @param s
+         *            the tiles to iterate over
+         * @param from
+         *            the location to search from
+         */
+        public NearestIterator(final TileSet s, final LocationData from) {
+            tiles = s;
+            fromX = from.getX();
+            fromY = from.getY();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!isNextKnown) {
+                next = findNext();
+                isNextKnown = true;
+            }
+            return next >= 0;
+        }
+
+        @Override
+        public LocationData next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            isNextKnown = false;
+            return new LocationData(xOf(next), yOf(next));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Find the next tile still in the set
+         * 
+         * @return the index of the next tile, -1 if there are no more
+         */
+        private int findNext() {
+            // Once every tile in the set has been found there is nothing left
+            // to search for, so don't walk the rest of the map. Tiles found
+            // may since have been taken out of the set, as when they are
+            // claimed, so only those still in it are counted.
+            if (tiles.isEmpty() || (countFound() >= tiles.size())) {
+                return -1;
+            }
+            if (travel == null) {
+                travel = new TravelDistances(Map.this, indexOf(fromX, fromY));
+            }
+
+            while (isSearching) {
+                while (position < level.size()) {
+                    final int i = level.get(position++);
+                    if (tiles.contains(i)) {
+                        found.add(i);
+                        return i;
+                    }
+                }
+                position = 0;
+                isSearching = travel.nextLevel(tiles, false, level);
+            }
+
+            // Then the tiles the search didn't get to, skipping any it did
+            int d;
+            do {
+                last = tiles.nearestAfter(fromX, fromY, last);
+                d = (last < 0) ? -1 : travel.known(last);
+            } while ((d >= 0) && (d <= travel.lastLevel()));
+            if (last >= 0) {
+                found.add(last);
+            }
+            return last;
+        }
+
+        /**
+         * Count the tiles found so far that are still in the set
+         * 
+         * @return the number of tiles
+         */
+        private int countFound() {
+            int count = 0;
+            for (int k = 0; k < found.size(); k++) {
+                if (tiles.contains(found.get(k))) {
+                    count++;
+                }
             }
+            return count;
+        }
+
+        /**
+         * The indexes of the tiles found so far
+         */
+        private final TilePath found = new TilePath();
+
+        /**
+         * The x-coordinate to search from
+         */
+        private final int fromX;
+
+        /**
+         * The y-coordinate to search from
+         */
+        private final int fromY;
+
+        /**
+         * Has the next tile been found yet?
+         */
+        private boolean isNextKnown = false;
+
+        /**
+         * Are tiles still being found by travel distance?
+         */
+        private boolean isSearching = true;
+
+        /**
+         * The index of the last tile found by Manhattan distance, -1 if none
+         * have been
+         */
+        private int last = -1;
+
+        /**
+         * The tiles of the current travel distance
+         */
+        private final TilePath level = new TilePath();
+
+        /**
+         * The index of the next tile, -1 if there are no more
+         */
+        private int next = -1;
+
+        /**
+         * The position in the current travel distance's tiles of the next
+         * tile
+         */
+        private int position = 0;
+
+        /**
+         * The tiles to iterate over
+         */
+        private final TileSet tiles;
+
+        /**
+         * The travel distances from the location searched from, null until
+         * the search starts
+         */
+        private TravelDistances travel = null;
+    }
+
+    /**
+     * Map Constructor. The map is the size of the standard scenarios,
+     * {@value #MAX_X}x{@value #MAX_Y}.
+     */
+    public Map() {
+        this(MAX_X, MAX_Y);
+    }
+
+    /**
+     * Map Constructor
+     * 
+     * @param mX
+     *            the maximum size for the world's X coordinate
+     * @param mY
+     *            the maximum size for the world's Y coordinate
+     */
+    public Map(final int mX, final int mY) {
+        checkSize(mX, mY);
+
+        maxX = mX;
+        maxY = mY;
+        size = mX * mY;
+        words = (size + 63) >>> 6;
+
+        breeze = new TileBits(words);
+        claimed = new TileBits(words);
+        dirty = new TileBits(words);
+        glitter = new TileBits(words);
+        obstruction = new TileBits(words);
+        searched = new TileBits(words);
+        smell = new TileBits(words);
+        visited = new TileBits(words);
+        walls = new TileBits(words);
+        wumpi = new TileBits(words);
+
+        goldCandidates = new TileSet(mX, mY);
+        unsearchable = new TileSet(mX, mY);
+        wumpiCandidates = new TileSet(mX, mY);
+
+        // All flags start cleared, so the indexes start empty
+    }
+
+    /**
+     * Map copy constructor
+     * 
+     * @param other
+     *            the map to copy
+     */
+    public Map(final Map other) {
+        this(other.maxX, other.maxY);
+
+        breeze.copyFrom(other.breeze);
+        claimed.copyFrom(other.claimed);
+        glitter.copyFrom(other.glitter);
+        obstruction.copyFrom(other.obstruction);
+        searched.copyFrom(other.searched);
+        smell.copyFrom(other.smell);
+        visited.copyFrom(other.visited);
+        rebuildIndexes();
+    }
+
+    /**
+     * Check that a map of the given size can be stored
+     * 
+     * @param mX
+     *            the maximum size for the world's X coordinate
+     * @param mY
+     *            the maximum size for the world's Y coordinate
+     * @throws IllegalArgumentException
+     *             if the size is too small or too large
+     */
+    public static void checkSize(final int mX, final int mY) {
+        // Sizes are sent between agents as unsigned shorts, and tile indexes
+        // must fit in an int with room to spare
+        if ((mX < 2) || (mY < 2) || (mX > 0xFFFF) || (mY > 0xFFFF) || (((long) mX * mY) > MAX_TILES)) {
+            throw new IllegalArgumentException("Unsupported map size " + mX + "x" + mY);
+        }
+    }
+
+    /**
+     * Register a listener to be told about every change to this map's tiles
+     * 
+     * @param l
+     *            the listener
+     */
+    public final void addMapListener(final MapListener l) {
+        if (listeners == null) {
+            listeners = new MapListener[] { l };
+        } else {
+            final MapListener[] more = Arrays.copyOf(listeners, listeners.length + 1);
+            more[listeners.length] = l;
+            listeners = more;
         }
     }
 
@@ -50,27 +308,21 @@ public class Map implements Serializable {
      * 
      * @param from
      *            the location to sort locaitons from
-     * @return a queue of gold locations sorted by distance from the given
-     *         location
+     * @return a queue of gold locations sorted by travel distance from the
+     *         given location
      */
     public final Queue<LocationData> findGold(final LocationData from) {
         final LinkedList<LocationData> locations = new LinkedList<LocationData>();
-
-        // Search the entire map to see if any tiles contain glitter
-        for (int x = 1; x < Map.MAX_X; x++) {
-            for (int y = 1; y < Map.MAX_Y; y++) {
-                final Tile tile = getTile(x, y);
-                if (!tile.isClaimed() && !tile.isDangerous() && tile.hasGlitter()) {
-                    locations.add(tile.getLocation());
-                }
-            }
+        for (final Iterator<LocationData> i = nearestGold(from); i.hasNext();) {
+            locations.add(i.next());
         }
-        Collections.sort(locations, new LocationComparator(from));
         return locations;
     }
 
     /**
-     * Get the nearest unsearched tile to the given location
+     * Get the nearest unsearched tile to the given location, by travel
+     * distance. If no unsearched tile can be reached, the nearest by Manhattan
+     * distance is given instead.
      * 
      * @param from
      *            the location to search from
@@ -78,30 +330,15 @@ public class Map implements Serializable {
      *         searched
      */
     public final LocationData findNearestUnsearchedLocation(final LocationData from) {
-        // Search the map for all unsearched locations
-        final LinkedList<LocationData> locations = new LinkedList<LocationData>();
-        for (int x = 1; x < MAX_X; x++) {
-            for (int y = 1; y < MAX_Y; y++) {
-                final Tile tile = getTile(x, y);
-                if (!tile.hasSearched() && !tile.hasObstruction() && !tile.isDangerous()) {
-                    locations.add(tile.getLocation());
-                }
-            }
-        }
-
-        // Find the closest location to our current location
-        LocationData minLoc = null;
-        if (!locations.isEmpty()) {
-            final LocationComparator comparator = new LocationComparator(from);
-            for (final LocationData loc : locations) {
-                if (minLoc == null) {
-                    minLoc = loc;
-                } else if (comparator.compare(minLoc, loc) > 0) {
-                    minLoc = loc;
-                }
-            }
+        int i = getTravelDistances(from).nearest(unsearchable, true);
+        if (i < 0) {
+            // The tiles that can't be searched are kept up to date as tiles
+            // change, so only the neighborhood of our current location needs
+            // to be searched. On a large map these are far fewer than the
+            // tiles that can be searched.
+            i = unsearchable.nearestAbsent(from.getX(), from.getY());
         }
-        return minLoc;
+        return (i < 0) ? null : new LocationData(xOf(i), yOf(i));
     }
 
     /**
@@ -109,25 +346,96 @@ public class Map implements Serializable {
      * 
      * @param from
      *            the location to search from
-     * @return a queue of Wumpi locations sorted by distance from the agent's
-     *         current location
+     * @return a queue of Wumpi locations sorted by travel distance from the
+     *         agent's current location
      */
     public final Queue<LocationData> findWumpi(final LocationData from) {
         final LinkedList<LocationData> locations = new LinkedList<LocationData>();
-
-        // Search the entire map to see if any tiles contain a Wumpi
-        for (int x = 1; x < Map.MAX_X; x++) {
-            for (int y = 1; y < Map.MAX_Y; y++) {
-                final Tile tile = getTile(x, y);
-                if (!tile.isClaimed() && tile.isWumpi()) {
-                    locations.add(tile.getLocation());
-                }
-            }
+        for (final Iterator<LocationData> i = nearestWumpi(from); i.hasNext();) {
+            locations.add(i.next());
         }
-        Collections.sort(locations, new LocationComparator(from));
         return locations;
     }
 
+    /**
+     * Visit neighboring tiles satisfying the given parameters, in the same
+     * order as {@link #getNeighbors(int, int, int, RangeType)}
+     * 
+     * @param x
+     *            x-coordinate
+     * @param y
+     *            y-coordinate
+     * @param range
+     *            range to search
+     * @param t
+     *            the type of range to search
+     * @param v
+     *            the visitor
+     * @return true if every tile was visited, false if the visitor stopped
+     */
+    public final boolean forEachNeighbor(final int x, final int y, final int range, final RangeType t, final TileVisitor v) {
+        return visitNeighbors(x, y, range, t, null, v);
+    }
+
+    /**
+     * Visit neighboring tiles satisfying the given parameters, in the same
+     * order as {@link #getNeighbors(LocationData, int, RangeType)}
+     * 
+     * @param loc
+     *            the location to search from
+     * @param range
+     *            range to search
+     * @param t
+     *            the type of range to search
+     * @param v
+     *            the visitor
+     * @return true if every tile was visited, false if the visitor stopped
+     */
+    public final boolean forEachNeighbor(final LocationData loc, final int range, final RangeType t, final TileVisitor v) {
+        return visitNeighbors(loc.getX(), loc.getY(), range, t, null, v);
+    }
+
+    /**
+     * Visit the neighboring tiles satisfying the given parameters that lie
+     * ahead of the given location in the given direction, i.e. those that
+     * came into range by moving one step in that direction
+     * 
+     * @param loc
+     *            the location to search from
+     * @param dir
+     *            the direction to search in, null to search in every direction
+     * @param range
+     *            range to search
+     * @param t
+     *            the type of range to search
+     * @param v
+     *            the visitor
+     * @return true if every tile was visited, false if the visitor stopped
+     */
+    public final boolean forEachNeighborInDirection(final LocationData loc, final Direction dir, final int range, final RangeType t, final TileVisitor v) {
+        return visitNeighbors(loc.getX(), loc.getY(), range, t, dir, v);
+    }
+
+    /**
+     * Get the maximum size for this map's X coordinate. Tiles inside the
+     * world's boundaries have x-coordinates from 1 to getMaxX() - 1.
+     * 
+     * @return the maximum size for the X coordinate
+     */
+    public final int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the maximum size for this map's Y coordinate. Tiles inside the
+     * world's boundaries have y-coordinates from 1 to getMaxY() - 1.
+     * 
+     * @return the maximum size for the Y coordinate
+     */
+    public final int getMaxY() {
+        return maxY;
+    }
+
     /**
      * Get neighboring tiles satisfying the given parameters
      * 
@@ -142,7 +450,15 @@ public class Map implements Serializable {
      * @return the collection of tiles
      */
     public final Collection<Tile> getNeighbors(final int x, final int y, final int range, final RangeType t) {
-        return getNeighbors(x, y, range, t, -range, range, -range, range);
+        final Collection<Tile> neighbors = new ArrayList<Tile>();
+        forEachNeighbor(x, y, range, t, new TileVisitor() {
+            @Override
+            public boolean visit(final Tile tile) {
+                neighbors.add(new Tile(Map.this, tile.getIndex()));
+                return true;
+            }
+        });
+        return neighbors;
     }
 
     /**
@@ -157,7 +473,7 @@ public class Map implements Serializable {
      * @return the collection of tiles
      */
     public final Collection<Tile> getNeighbors(final LocationData loc, final int range, final RangeType t) {
-        return getNeighbors(loc.getX(), loc.getY(), range, t, -range, range, -range, range);
+        return getNeighbors(loc.getX(), loc.getY(), range, t);
     }
 
     /**
@@ -171,9 +487,9 @@ public class Map implements Serializable {
      */
     public final Tile getTile(final int x, final int y) {
         assert ((x > 0) && (y > 0));
-        assert ((x < MAX_X) && (y < MAX_Y));
+        assert ((x < maxX) && (y < maxY));
 
-        return map[x][y];
+        return new Tile(this, indexOf(x, y));
     }
 
     /**
@@ -239,6 +555,54 @@ public class Map implements Serializable {
         return betweenList;
     }
 
+    /**
+     * Get the number of steps it takes to walk from the given location to
+     * others, as the map is now. The distances are found as they are needed,
+     * by a single search shared between them.
+     * 
+     * @param from
+     *            the location to walk from
+     * @return the travel distances, which also order locations nearest first
+     */
+    public final TravelDistances getTravelDistances(final LocationData from) {
+        return new TravelDistances(this, indexOf(from.getX(), from.getY()));
+    }
+
+    /**
+     * Get this map's version, which increases every time the map changes
+     * 
+     * @return the map's version
+     */
+    public final long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the version of a single flag in this map, which increases every time
+     * that flag changes on any tile
+     * 
+     * @param flag
+     *            the flag, one of the _FLAG constants
+     * @return the flag's version
+     */
+    public final long getVersion(final int flag) {
+        final int f = Integer.numberOfTrailingZeros(flag);
+        if ((Integer.bitCount(flag) != 1) || (f >= flagVersions.length)) {
+            throw new IllegalArgumentException();
+        }
+        return flagVersions[f];
+    }
+
+    /**
+     * Has this map changed since the last call to {@link #takeDelta()} or
+     * {@link #takeSnapshot()}? Changes merged in from other maps do not count.
+     * 
+     * @return true if any tiles have changed, false otherwise
+     */
+    public final boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
     /**
      * Is there an obstruction between the two given locations?
      * 
@@ -267,8 +631,10 @@ public class Map implements Serializable {
      * @return true if the given location is surronded by obstacles or danger
      */
     public final boolean isSurrounded(final LocationData loc) {
-        for (final Tile tile : getNeighbors(loc, 1, Map.RangeType.MANHATTAN)) {
-            if (!tile.hasObstruction() && !tile.isDangerous()) {
+        final NeighborTable table = neighborTable(1, RangeType.MANHATTAN, null);
+        final int i = indexOf(loc.getX(), loc.getY());
+        for (final int o : table.of(i)) {
+            if (!hasObstruction(i + o) && !isDangerous(i + o)) {
                 return false;
             }
         }
@@ -276,89 +642,362 @@ public class Map implements Serializable {
     }
 
     /**
-     * Merge this map's information with the given map
+     * Merge this map's information with the given map. This gives exactly the
+     * same result as merging every tile in order with
+     * {@link Tile#mergeFrom(Tile)}, but works on 64 tiles at a time.
      * 
      * @param other
      *            the other map
      */
     public final void mergeFrom(final Map other) {
-        for (int x = 1; x < MAX_X; x++) {
-            for (int y = 1; y < MAX_Y; y++) {
-                getTile(x, y).mergeFrom(other.getTile(x, y));
+        if (other == this) {
+            // Merging a map with itself never changes anything
+            return;
+        }
+        if ((other.maxX != maxX) || (other.maxY != maxY)) {
+            throw new IllegalArgumentException("Cannot merge a " + other.maxX + "x" + other.maxY + " map into a " + maxX + "x" + maxY + " map");
+        }
+
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        int changedTiles = 0;
+
+        // Merged changes belong to the other agent, so they are not ours to
+        // send out again
+        final TileBits ownChanges = new TileBits(dirty);
+
+        // Listeners are told about the merge once it is complete, since tiles
+        // are temporarily in a half merged state below. Until then, the tiles
+        // that change are collected for each flag.
+        final TileBits[] changes = (listeners != null) ? new TileBits[flagVersions.length] : null;
+        mergeChanges = changes;
+        isMerging = true;
+
+        // Tiles the other map has searched but we have not are copied
+        // wholesale ("trust searched"), the rest only accept false positives.
+        // Pages on which the other map has no flags set can't change anything.
+        final TileBits trusted = new TileBits(words);
+        boolean hasClaims = false;
+        for (int p = 0; p < trusted.pageCount(); p++) {
+            if (!other.hasPage(p)) {
+                continue;
+            }
+            for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                final long valid = validWord(w);
+                trusted.setWord(w, ~searched.word(w) & other.searched.word(w) & valid);
+                hasClaims |= (other.claimed.word(w) & ~trusted.word(w) & valid) != 0;
             }
         }
-    }
 
-    /**
-     * Update breeze information on the map
-     * 
-     * @param oldLoc
-     *            old agent location
-     * @param newLoc
-     *            new agent location
-     * @param hasBreeze
-     *            if the agent detected a breeze in newLoc
-     * @return if any tiles were updated
-     */
-    public final boolean updateBreeze(final LocationData oldLoc, final LocationData newLoc, final boolean hasBreeze) {
-        boolean updated = false;
+        // Claims are re-derived from our own neighborhood, which the per-tile
+        // merge would have seen half merged. Keep the old state around so
+        // that we can reproduce that below.
+        TileBits oldObstruction = null;
+        TileBits oldSmell = null;
+        TileBits oldVisited = null;
+        if (hasClaims) {
+            oldObstruction = new TileBits(obstruction);
+            oldSmell = new TileBits(smell);
+            oldVisited = new TileBits(visited);
+        }
 
-        if (!newLoc.equals(oldLoc)) {
-            // Get the smallest set of neighboring tiles that could contain a
-            // pit
-            Collection<Tile> neighbors;
-            if ((oldLoc == null) || !hasBreeze) {
-                neighbors = getNeighbors(newLoc, BREEZE_RANGE, BREEZE_RANGE_TYPE);
-            } else {
-                final Direction d = MapUtils.getDirection(oldLoc, newLoc);
-                neighbors = getNeighborsInDirection(newLoc, d, BREEZE_RANGE, BREEZE_RANGE_TYPE);
+        int changedFlags = 0;
+        for (int p = 0; p < trusted.pageCount(); p++) {
+            if (!other.hasPage(p)) {
+                continue;
             }
+            for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                final long trust = trusted.word(w);
+                final long keep = ~trust;
+                final long valid = validWord(w);
+                final long previousBreeze = breeze.word(w);
+                final long previousGlitter = glitter.word(w);
+                final long previousSmell = smell.word(w);
+                final long previousClaimed = claimed.word(w);
+                final long previousVisited = visited.word(w);
+                final long previousSearched = searched.word(w);
+                final long previousObstruction = obstruction.word(w);
+
+                final long newBreeze = (previousBreeze & keep) | (other.breeze.word(w) & trust);
+                final long newGlitter = (previousGlitter & keep) | (other.glitter.word(w) & trust);
+                final long newSmell = (previousSmell & keep) | (other.smell.word(w) & trust);
+                final long newClaimed = (previousClaimed & keep) | (other.claimed.word(w) & trust);
+
+                // Never unvisit or unsearch a tile
+                final long newVisited = previousVisited | (other.visited.word(w) & valid);
+                final long newSearched = previousSearched | (other.searched.word(w) & valid);
+
+                // Untrusted obstructions are only accepted where the tile has
+                // not been searched or visited
+                final long otherObstruction = other.obstruction.word(w);
+                final long newObstruction = (previousObstruction & keep) | (otherObstruction & trust) | (otherObstruction & keep & valid & ~newSearched & ~newVisited);
 
-            for (final Tile tile : neighbors) {
-                updated |= tile.setBreeze(hasBreeze);
+                breeze.setWord(w, newBreeze);
+                glitter.setWord(w, newGlitter);
+                smell.setWord(w, newSmell);
+                claimed.setWord(w, newClaimed);
+                visited.setWord(w, newVisited);
+                searched.setWord(w, newSearched);
+                obstruction.setWord(w, newObstruction);
+
+                changedFlags |= (previousBreeze != newBreeze) ? BREEZE_FLAG : 0;
+                changedFlags |= (previousGlitter != newGlitter) ? GLITTER_FLAG : 0;
+                changedFlags |= (previousSmell != newSmell) ? SMELL_FLAG : 0;
+                changedFlags |= (previousClaimed != newClaimed) ? CLAIMED_FLAG : 0;
+                changedFlags |= (previousVisited != newVisited) ? VISITED_FLAG : 0;
+                changedFlags |= (previousSearched != newSearched) ? SEARCHED_FLAG : 0;
+                changedFlags |= (previousObstruction != newObstruction) ? OBSTRUCTION_FLAG : 0;
+
+                if (changes != null) {
+                    recordMergeChange(BREEZE_FLAG, w, previousBreeze ^ newBreeze);
+                    recordMergeChange(GLITTER_FLAG, w, previousGlitter ^ newGlitter);
+                    recordMergeChange(SMELL_FLAG, w, previousSmell ^ newSmell);
+                    recordMergeChange(CLAIMED_FLAG, w, previousClaimed ^ newClaimed);
+                    recordMergeChange(VISITED_FLAG, w, previousVisited ^ newVisited);
+                    recordMergeChange(SEARCHED_FLAG, w, previousSearched ^ newSearched);
+                    recordMergeChange(OBSTRUCTION_FLAG, w, previousObstruction ^ newObstruction);
+                }
+
+                if (Metrics.ENABLED) {
+                    changedTiles += Long.bitCount((previousBreeze ^ newBreeze) | (previousGlitter ^ newGlitter) | (previousSmell ^ newSmell) | (previousClaimed ^ newClaimed) | (previousVisited ^ newVisited) | (previousSearched ^ newSearched) | (previousObstruction ^ newObstruction));
+                }
             }
         }
-        return updated;
+        advanceVersions(changedFlags);
+
+        if (hasClaims) {
+            for (int p = 0; p < trusted.pageCount(); p++) {
+                if (!other.claimed.hasPage(p)) {
+                    continue;
+                }
+                for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                    long claims = other.claimed.word(w) & ~trusted.word(w) & validWord(w);
+                    while (claims != 0) {
+                        final int i = (w << 6) + Long.numberOfTrailingZeros(claims);
+                        claims &= claims - 1;
+
+                        if (other.isClaimed(i)) {
+                            if (Metrics.ENABLED && !isClaimed(i)) {
+                                changedTiles++;
+                            }
+                            // Tiles after this one had not been merged yet
+                            // when the per-tile merge reached it
+                            swapFollowingNeighbors(i, oldObstruction, oldSmell, oldVisited);
+                            setClaimed(i);
+                            swapFollowingNeighbors(i, oldObstruction, oldSmell, oldVisited);
+                        }
+                    }
+                }
+            }
+        }
+        dirty.copyFrom(ownChanges);
+        rebuildIndexes();
+
+        isMerging = false;
+        mergeChanges = null;
+        if (changes != null) {
+            fireMergeChanges(changes);
+        }
+
+        if (Metrics.ENABLED) {
+            MERGE_TIME.stop(start);
+            MERGE_TILES_CHANGED.record(changedTiles);
+        }
     }
 
     /**
-     * Update glitter information on the map
+     * Merge the tiles in the given delta into this map using the same rules as
+     * {@link Tile#mergeFrom(Tile)}
      * 
-     * @param oldLoc
-     *            old agent location
-     * @param newLoc
-     *            new agent location
-     * @param hasGlitter
-     *            if the agent detected glitter in newLoc
-     * @return if any tiles were updated
+     * @param delta
+     *            the delta to merge
      */
-    public final boolean updateGlitter(final LocationData oldLoc, final LocationData newLoc, final boolean hasGlitter) {
-        boolean updated = false;
-
-        if (!newLoc.equals(oldLoc)) {
-            // Get the smallest set of neighboring tiles that could contain gold
-            Collection<Tile> neighbors;
-            if ((oldLoc == null) || !hasGlitter) {
-                neighbors = getNeighbors(newLoc, GLITTER_RANGE, GLITTER_RANGE_TYPE);
-            } else {
-                neighbors = new ArrayList<Tile>(3);
-
-                final Direction d = MapUtils.getDirection(oldLoc, newLoc);
-                neighbors.add(getTile(newLoc, d));
-                neighbors.add(getTile(newLoc, d.turnLeft()));
-                neighbors.add(getTile(newLoc, d.turnRight()));
+    public final void mergeFrom(final MapDelta delta) {
+        if ((delta.getMaxX() != maxX) || (delta.getMaxY() != maxY)) {
+            throw new IllegalArgumentException("Cannot merge a " + delta.getMaxX() + "x" + delta.getMaxY() + " delta into a " + maxX + "x" + maxY + " map");
+        }
+        if (!Metrics.ENABLED) {
+            for (int k = 0; k < delta.size(); k++) {
+                mergeFrom(delta.getIndex(k), delta.getFlags(k));
             }
+            return;
+        }
 
-            // Set the glitter flag on our neighbors
-            for (final Tile tile : neighbors) {
-                updated |= tile.setGlitter(hasGlitter);
-            }
+        final long start = System.nanoTime();
+        int changedTiles = 0;
+        for (int k = 0; k < delta.size(); k++) {
+            final int i = delta.getIndex(k);
+            final int previous = flagsOf(i);
+            mergeFrom(i, delta.getFlags(k));
+            changedTiles += (flagsOf(i) != previous) ? 1 : 0;
         }
-        return updated;
+        MERGE_DELTA_TIME.stop(start);
+        MERGE_DELTA_TILES_CHANGED.record(changedTiles);
     }
 
     /**
-     * Update obstruction information on the map
+     * Iterate over the known, unclaimed gold locations on the map, nearest
+     * first. Locations are found one at a time as the iterator advances, and
+     * tiles may be claimed while iterating.
+     * 
+     * @param from
+     *            the location to search from
+     * @return an iterator over the gold locations, in the same order as
+     *         {@link #findGold(LocationData)}
+     */
+    public final Iterator<LocationData> nearestGold(final LocationData from) {
+        return new NearestIterator(goldCandidates, from);
+    }
+
+    /**
+     * Iterate over the known, unclaimed Wumpi locations on the map, nearest
+     * first. Locations are found one at a time as the iterator advances, and
+     * tiles may be claimed while iterating.
+     * 
+     * @param from
+     *            the location to search from
+     * @return an iterator over the Wumpi locations, in the same order as
+     *         {@link #findWumpi(LocationData)}
+     */
+    public final Iterator<LocationData> nearestWumpi(final LocationData from) {
+        return new NearestIterator(wumpiCandidates, from);
+    }
+
+    /**
+     * Stop telling the given listener about changes to this map
+     * 
+     * @param l
+     *            the listener
+     */
+    public final void removeMapListener(final MapListener l) {
+        if (listeners == null) {
+            return;
+        }
+        for (int k = 0; k < listeners.length; k++) {
+            if (listeners[k] == l) {
+                if (listeners.length == 1) {
+                    listeners = null;
+                } else {
+                    final MapListener[] fewer = new MapListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, fewer, 0, k);
+                    System.arraycopy(listeners, k + 1, fewer, k, fewer.length - k);
+                    listeners = fewer;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the tiles that have changed since the last delta or snapshot, and
+     * start tracking changes anew
+     * 
+     * @return the changed tiles
+     */
+    public final MapDelta takeDelta() {
+        int count = 0;
+        for (int p = 0; p < dirty.pageCount(); p++) {
+            if (dirty.hasPage(p)) {
+                for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                    count += Long.bitCount(dirty.word(w));
+                }
+            }
+        }
+
+        final int[] indexes = new int[count];
+        final byte[] flags = new byte[count];
+        int k = 0;
+        for (int p = 0; p < dirty.pageCount(); p++) {
+            if (dirty.hasPage(p)) {
+                for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                    long bits = dirty.word(w);
+                    while (bits != 0) {
+                        final int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+
+                        indexes[k] = i;
+                        flags[k] = (byte) flagsOf(i);
+                        k++;
+                    }
+                }
+            }
+        }
+        dirty.clear();
+        return new MapDelta(maxX, maxY, indexes, flags);
+    }
+
+    /**
+     * Get a copy of this map, and start tracking changes anew
+     * 
+     * @return the copy
+     */
+    public final Map takeSnapshot() {
+        dirty.clear();
+        return new Map(this);
+    }
+
+    /**
+     * Update breeze information on the map
+     * 
+     * @param oldLoc
+     *            old agent location
+     * @param newLoc
+     *            new agent location
+     * @param hasBreeze
+     *            if the agent detected a breeze in newLoc
+     * @return if any tiles were updated
+     */
+    public final boolean updateBreeze(final LocationData oldLoc, final LocationData newLoc, final boolean hasBreeze) {
+        boolean updated = false;
+
+        if (!newLoc.equals(oldLoc)) {
+            // Get the smallest set of neighboring tiles that could contain a
+            // pit
+            final Direction d = ((oldLoc == null) || !hasBreeze) ? null : MapUtils.getDirection(oldLoc, newLoc);
+            final NeighborTable table = neighborTable(BREEZE_RANGE, BREEZE_RANGE_TYPE, d);
+
+            final int i = indexOf(newLoc.getX(), newLoc.getY());
+            for (final int o : table.of(i)) {
+                updated |= setBreeze(i + o, hasBreeze);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Update glitter information on the map
+     * 
+     * @param oldLoc
+     *            old agent location
+     * @param newLoc
+     *            new agent location
+     * @param hasGlitter
+     *            if the agent detected glitter in newLoc
+     * @return if any tiles were updated
+     */
+    public final boolean updateGlitter(final LocationData oldLoc, final LocationData newLoc, final boolean hasGlitter) {
+        boolean updated = false;
+
+        if (!newLoc.equals(oldLoc)) {
+            // Get the smallest set of neighboring tiles that could contain
+            // gold, and set the glitter flag on them
+            if ((oldLoc == null) || !hasGlitter) {
+                final NeighborTable table = neighborTable(GLITTER_RANGE, GLITTER_RANGE_TYPE, null);
+                final int i = indexOf(newLoc.getX(), newLoc.getY());
+                for (final int o : table.of(i)) {
+                    updated |= setGlitter(i + o, hasGlitter);
+                }
+            } else {
+                final Direction d = MapUtils.getDirection(oldLoc, newLoc);
+                updated |= getTile(newLoc, d).setGlitter(hasGlitter);
+                updated |= getTile(newLoc, d.turnLeft()).setGlitter(hasGlitter);
+                updated |= getTile(newLoc, d.turnRight()).setGlitter(hasGlitter);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Update obstruction information on the map
      * 
      * @param loc
      *            new agent location
@@ -372,7 +1011,7 @@ public class Map implements Serializable {
         // Set those tiles in which we discovered obstructions
         for (final LocationData relLoc : sonarData) {
             final LocationData absLoc = new LocationData(loc.getX() + relLoc.getX(), loc.getY() + relLoc.getY());
-            if ((absLoc.getX() >= 1) && (absLoc.getX() < Map.MAX_X) && (absLoc.getY() >= 1) && (absLoc.getY() < Map.MAX_Y)) {
+            if ((absLoc.getX() >= 1) && (absLoc.getX() < maxX) && (absLoc.getY() >= 1) && (absLoc.getY() < maxY)) {
                 updated |= getTile(absLoc).setObstruction(true);
             }
         }
@@ -388,8 +1027,10 @@ public class Map implements Serializable {
      */
     public final boolean updateSearched(final LocationData loc) {
         boolean updated = getTile(loc).setSearched(true);
-        for (final Tile tile : getNeighbors(loc, GLITTER_RANGE, GLITTER_RANGE_TYPE)) {
-            updated |= tile.setSearched(true);
+        final NeighborTable table = neighborTable(GLITTER_RANGE, GLITTER_RANGE_TYPE, null);
+        final int i = indexOf(loc.getX(), loc.getY());
+        for (final int o : table.of(i)) {
+            updated |= setSearched(i + o, true);
         }
         return updated;
     }
@@ -412,21 +1053,24 @@ public class Map implements Serializable {
             if (!newLoc.equals(oldLoc)) {
                 // Get the smallest set of neighboring tiles that could contain
                 // a wumpi
-                Collection<Tile> neighbors;
-                if (oldLoc == null) {
-                    neighbors = getNeighbors(newLoc, SMELL_RANGE, SMELL_RANGE_TYPE);
-                } else {
-                    final Direction d = MapUtils.getDirection(oldLoc, newLoc);
-                    neighbors = getNeighborsInDirection(newLoc, d, SMELL_RANGE, SMELL_RANGE_TYPE);
-                }
+                final Direction d = (oldLoc == null) ? null : MapUtils.getDirection(oldLoc, newLoc);
+                final NeighborTable table = neighborTable(SMELL_RANGE, SMELL_RANGE_TYPE, d);
+                final NeighborTable candidates = neighborTable(SMELL_RANGE - 1, SMELL_RANGE_TYPE, null);
+                final int x = newLoc.getX();
+                final int y = newLoc.getY();
+                final int i = indexOf(x, y);
 
                 // Only update tiles to have a smell if we can also detect an
                 // obstruction that isn't a wall within range
-                for (final Tile tile : neighbors) {
-                    if (tile.hasObstruction() && !tile.isWall()) {
-                        for (final Tile smellCandidate : getNeighbors(tile.getLocation(), SMELL_RANGE - 1, SMELL_RANGE_TYPE)) {
-                            if (neighbors.contains(smellCandidate)) {
-                                updated |= smellCandidate.setSmell(true);
+                for (final int o : table.of(i)) {
+                    final int n = i + o;
+                    if (hasObstruction(n) && !isWall(n)) {
+                        for (final int c : candidates.of(n)) {
+                            // The candidate must be one of the neighboring
+                            // tiles above as well
+                            final int smellCandidate = n + c;
+                            if (isNeighborOffset(xOf(smellCandidate) - x, yOf(smellCandidate) - y, SMELL_RANGE, SMELL_RANGE_TYPE, d)) {
+                                updated |= setSmell(smellCandidate, true);
                             }
                         }
                     }
@@ -435,8 +1079,10 @@ public class Map implements Serializable {
         } else {
             // If we don't smell a Wumpi at our current location, clear the
             // smell flag on all tiles within the range we entered
-            for (final Tile m : getNeighbors(newLoc, SMELL_RANGE - 1, SMELL_RANGE_TYPE)) {
-                updated |= m.setSmell(false);
+            final NeighborTable table = neighborTable(SMELL_RANGE - 1, SMELL_RANGE_TYPE, null);
+            final int i = indexOf(newLoc.getX(), newLoc.getY());
+            for (final int o : table.of(i)) {
+                updated |= setSmell(i + o, false);
             }
         }
         return updated;
@@ -454,160 +1100,1335 @@ public class Map implements Serializable {
     }
 
     /**
-     * Get the collection of neighboring tiles that satisfy the given parameters
+     * Is the given index that of a tile inside the world's boundaries?
      * 
-     * @param sX
-     *            the source x-coordinate
-     * @param sY
-     *            the source y-coordinate
-     * @param range
-     *            the range to search
-     * @param t
-     *            the type of range to search
-     * @param iX
-     *            the initial x-coordinate
-     * @param nX
-     *            the number of tiles on the x axis
-     * @param iY
-     *            the initial y-coordinate
-     * @param nY
-     *            the number of tiles on the y axis
-     * @return the collection of tiles
+     * @param i
+     *            the index
+     * @return true if the index belongs to a tile, false otherwise
      */
-    private final Collection<Tile> getNeighbors(final int sX, final int sY, final int range, final RangeType t, final int iX, final int nX, final int iY, final int nY) {
-        final Collection<Tile> neighbors = new ArrayList<Tile>();
-        if (range > 0) {
-            for (int x = iX; x <= nX; x++) {
-                for (int y = iY; y <= nY; y++) {
-                    if ((x == 0) && (y == 0)) {
-                        // Don't add the current tile
-                    } else {
-                        if ((t == RangeType.SQUARE) || ((t == RangeType.MANHATTAN) && ((Math.abs(x) + Math.abs(y)) <= range))) {
-                            final int rX = sX + x;
-                            final int rY = sY + y;
-                            if ((rX >= 1) && (rX < MAX_X) && (rY >= 1) && (rY < MAX_Y)) {
-                                neighbors.add(getTile(rX, rY));
-                            }
-                        }
+    final boolean contains(final int i) {
+        return (i >= maxY) && (i < size) && ((i % maxY) != 0);
+    }
+
+    /**
+     * Get the raw flags of the tile at the given index, along with
+     * CLAIM_CONFIRMED_FLAG if the tile is currently claimed
+     * 
+     * @param i
+     *            the tile index
+     * @return the flags
+     */
+    final int flagsOf(final int i) {
+        int flags = 0;
+        flags |= breeze.get(i) ? BREEZE_FLAG : 0;
+        flags |= glitter.get(i) ? GLITTER_FLAG : 0;
+        flags |= obstruction.get(i) ? OBSTRUCTION_FLAG : 0;
+        flags |= searched.get(i) ? SEARCHED_FLAG : 0;
+        flags |= smell.get(i) ? SMELL_FLAG : 0;
+        flags |= visited.get(i) ? VISITED_FLAG : 0;
+        flags |= claimed.get(i) ? CLAIMED_FLAG : 0;
+        flags |= isClaimed(i) ? CLAIM_CONFIRMED_FLAG : 0;
+        return flags;
+    }
+
+    /**
+     * Get the words that store the given flag for every tile. This is the
+     * map's own storage, not a copy.
+     * 
+     * @param flag
+     *            one of the *_FLAG constants
+     * @return the flag words
+     */
+    final TileBits getFlagWords(final int flag) {
+        switch (flag) {
+            case BREEZE_FLAG:
+                return breeze;
+            case GLITTER_FLAG:
+                return glitter;
+            case OBSTRUCTION_FLAG:
+                return obstruction;
+            case SEARCHED_FLAG:
+                return searched;
+            case SMELL_FLAG:
+                return smell;
+            case VISITED_FLAG:
+                return visited;
+            case CLAIMED_FLAG:
+                return claimed;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Get one bit per tile, set where {@link #isPassable(int)} does not hold
+     * for a tile inside the world's boundaries. Only the pages of the map
+     * where an obstruction, smell or breeze has been seen are allocated.
+     * 
+     * @return the blocked tiles
+     */
+    final TileBits getBlockedBits() {
+        final TileBits blocked = new TileBits(words);
+        for (int p = 0; p < blocked.pageCount(); p++) {
+            if (obstruction.hasPage(p) || smell.hasPage(p) || breeze.hasPage(p)) {
+                for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                    final long b = (obstruction.word(w) | smell.word(w) | breeze.word(w)) & ~visited.word(w);
+                    if (b != 0) {
+                        blocked.setWord(w, b & validWord(w));
                     }
                 }
             }
         }
-        return neighbors;
+        return blocked;
     }
 
     /**
-     * Get neighboring tiles satisfying the given parameters
+     * Get this map's graph for hierarchical path finding, creating it the
+     * first time it is needed. The graph brings itself up to date with the map
+     * when asked.
      * 
-     * @param loc
-     *            the location to search from
-     * @param dir
-     *            the direction to search in
-     * @param range
-     *            range to search
-     * @param t
-     *            the type of range to search
-     * @return the collection of tiles
+     * @return the graph
      */
-    private final Collection<Tile> getNeighborsInDirection(final LocationData loc, final Direction dir, final int range, final RangeType t) {
-        if (dir == null) {
-            return getNeighbors(loc, range, t);
+    final ClusterGraph getClusterGraph() {
+        if (clusterGraph == null) {
+            clusterGraph = new ClusterGraph(this);
         }
+        return clusterGraph;
+    }
 
-        int iX, iY, nX, nY;
-        switch (dir) {
-            case NORTH:
-                iX = -range;
-                nX = range;
-                iY = 1;
-                nY = range;
-                break;
-            case SOUTH:
-                iX = -range;
-                nX = range;
-                iY = -range;
-                nY = -1;
-                break;
-            case EAST:
-                iX = 1;
-                nX = range;
-                iY = -range;
-                nY = range;
-                break;
-            case WEST:
-                iX = -range;
-                nX = -1;
-                iY = -range;
-                nY = range;
-                break;
-            default:
-                assert false;
-                iX = 0;
-                nX = 0;
-                iY = 0;
-                nY = 0;
-                break;
+    /**
+     * Get the distances to the given target, creating them the first time
+     * they are needed. The most recently used targets' distances are kept,
+     * and bring themselves up to date with the map when asked.
+     * 
+     * @param target
+     *            the target's index
+     * @return the distances to the target
+     */
+    final DistanceField getDistanceField(final int target) {
+        if (distanceFields == null) {
+            distanceFields = new LinkedHashMap<Integer, DistanceField>(MAX_DISTANCE_FIELDS * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final java.util.Map.Entry<Integer, DistanceField> eldest) {
+                    return size() > MAX_DISTANCE_FIELDS;
+                }
+
+                /**
+                 * The serialVersionUID
+                 */
+                private static final long serialVersionUID = 1L;
+            };
+        }
+
+        DistanceField field = distanceFields.get(target);
+        if (field == null) {
+            field = new DistanceField(this, target);
+            distanceFields.put(target, field);
         }
-        return getNeighbors(loc.getX(), loc.getY(), range, t, iX, nX, iY, nY);
+        return field;
     }
 
     /**
-     * The range at which breezes can be detected
+     * Get the version of everything that affects which tiles are passable,
+     * which changes whenever {@link #isPassable(int)} may have changed for a
+     * tile
+     * 
+     * @return the version
      */
-    public static final int BREEZE_RANGE = 1;
+    final long getPassabilityVersion() {
+        return getVersion(BREEZE_FLAG) + getVersion(OBSTRUCTION_FLAG) + getVersion(SMELL_FLAG) + getVersion(VISITED_FLAG);
+    }
 
     /**
-     * The type of range for breezes
+     * Does the tile at the given index have a breeze?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has a breeze, false otherwise
      */
-    public static final RangeType BREEZE_RANGE_TYPE = RangeType.SQUARE;
+    final boolean hasBreeze(final int i) {
+        // Tiles that we have visited or have an obstruction cannot contain a
+        // breeze
+        return breeze.get(i) && !hasObstruction(i) && !hasVisited(i);
+    }
 
     /**
-     * The range at which glitter can be detected
+     * Does the tile at the given index have glitter?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has glitter, false otherwise
      */
-    public static final int GLITTER_RANGE = 1;
+    final boolean hasGlitter(final int i) {
+        // Tiles that contain an obstruction cannot contain gold
+        return glitter.get(i) && !hasObstruction(i);
+    }
 
     /**
-     * The type of range for glitter
+     * Does the tile at the given index have an obstruction?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has an obstruction, false otherwise
      */
-    public static final RangeType GLITTER_RANGE_TYPE = RangeType.MANHATTAN;
+    final boolean hasObstruction(final int i) {
+        // Tiles that we have visited cannot contain an obstruction
+        return obstruction.get(i) && !hasVisited(i);
+    }
 
     /**
-     * The maximum size for the world's X coordinate
+     * Has the tile at the given index been searched?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has been searched, false otherwise
      */
-    public static final int MAX_X = 47;
+    final boolean hasSearched(final int i) {
+        return searched.get(i);
+    }
 
     /**
-     * The maximum size for the world's Y coordinate
+     * Does the tile at the given index have a smell?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has a smell, false otherwise
      */
-    public static final int MAX_Y = 26;
+    final boolean hasSmell(final int i) {
+        // Tiles that contain obstructions or that we have visited cannot
+        // contain a smell
+        return smell.get(i) && !hasObstruction(i) && !hasVisited(i);
+    }
 
     /**
-     * The range at which smells can be detected
+     * Has the tile at the given index been visited?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has been visited, false otherwise
      */
-    public static final int SMELL_RANGE = 2;
+    final boolean hasVisited(final int i) {
+        return visited.get(i);
+    }
 
     /**
-     * The type of range for smells
+     * Get the flat index of the given location. Tiles are stored column by
+     * column, so the index is x * getMaxY() + y.
+     * 
+     * @param x
+     *            x-coordinate
+     * @param y
+     *            y-coordinate
+     * @return the index
      */
-    public static final RangeType SMELL_RANGE_TYPE = RangeType.SQUARE;
+    final int indexOf(final int x, final int y) {
+        return (x * maxY) + y;
+    }
 
     /**
-     * The range at which obstacles can be detected
+     * Has the tile at the given index been "claimed" by an agent?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile has been claimed, false otherwise
      */
-    public static final int SONAR_RANGE = 5;
+    final boolean isClaimed(final int i) {
+        return claimed.get(i) && (hasGlitter(i) || isWumpi(i));
+    }
 
     /**
-     * The type of range for obstacles
+     * Is it dangerous to move into the tile at the given index?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if moving into the tile could result in death, false
+     *         otherwise
      */
-    public static final RangeType SONAR_RANGE_TYPE = RangeType.MANHATTAN;
+    final boolean isDangerous(final int i) {
+        // We consider a tile dangerous if it could possibly contain a pit or
+        // Wumpi.
+        return hasSmell(i) || hasBreeze(i);
+    }
 
     /**
-     * The serialVersionUID
+     * Can an agent safely move into the tile at the given index? This is the
+     * same as !hasObstruction(i) && !isDangerous(i).
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is free of obstructions and danger
+     */
+    final boolean isPassable(final int i) {
+        // A visited tile can be neither obstructed nor dangerous. Otherwise any
+        // obstruction, smell or breeze makes it impassable.
+        return visited.get(i) || !(obstruction.get(i) || smell.get(i) || breeze.get(i));
+    }
+
+    /**
+     * Is the tile at the given index a wall?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is a wall, false otherwise
+     */
+    final boolean isWall(final int i) {
+        return walls.get(i);
+    }
+
+    /**
+     * Based on our best guess, is the tile at the given index a Wumpi? This can
+     * sometimes return false positives based on incomplete sensor data.
+     * 
+     * @param i
+     *            the tile index
+     * @return true if we think the tile is a Wumpi, false otherwise
+     */
+    final boolean isWumpi(final int i) {
+        return wumpi.get(i);
+    }
+
+    /**
+     * Combine data from the tile at the given index of the other map with what
+     * we know about the tile at the given index of this map
+     * 
+     * @param i
+     *            the index of the tile in this map
+     * @param other
+     *            the other map
+     * @param j
+     *            the index of the tile in the other map
+     */
+    final void mergeFrom(final int i, final Map other, final int j) {
+        mergeFrom(i, other.flagsOf(j));
+    }
+
+    /**
+     * Combine the given tile flags, as returned by {@link #flagsOf(int)}, with
+     * what we know about the tile at the given index
+     * 
+     * @param i
+     *            the tile index
+     * @param flags
+     *            the other tile's flags
+     */
+    final void mergeFrom(final int i, final int flags) {
+        // Merged changes belong to the other agent, so they are not ours to
+        // send out again
+        final long ownChanges = dirty.word(i >>> 6);
+
+        if (!hasSearched(i) && ((flags & SEARCHED_FLAG) != 0)) {
+            // Trust the other tile since it has been searched and this one
+            // has not
+            write(BREEZE_FLAG, i, (flags & BREEZE_FLAG) != 0);
+            write(GLITTER_FLAG, i, (flags & GLITTER_FLAG) != 0);
+            write(OBSTRUCTION_FLAG, i, (flags & OBSTRUCTION_FLAG) != 0);
+            write(SEARCHED_FLAG, i, true);
+            write(SMELL_FLAG, i, (flags & SMELL_FLAG) != 0);
+            write(CLAIMED_FLAG, i, (flags & CLAIMED_FLAG) != 0);
+
+            // Don't let someone else tell us that we have not visited a place
+            // if we already have
+            setVisited(i, (flags & VISITED_FLAG) != 0);
+        } else {
+            // Use public setters to sanitize the data from the other tile.
+            // Only allow false positives, not false negatives.
+            if ((flags & VISITED_FLAG) != 0) {
+                setVisited(i, true);
+            }
+            if ((flags & SEARCHED_FLAG) != 0) {
+                setSearched(i, true);
+            }
+            if ((flags & (OBSTRUCTION_FLAG | VISITED_FLAG)) == OBSTRUCTION_FLAG) {
+                setObstruction(i, true);
+            }
+            if ((flags & CLAIM_CONFIRMED_FLAG) != 0) {
+                setClaimed(i);
+            }
+        }
+        dirty.setWord(i >>> 6, ownChanges);
+    }
+
+    /**
+     * Bring the indexes of tiles up to date with every tile's flags. This must
+     * be called after the flag words have been modified directly.
+     */
+    final void rebuildIndexes() {
+        walls.clear();
+        wumpi.clear();
+        goldCandidates.clear();
+        unsearchable.clear();
+        wumpiCandidates.clear();
+
+        // Every index is empty on pages where no flags are set
+        for (int p = 0; p < walls.pageCount(); p++) {
+            if (!hasPage(p)) {
+                continue;
+            }
+            for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                final long valid = validWord(w);
+                final long hasObstruction = obstruction.word(w) & ~visited.word(w);
+                final long isDangerous = (smell.word(w) | breeze.word(w)) & ~hasObstruction & ~visited.word(w);
+
+                // Only obstructions can be walls or Wumpi
+                long wallWord = 0;
+                long wumpiWord = 0;
+                long obstructions = hasObstruction & valid;
+                while (obstructions != 0) {
+                    final long bit = Long.lowestOneBit(obstructions);
+                    obstructions ^= bit;
+
+                    final int i = (w << 6) + Long.numberOfTrailingZeros(bit);
+                    if (computeWall(i)) {
+                        wallWord |= bit;
+                    } else if (computeWumpi(i)) {
+                        wumpiWord |= bit;
+                    }
+                }
+                walls.setWord(w, wallWord);
+                wumpi.setWord(w, wumpiWord);
+
+                unsearchable.setWord(w, (searched.word(w) | hasObstruction | isDangerous) & valid);
+                goldCandidates.setWord(w, glitter.word(w) & ~hasObstruction & ~isDangerous & ~claimed.word(w) & valid);
+                wumpiCandidates.setWord(w, wumpiWord & ~claimed.word(w));
+            }
+        }
+    }
+
+    /**
+     * Set the tile at the given index to have a breeze. This will only update
+     * to true if it is possible for the tile to have a breeze
+     * 
+     * @param i
+     *            the tile index
+     * @param b
+     *            does the tile have a breeze?
+     * @return if the tile's state has changed
+     */
+    final boolean setBreeze(final int i, final boolean b) {
+        // Don't allow tiles with obstructions, tiles we've searched or visited
+        // to have the breeze flag set to true again
+        if (!hasObstruction(i) && !(b && hasSearched(i)) && !(b && hasVisited(i))) {
+            return write(BREEZE_FLAG, i, b);
+        }
+        return false;
+    }
+
+    /**
+     * Mark the tile at the given index as "claimed" so other agents don't try
+     * to take action against it
+     * 
+     * @param i
+     *            the tile index
+     */
+    final void setClaimed(final int i) {
+        // Merging replays claims against a partially merged neighborhood, in
+        // which the cached classification may not hold, so work it out afresh
+        write(CLAIMED_FLAG, i, hasGlitter(i) || computeWumpi(i));
+    }
+
+    /**
+     * Set the tile at the given index to have glitter. This will only update to
+     * true if it is possible for the tile to have glitter.
+     * 
+     * @param i
+     *            the tile index
+     * @param g
+     *            does the tile have glitter?
+     * @return if the tile's state has changed
+     */
+    final boolean setGlitter(final int i, final boolean g) {
+        // Don't allow tiles with obstructions, or tiles that we've searched to
+        // have the glitter flag set to true again
+        if (!hasObstruction(i) && !(g && hasSearched(i))) {
+            return write(GLITTER_FLAG, i, g);
+        }
+        return false;
+    }
+
+    /**
+     * Set the tile at the given index to have an obstruction. This will only
+     * update to true if it is possible for the tile to have an obstruction.
+     * 
+     * @param i
+     *            the tile index
+     * @param o
+     *            does the tile have an obstruction?
+     * @return if the tile's state has changed
+     */
+    final boolean setObstruction(final int i, final boolean o) {
+        // Don't allow tiles that we've searched or visited to have the
+        // obstruction flag set to true again
+        if (!(o && hasSearched(i)) && !(o && hasVisited(i))) {
+            return write(OBSTRUCTION_FLAG, i, o);
+        }
+        return false;
+    }
+
+    /**
+     * Set the searched flag for the tile at the given index
+     * 
+     * @param i
+     *            the tile index
+     * @param s
+     *            have we searched the tile?
+     * @return if the tile's state has changed
+     */
+    final boolean setSearched(final int i, final boolean s) {
+        return write(SEARCHED_FLAG, i, s);
+    }
+
+    /**
+     * Set the tile at the given index to have a smell. This will only update to
+     * true if it is possible for the tile to have a smell.
+     * 
+     * @param i
+     *            the tile index
+     * @param s
+     *            does the tile have a smell?
+     * @return if the tile's state has changed
+     */
+    final boolean setSmell(final int i, final boolean s) {
+        // Don't allow tiles with obstructions, tiles we've searched or visited
+        // to have the smell flag set to true again
+        if (!hasObstruction(i) && !(s && hasSearched(i)) && !(s && hasVisited(i))) {
+            final boolean changed = write(SMELL_FLAG, i, s);
+
+            // When clearing the smell flag, make sure to mark this tile as
+            // unsearched so agents try to check it again
+            if (changed && !s) {
+                setSearched(i, false);
+            }
+            return changed;
+        }
+        return false;
+    }
+
+    /**
+     * Set the visited flag for the tile at the given index
+     * 
+     * @param i
+     *            the tile index
+     * @param v
+     *            have we visited the tile?
+     * @return if the tile's state has changed
+     */
+    final boolean setVisited(final int i, final boolean v) {
+        // We can't ever "unvisit" a place
+        if (v) {
+            return write(VISITED_FLAG, i, true);
+        }
+        return false;
+    }
+
+    /**
+     * Get the x-coordinate of the given index
+     * 
+     * @param i
+     *            the tile index
+     * @return the x-coordinate
+     */
+    final int xOf(final int i) {
+        return i / maxY;
+    }
+
+    /**
+     * Get the y-coordinate of the given index
+     * 
+     * @param i
+     *            the tile index
+     * @return the y-coordinate
+     */
+    final int yOf(final int i) {
+        return i % maxY;
+    }
+
+    /**
+     * Advance the global version and the version of each of the given flags
+     * 
+     * @param flags
+     *            the flags that changed, as a combination of the _FLAG
+     *            constants
+     */
+    private final void advanceVersions(final int flags) {
+        if (flags == 0) {
+            return;
+        }
+        version++;
+        for (int f = 0; f < flagVersions.length; f++) {
+            if ((flags & (1 << f)) != 0) {
+                flagVersions[f]++;
+            }
+        }
+    }
+
+    /**
+     * Work out whether the tile at the given index is a wall from the current
+     * flags
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is a wall, false otherwise
+     */
+    private final boolean computeWall(final int i) {
+        // We know a tile is a wall if we've searched it or visited any of its
+        // direct neighbors and it has an obstruction
+        if (hasObstruction(i)) {
+            if (hasSearched(i)) {
+                return true;
+            }
+
+            final int x = xOf(i);
+            final int y = yOf(i);
+            for (int nX = Math.max(1, x - 1); nX <= Math.min(maxX - 1, x + 1); nX++) {
+                for (int nY = Math.max(1, y - 1); nY <= Math.min(maxY - 1, y + 1); nY++) {
+                    if (((nX != x) || (nY != y)) && hasVisited(indexOf(nX, nY))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Work out whether we think the tile at the given index is a Wumpi from the
+     * current flags
+     * 
+     * @param i
+     *            the tile index
+     * @return true if we think the tile is a Wumpi, false otherwise
+     */
+    private final boolean computeWumpi(final int i) {
+        // This tile can't have a Wumpi if it doesn't have an obstruction, or if
+        // we already know that this location is a wall.
+        if (!hasObstruction(i) || computeWall(i)) {
+            return false;
+        }
+
+        final int x = xOf(i);
+        final int y = yOf(i);
+
+        // See if there are any other obstructions adjacent to this tile. If
+        // it's surrounded by too many, it's probably a wall
+        final int WALL_THRESHOLD = 2;
+
+        int obsCount = 0;
+        for (int nX = Math.max(1, x - 1); nX <= Math.min(maxX - 1, x + 1); nX++) {
+            for (int nY = Math.max(1, y - 1); nY <= Math.min(maxY - 1, y + 1); nY++) {
+                if (((nX == x) != (nY == y)) && hasObstruction(indexOf(nX, nY))) {
+                    obsCount++;
+                    if (obsCount >= WALL_THRESHOLD) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        // See if this tile is surrounded by enough smelly tiles to have a good
+        // chance of being a Wumpi
+        final int WUMPI_THRESHOLD = 4;
+
+        int smellCount = 0;
+        for (int nX = Math.max(1, x - 1); nX <= Math.min(maxX - 1, x + 1); nX++) {
+            for (int nY = Math.max(1, y - 1); nY <= Math.min(maxY - 1, y + 1); nY++) {
+                if (((nX != x) || (nY != y)) && hasSmell(indexOf(nX, nY))) {
+                    smellCount++;
+                    if (smellCount >= WUMPI_THRESHOLD) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tell the listeners about every tile changed by a merge
+     * 
+     * @param changes
+     *            the tiles whose flag changed, for each flag indexed by the
+     *            flag's bit position, null for flags that didn't change
+     */
+    private final void fireMergeChanges(final TileBits[] changes) {
+        final TileBits[] changed = new TileBits[changes.length];
+        for (int p = 0; p < breeze.pageCount(); p++) {
+            // Only look at the flags that changed on this page
+            int count = 0;
+            for (final TileBits c : changes) {
+                if ((c != null) && c.hasPage(p)) {
+                    changed[count++] = c;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            for (int w = p << TileBits.PAGE_SHIFT; w < pageEnd(p); w++) {
+                long bits = 0;
+                for (int k = 0; k < count; k++) {
+                    bits |= changed[k].word(w);
+                }
+                while (bits != 0) {
+                    final int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    int flags = 0;
+                    for (int f = 0; f < changes.length; f++) {
+                        if ((changes[f] != null) && changes[f].get(i)) {
+                            flags |= 1 << f;
+                        }
+                    }
+                    fireTileChanged(i, flags);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tell the listeners that flags of the tile at the given index changed
+     * 
+     * @param i
+     *            the tile index
+     * @param flags
+     *            the flags that changed
+     */
+    private final void fireTileChanged(final int i, final int flags) {
+        final MapListener[] current = listeners;
+        if (current != null) {
+            for (final MapListener l : current) {
+                l.tileChanged(this, xOf(i), yOf(i), flags);
+            }
+        }
+    }
+
+    /**
+     * Does any flag have storage allocated for the given page? Every flag, and
+     * so every index, is clear on pages that don't.
+     * 
+     * @param p
+     *            the page number
+     * @return true if some flag has the page, false otherwise
+     */
+    private final boolean hasPage(final int p) {
+        return breeze.hasPage(p) || claimed.hasPage(p) || glitter.hasPage(p) || obstruction.hasPage(p) || searched.hasPage(p) || smell.hasPage(p) || visited.hasPage(p);
+    }
+
+    /**
+     * Get the table of neighbors satisfying the given parameters, building it
+     * the first time it is needed. Tables are shared between maps of the same
+     * size.
+     * 
+     * @param range
+     *            the range to search, at most NEIGHBOR_TABLE_RANGE
+     * @param t
+     *            the type of range to search
+     * @param dir
+     *            the direction to search in, null to search in every direction
+     * @return the table of neighbors
+     */
+    private final NeighborTable neighborTable(final int range, final RangeType t, final Direction dir) {
+        assert (range >= 0) && (range <= NEIGHBOR_TABLE_RANGE);
+
+        AtomicReferenceArray<NeighborTable> tables = neighborTables;
+        if (tables == null) {
+            final Long key = ((long) maxX << 32) | maxY;
+            tables = NEIGHBOR_TABLES.get(key);
+            if (tables == null) {
+                NEIGHBOR_TABLES.putIfAbsent(key, new AtomicReferenceArray<NeighborTable>(RangeType.values().length * (DIRECTIONS.length + 1) * (NEIGHBOR_TABLE_RANGE + 1)));
+                tables = NEIGHBOR_TABLES.get(key);
+            }
+            neighborTables = tables;
+        }
+
+        final int k = neighborTableIndex(range, t, dir);
+        NeighborTable table = tables.get(k);
+        if (table == null) {
+            // Two threads may both build the same table, but either copy will
+            // do
+            table = new NeighborTable(maxX, maxY, buildOffsets(range, t, dir));
+            tables.set(k, table);
+        }
+        return table;
+    }
+
+    /**
+     * Get the index of the word after the last word of the given page
+     * 
+     * @param p
+     *            the page number
+     * @return the end of the page, in words
+     */
+    private final int pageEnd(final int p) {
+        return Math.min(words, (p + 1) << TileBits.PAGE_SHIFT);
+    }
+
+    /**
+     * Note tiles changed by the merge in progress, for the listeners to be told
+     * about once it is complete
+     * 
+     * @param flag
+     *            the flag that changed, one of the _FLAG constants
+     * @param w
+     *            the word index
+     * @param bits
+     *            one bit per tile in the word whose flag changed
+     */
+    private final void recordMergeChange(final int flag, final int w, final long bits) {
+        if (bits == 0) {
+            return;
+        }
+        final int f = Integer.numberOfTrailingZeros(flag);
+        if (mergeChanges[f] == null) {
+            mergeChanges[f] = new TileBits(words);
+        }
+
+        // A flag changed twice during the merge is back where it started
+        mergeChanges[f].setWord(w, mergeChanges[f].word(w) ^ bits);
+    }
+
+    /**
+     * Bring the indexes of tiles up to date after a flag of the tile at the
+     * given index changed
+     * 
+     * @param i
+     *            the tile index
+     * @param flag
+     *            the flag that changed
+     */
+    private final void refreshIndexes(final int i, final int flag) {
+        unsearchable.set(i, contains(i) && (hasSearched(i) || !isPassable(i)));
+        goldCandidates.set(i, hasGlitter(i) && !isDangerous(i) && !claimed.get(i));
+        if ((flag & (OBSTRUCTION_FLAG | SEARCHED_FLAG | SMELL_FLAG | VISITED_FLAG)) == 0) {
+            // Walls and Wumpi don't depend on this flag
+            wumpiCandidates.set(i, isWumpi(i) && !claimed.get(i));
+            return;
+        }
+
+        // Whether a tile is a wall or a Wumpi depends on its direct neighbors
+        // too
+        final int x = xOf(i);
+        final int y = yOf(i);
+        for (int nX = Math.max(1, x - 1); nX <= Math.min(maxX - 1, x + 1); nX++) {
+            for (int nY = Math.max(1, y - 1); nY <= Math.min(maxY - 1, y + 1); nY++) {
+                final int n = indexOf(nX, nY);
+                final boolean isWall = computeWall(n);
+                walls.set(n, isWall);
+                wumpi.set(n, !isWall && computeWumpi(n));
+                wumpiCandidates.set(n, isWumpi(n) && !claimed.get(n));
+            }
+        }
+    }
+
+    /**
+     * Exchange the obstruction, smell and visited flags of the neighbors that
+     * follow the given tile in index order with the given saved flags. Calling
+     * this twice restores both sets of flags.
+     * 
+     * @param i
+     *            the tile index
+     * @param savedObstruction
+     *            the saved obstruction flags
+     * @param savedSmell
+     *            the saved smell flags
+     * @param savedVisited
+     *            the saved visited flags
+     */
+    private final void swapFollowingNeighbors(final int i, final TileBits savedObstruction, final TileBits savedSmell, final TileBits savedVisited) {
+        final int x = xOf(i);
+        final int y = yOf(i);
+        for (int nX = x; nX <= Math.min(maxX - 1, x + 1); nX++) {
+            for (int nY = Math.max(1, y - 1); nY <= Math.min(maxY - 1, y + 1); nY++) {
+                final int n = indexOf(nX, nY);
+                if (n > i) {
+                    swap(obstruction, savedObstruction, n);
+                    swap(smell, savedSmell, n);
+                    swap(visited, savedVisited, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the bits of the given word that belong to tiles inside the world's
+     * boundaries
+     * 
+     * @param w
+     *            the word index
+     * @return one bit per tile, set if the tile is inside the boundaries
+     */
+    private final long validWord(final int w) {
+        final int first = w << 6;
+        final int end = Math.min(size, first + 64);
+        if (end <= Math.max(first, maxY)) {
+            // Past the last tile, or all in column 0
+            return 0;
+        }
+
+        long mask = -1L >>> (64 - (end - first));
+        if (first < maxY) {
+            mask &= -1L << (maxY - first);
+        }
+
+        // Clear row 0 of every column
+        for (int i = ((first + maxY - 1) / maxY) * maxY; i < end; i += maxY) {
+            mask &= ~(1L << i);
+        }
+        return mask;
+    }
+
+    /**
+     * Visit the neighbors satisfying the given parameters, moving a single
+     * Tile from neighbor to neighbor
+     * 
+     * @param x
+     *            the x-coordinate to search from
+     * @param y
+     *            the y-coordinate to search from
+     * @param range
+     *            the range to search
+     * @param t
+     *            the type of range to search
+     * @param dir
+     *            the direction to search in, null to search in every direction
+     * @param v
+     *            the visitor
+     * @return true if every tile was visited, false if the visitor stopped
+     */
+    private final boolean visitNeighbors(final int x, final int y, final int range, final RangeType t, final Direction dir, final TileVisitor v) {
+        final Tile cursor = new Tile(this, 0);
+        if ((range >= 0) && (range <= NEIGHBOR_TABLE_RANGE) && (x >= 0) && (x < maxX) && (y >= 0) && (y < maxY)) {
+            final int i = indexOf(x, y);
+            for (final int o : neighborTable(range, t, dir).of(i)) {
+                cursor.moveTo(i + o);
+                if (!v.visit(cursor)) {
+                    return false;
+                }
+            }
+        } else {
+            // There is no table for this search, so check every offset
+            final int[] offsets = buildOffsets(range, t, dir);
+            for (int k = 0; k < offsets.length; k += 2) {
+                final int nX = x + offsets[k];
+                final int nY = y + offsets[k + 1];
+                if ((nX >= 1) && (nX < maxX) && (nY >= 1) && (nY < maxY)) {
+                    cursor.moveTo(indexOf(nX, nY));
+                    if (!v.visit(cursor)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a single flag of the tile at the given index. If it changed, the
+     * tile is marked as dirty, the versions are advanced and the listeners
+     * are notified.
+     * 
+     * @param flag
+     *            the flag, one of the _FLAG constants
+     * @param i
+     *            the tile index
+     * @param value
+     *            the new value of the flag
+     * @return true if the flag changed, false otherwise
+     */
+    private final boolean write(final int flag, final int i, final boolean value) {
+        if (getFlagWords(flag).set(i, value)) {
+            dirty.set(i, true);
+            advanceVersions(flag);
+            refreshIndexes(i, flag);
+            if (!isMerging) {
+                fireTileChanged(i, flag);
+            } else if (mergeChanges != null) {
+                recordMergeChange(flag, i >>> 6, 1L << i);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Build the table of offsets to the neighbors satisfying the given
+     * parameters. Offsets are listed as x, y pairs, by x and then by y.
+     * 
+     * @param range
+     *            the range to search
+     * @param t
+     *            the type of range to search
+     * @param dir
+     *            the direction to search in, null to search in every direction
+     * @return the table of offsets
+     */
+    private static int[] buildOffsets(final int range, final RangeType t, final Direction dir) {
+        final int side = Math.max(0, (2 * range) + 1);
+        final int[] offsets = new int[2 * side * side];
+        int k = 0;
+        for (int x = -range; x <= range; x++) {
+            for (int y = -range; y <= range; y++) {
+                if (isNeighborOffset(x, y, range, t, dir)) {
+                    offsets[k++] = x;
+                    offsets[k++] = y;
+                }
+            }
+        }
+        return Arrays.copyOf(offsets, k);
+    }
+
+    /**
+     * Is the given offset that of a neighbor satisfying the given parameters?
+     * 
+     * @param x
+     *            the x offset
+     * @param y
+     *            the y offset
+     * @param range
+     *            the range to search
+     * @param t
+     *            the type of range to search
+     * @param dir
+     *            the direction to search in, null to search in every direction
+     * @return true if the offset is that of a neighbor, false otherwise
+     */
+    private static boolean isNeighborOffset(final int x, final int y, final int range, final RangeType t, final Direction dir) {
+        if (((x == 0) && (y == 0)) || (Math.abs(x) > range) || (Math.abs(y) > range)) {
+            // Don't include the current tile
+            return false;
+        }
+        if ((t == RangeType.MANHATTAN) && ((Math.abs(x) + Math.abs(y)) > range)) {
+            return false;
+        }
+        if (dir == null) {
+            return true;
+        }
+
+        switch (dir) {
+            case NORTH:
+                return y >= 1;
+            case SOUTH:
+                return y <= -1;
+            case EAST:
+                return x >= 1;
+            case WEST:
+                return x <= -1;
+            default:
+                assert false;
+                return false;
+        }
+    }
+
+    /**
+     * Get the position of a table of neighbors within a map's tables
+     * 
+     * @param range
+     *            the range to search
+     * @param t
+     *            the type of range to search
+     * @param dir
+     *            the direction to search in, null to search in every direction
+     * @return the position of the table
+     */
+    private static int neighborTableIndex(final int range, final RangeType t, final Direction dir) {
+        final int d = (dir == null) ? 0 : (dir.ordinal() + 1);
+        return (((t.ordinal() * (DIRECTIONS.length + 1)) + d) * (NEIGHBOR_TABLE_RANGE + 1)) + range;
+    }
+
+    /**
+     * Exchange a single bit between the two given sets of flag bits
+     * 
+     * @param a
+     *            the first flag bits
+     * @param b
+     *            the second flag bits
+     * @param i
+     *            the bit index
+     */
+    private static void swap(final TileBits a, final TileBits b, final int i) {
+        final boolean value = a.get(i);
+        a.set(i, b.get(i));
+        b.set(i, value);
+    }
+
+    /**
+     * Flag bit for a tile's breeze flag
+     */
+    public static final int BREEZE_FLAG = 1 << 0;
+
+    /**
+     * Flag bit for a tile's glitter flag
+     */
+    public static final int GLITTER_FLAG = 1 << 1;
+
+    /**
+     * Flag bit for a tile's obstruction flag
+     */
+    public static final int OBSTRUCTION_FLAG = 1 << 2;
+
+    /**
+     * Flag bit for a tile's searched flag
+     */
+    public static final int SEARCHED_FLAG = 1 << 3;
+
+    /**
+     * Flag bit for a tile's smell flag
+     */
+    public static final int SMELL_FLAG = 1 << 4;
+
+    /**
+     * Flag bit for a tile's visited flag
+     */
+    public static final int VISITED_FLAG = 1 << 5;
+
+    /**
+     * Flag bit for a tile's claimed flag
+     */
+    public static final int CLAIMED_FLAG = 1 << 6;
+
+    /**
+     * The range at which breezes can be detected
+     */
+    public static final int BREEZE_RANGE = 1;
+
+    /**
+     * The type of range for breezes
+     */
+    public static final RangeType BREEZE_RANGE_TYPE = RangeType.SQUARE;
+
+    /**
+     * The range at which glitter can be detected
+     */
+    public static final int GLITTER_RANGE = 1;
+
+    /**
+     * The type of range for glitter
+     */
+    public static final RangeType GLITTER_RANGE_TYPE = RangeType.MANHATTAN;
+
+    /**
+     * The maximum size for the world's X coordinate in the standard scenarios,
+     * and the size of maps created with {@link #Map()}
+     */
+    public static final int MAX_X = 47;
+
+    /**
+     * The maximum size for the world's Y coordinate in the standard scenarios,
+     * and the size of maps created with {@link #Map()}
+     */
+    public static final int MAX_Y = 26;
+
+    /**
+     * The range at which smells can be detected
+     */
+    public static final int SMELL_RANGE = 2;
+
+    /**
+     * The type of range for smells
+     */
+    public static final RangeType SMELL_RANGE_TYPE = RangeType.SQUARE;
+
+    /**
+     * The range at which obstacles can be detected
+     */
+    public static final int SONAR_RANGE = 5;
+
+    /**
+     * The type of range for obstacles
+     */
+    public static final RangeType SONAR_RANGE_TYPE = RangeType.MANHATTAN;
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 3L;
+
+    /**
+     * Flag bit used when sharing tiles to indicate that a tile's claim still
+     * holds, i.e. that {@link #isClaimed(int)} is true
+     */
+    static final int CLAIM_CONFIRMED_FLAG = 1 << 7;
+
+    /**
+     * The largest number of tile indexes a map may have
+     */
+    private static final long MAX_TILES = 1L << 30;
+
+    /**
+     * The directions, in order
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The largest range for which tables of neighbors are kept. This covers
+     * every sensor range, and the bazooka's targeting range.
+     */
+    private static final int NEIGHBOR_TABLE_RANGE = SONAR_RANGE;
+
+    /**
+     * Tables of neighbors for each size of map, keyed by maximum X << 32 |
+     * maximum Y, and within that indexed by {@link #neighborTableIndex}. Each
+     * table is built the first time it is needed.
+     */
+    private static final ConcurrentHashMap<Long, AtomicReferenceArray<NeighborTable>> NEIGHBOR_TABLES = new ConcurrentHashMap<Long, AtomicReferenceArray<NeighborTable>>();
+
+    /**
+     * The number of targets whose distances are kept
+     */
+    private static final int MAX_DISTANCE_FIELDS = 8;
+
+    /**
+     * The number of tiles changed by each merge of a delta
+     */
+    private static final Histogram MERGE_DELTA_TILES_CHANGED = Metrics.histogram("map.mergeFromDelta.tilesChanged");
+
+    /**
+     * The time each merge of a delta takes
+     */
+    private static final Timer MERGE_DELTA_TIME = Metrics.timer("map.mergeFromDelta.time");
+
+    /**
+     * The number of tiles changed by each merge of a whole map
+     */
+    private static final Histogram MERGE_TILES_CHANGED = Metrics.histogram("map.mergeFrom.tilesChanged");
+
+    /**
+     * The time each merge of a whole map takes
+     */
+    private static final Timer MERGE_TIME = Metrics.timer("map.mergeFrom.time");
+
+    /**
+     * Breeze flags, one bit per tile
+     */
+    private final TileBits breeze;
+
+    /**
+     * Claimed flags, one bit per tile
+     */
+    private final TileBits claimed;
+
+    /**
+     * This map's graph for hierarchical path finding, created the first time
+     * it is needed
+     */
+    private transient ClusterGraph clusterGraph = null;
+
+    /**
+     * The distances to the most recently used targets, least recently used
+     * first
+     */
+    private transient LinkedHashMap<Integer, DistanceField> distanceFields = null;
+
+    /**
+     * Tiles changed by this agent since the last delta or snapshot, one bit
+     * per tile
+     */
+    private final TileBits dirty;
+
+    /**
+     * Glitter flags, one bit per tile
+     */
+    private final TileBits glitter;
+
+    /**
+     * The tiles with known, unclaimed gold that is safe to get to
+     */
+    private final TileSet goldCandidates;
+
+    /**
+     * The maximum size for this world's X coordinate
+     */
+    private final int maxX;
+
+    /**
+     * The maximum size for this world's Y coordinate
+     */
+    private final int maxY;
+
+    /**
+     * This map's tables of neighbors, looked up the first time they are needed
+     */
+    private transient AtomicReferenceArray<NeighborTable> neighborTables = null;
+
+    /**
+     * Obstruction flags, one bit per tile
+     */
+    private final TileBits obstruction;
+
+    /**
+     * Searched flags, one bit per tile
+     */
+    private final TileBits searched;
+
+    /**
+     * The number of tile indexes, including those outside the world's
+     * boundaries
+     */
+    private final int size;
+
+    /**
+     * Smell flags, one bit per tile
+     */
+    private final TileBits smell;
+
+    /**
+     * Visited flags, one bit per tile
+     */
+    private final TileBits visited;
+
+    /**
+     * The number of 64-bit words needed to hold one flag for every tile
+     */
+    private final int words;
+
+    /**
+     * The number of changes made to each flag of this map, indexed by the
+     * flag's bit position
+     */
+    private final long[] flagVersions = new long[7];
+
+    /**
+     * True while a whole map is being merged in, during which listeners are
+     * not notified of individual writes
+     */
+    private transient boolean isMerging = false;
+
+    /**
+     * The listeners told about changes to this map, null if there are none
+     */
+    private transient MapListener[] listeners = null;
+
+    /**
+     * The tiles changed by the merge in progress, for each flag indexed by the
+     * flag's bit position, null if no merge is in progress or there are no
+     * listeners to tell
+     */
+    private transient TileBits[] mergeChanges = null;
+
+    /**
+     * The tiles inside the world's boundaries that can't be searched: those
+     * that are searched, obstructed or dangerous. Every other tile can be.
+     */
+    private final TileSet unsearchable;
+
+    /**
+     * The tiles we think are unclaimed Wumpi
+     */
+    private final TileSet wumpiCandidates;
+
+    /**
+     * The number of changes made to this map
+     */
+    private long version = 0;
+
+    /**
+     * The tiles that {@link #isWall(int)} holds for, kept up to date as tiles
+     * change
      */
-    private static final long serialVersionUID = 1L;
+    private final TileBits walls;
 
     /**
-     * The tile array that represents this map
+     * The tiles that {@link #isWumpi(int)} holds for, kept up to date as tiles
+     * change
      */
-    private final Tile[][] map = new Tile[MAX_X][MAX_Y];
+    private final TileBits wumpi;
 }
@@ -0,0 +1,117 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.io.Serializable;
+
+/**
+ * An immutable set of tiles that have changed in an agent's map, along with
+ * their flags at the time the delta was taken
+ * 
+ * @author Kyle Hill
+ */
+public final class MapDelta implements Serializable {
+    /**
+     * Constructs a new MapDelta. The given arrays are not copied.
+     * 
+     * @param mX
+     *            the maximum size for the X coordinate of the delta's map
+     * @param mY
+     *            the maximum size for the Y coordinate of the delta's map
+     * @param i
+     *            the changed tile indexes, in ascending order
+     * @param f
+     *            the flags of each changed tile
+     */
+    MapDelta(final int mX, final int mY, final int[] i, final byte[] f) {
+        assert i.length == f.length;
+
+        maxX = mX;
+        maxY = mY;
+        indexes = i;
+        flags = f;
+    }
+
+    /**
+     * Returns true if this delta contains no tiles
+     * 
+     * @return true if this delta contains no tiles, false otherwise
+     */
+    public boolean isEmpty() {
+        return indexes.length == 0;
+    }
+
+    /**
+     * Returns the number of tiles in this delta
+     * 
+     * @return the number of tiles in this delta
+     */
+    public int size() {
+        return indexes.length;
+    }
+
+    /**
+     * Get the flags of the k-th tile in this delta
+     * 
+     * @param k
+     *            the position within this delta
+     * @return the tile's flags
+     */
+    int getFlags(final int k) {
+        return flags[k] & 0xFF;
+    }
+
+    /**
+     * Get the maximum size for the X coordinate of the map this delta was
+     * taken from
+     * 
+     * @return the maximum size for the X coordinate
+     */
+    int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the maximum size for the Y coordinate of the map this delta was
+     * taken from
+     * 
+     * @return the maximum size for the Y coordinate
+     */
+    int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Get the map index of the k-th tile in this delta
+     * 
+     * @param k
+     *            the position within this delta
+     * @return the tile's index
+     */
+    int getIndex(final int k) {
+        return indexes[k];
+    }
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * The flags of each changed tile
+     */
+    private final byte[] flags;
+
+    /**
+     * The changed tile indexes, in ascending order
+     */
+    private final int[] indexes;
+
+    /**
+     * The maximum size for the X coordinate of the delta's map
+     */
+    private final int maxX;
+
+    /**
+     * The maximum size for the Y coordinate of the delta's map
+     */
+    private final int maxY;
+}
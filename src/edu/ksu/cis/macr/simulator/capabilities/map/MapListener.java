@@ -0,0 +1,25 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+/**
+ * Receives notice of every change made to the tiles of a {@link Map}, whether
+ * made through a {@link Tile}, one of the Map's update methods, or a merge
+ * 
+ * @author Kyle Hill
+ */
+public interface MapListener {
+    /**
+     * Called after flags of a tile have changed. Listeners should not modify
+     * the map from within this call.
+     * 
+     * @param map
+     *            the map that changed
+     * @param x
+     *            the x-coordinate of the tile
+     * @param y
+     *            the y-coordinate of the tile
+     * @param flags
+     *            the flags that changed, as a combination of the Map's _FLAG
+     *            constants
+     */
+    void tileChanged(Map map, int x, int y, int flags);
+}
@@ -0,0 +1,395 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A map message passed between agents, along with its compact binary encoding.
+ * Every message starts with a fixed header:
+ * 
+ * <pre>
+ * magic (2 bytes) | version (1) | type (1) | max X (2) | max Y (2) | sequence (8) | sender (UTF)
+ * </pre>
+ * 
+ * The maximum X and Y coordinates are those of the sender's map, as unsigned
+ * shorts. Maps only accept messages from maps of the same size.
+ * 
+ * A {@link Type#SNAPSHOT} is followed by each flag's words, run-length encoded
+ * as alternating (zero words, literal words) counts. A {@link Type#DELTA} is
+ * followed by the number of tiles and, for each tile, the gap from the previous
+ * tile index and a single byte of flags. All counts are variable-length
+ * integers.
+ * 
+ * @author Kyle Hill
+ */
+public final class MapMessage {
+    /**
+     * The type of map message
+     * 
+     * @author Kyle Hill
+     * 
+     */
+    public static enum Type {
+        /**
+         * The message contains a full snapshot of a map
+         */
+        SNAPSHOT,
+
+        /**
+         * The message contains the tiles that changed in a map since the
+         * sender's previous message
+         */
+        DELTA
+    }
+
+    /**
+     * Constructs a message containing the tiles that changed in a map
+     * 
+     * @param s
+     *            the sending agent
+     * @param n
+     *            the sender's sequence number for this message
+     * @param d
+     *            the changed tiles
+     */
+    public MapMessage(final String s, final long n, final MapDelta d) {
+        this(Type.DELTA, s, n, null, d);
+    }
+
+    /**
+     * Constructs a message containing a full snapshot of a map
+     * 
+     * @param s
+     *            the sending agent
+     * @param n
+     *            the sender's sequence number for this message
+     * @param m
+     *            the snapshot, which must not be modified afterwards
+     */
+    public MapMessage(final String s, final long n, final Map m) {
+        this(Type.SNAPSHOT, s, n, m, null);
+    }
+
+    /**
+     * Constructs a new MapMessage
+     * 
+     * @param t
+     *            the message type
+     * @param s
+     *            the sending agent
+     * @param n
+     *            the sender's sequence number for this message
+     * @param m
+     *            the snapshot, if any
+     * @param d
+     *            the changed tiles, if any
+     */
+    private MapMessage(final Type t, final String s, final long n, final Map m, final MapDelta d) {
+        if (s == null) {
+            throw new IllegalArgumentException();
+        }
+        type = t;
+        sender = s;
+        sequence = n;
+        snapshot = m;
+        delta = d;
+    }
+
+    /**
+     * Returns the changed tiles of a {@link Type#DELTA} message
+     * 
+     * @return the changed tiles, null for a snapshot
+     */
+    public MapDelta getDelta() {
+        return delta;
+    }
+
+    /**
+     * Returns the sending agent
+     * 
+     * @return the sending agent
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * Returns the sender's sequence number for this message
+     * 
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the map of a {@link Type#SNAPSHOT} message
+     * 
+     * @return the snapshot, null for a delta
+     */
+    public Map getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the message type
+     * 
+     * @return the message type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Encode this message in its compact binary form
+     * 
+     * @return the encoded message
+     */
+    public byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(type == Type.DELTA ? 64 + (delta.size() * 2) : 512);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type.ordinal());
+            out.writeShort((type == Type.DELTA) ? delta.getMaxX() : snapshot.getMaxX());
+            out.writeShort((type == Type.DELTA) ? delta.getMaxY() : snapshot.getMaxY());
+            out.writeLong(sequence);
+            out.writeUTF(sender);
+
+            switch (type) {
+                case SNAPSHOT:
+                    for (final int flag : FLAGS) {
+                        writeWords(out, snapshot.getFlagWords(flag));
+                    }
+                    break;
+
+                case DELTA:
+                    writeVarInt(out, delta.size());
+                    int previous = 0;
+                    for (int k = 0; k < delta.size(); k++) {
+                        writeVarInt(out, delta.getIndex(k) - previous);
+                        out.writeByte(delta.getFlags(k));
+                        previous = delta.getIndex(k);
+                    }
+                    break;
+
+                default:
+                    assert false;
+                    break;
+            }
+            out.flush();
+        } catch (final IOException e) {
+            // Writing to memory cannot fail
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a message from its compact binary form
+     * 
+     * @param data
+     *            the encoded message
+     * @return the decoded message
+     * @throws IllegalArgumentException
+     *             if the data is not a valid map message
+     */
+    public static MapMessage fromBytes(final byte[] data) throws IllegalArgumentException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if ((in.readShort() != MAGIC) || (in.readByte() != VERSION)) {
+                throw new IllegalArgumentException();
+            }
+
+            final int typeOrdinal = in.readByte();
+            if ((typeOrdinal < 0) || (typeOrdinal >= Type.values().length)) {
+                throw new IllegalArgumentException();
+            }
+            final Type type = Type.values()[typeOrdinal];
+
+            final int maxX = in.readUnsignedShort();
+            final int maxY = in.readUnsignedShort();
+            Map.checkSize(maxX, maxY);
+            final long sequence = in.readLong();
+            final String sender = in.readUTF();
+
+            switch (type) {
+                case SNAPSHOT:
+                    final Map map = new Map(maxX, maxY);
+                    for (final int flag : FLAGS) {
+                        readWords(in, map.getFlagWords(flag));
+                    }
+                    map.rebuildIndexes();
+                    return new MapMessage(sender, sequence, map);
+
+                case DELTA:
+                    final int size = readVarInt(in);
+                    if ((size < 0) || (size > (maxX * maxY))) {
+                        throw new IllegalArgumentException();
+                    }
+
+                    final int[] indexes = new int[size];
+                    final byte[] flags = new byte[size];
+                    int previous = 0;
+                    for (int k = 0; k < size; k++) {
+                        indexes[k] = previous + readVarInt(in);
+                        flags[k] = in.readByte();
+                        if ((indexes[k] < previous) || (indexes[k] >= (maxX * maxY))) {
+                            throw new IllegalArgumentException();
+                        }
+                        previous = indexes[k];
+                    }
+                    return new MapMessage(sender, sequence, new MapDelta(maxX, maxY, indexes, flags));
+
+                default:
+                    throw new IllegalArgumentException();
+            }
+        } catch (final IOException e) {
+            // The message was truncated
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Read a variable-length, non-negative integer
+     * 
+     * @param in
+     *            the input to read from
+     * @return the integer
+     * @throws IOException
+     *             if the input ends early
+     */
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Read run-length encoded flag words into the given bits
+     * 
+     * @param in
+     *            the input to read from
+     * @param bits
+     *            the flag bits to fill
+     * @throws IOException
+     *             if the input ends early
+     */
+    private static void readWords(final DataInputStream in, final TileBits bits) throws IOException {
+        int w = 0;
+        while (w < bits.words()) {
+            final int zeros = readVarInt(in);
+            final int literals = readVarInt(in);
+            if ((zeros < 0) || (literals < 0) || (((long) w + zeros + literals) > bits.words())) {
+                throw new IllegalArgumentException();
+            }
+            w += zeros;
+            for (int k = 0; k < literals; k++) {
+                bits.setWord(w++, in.readLong());
+            }
+        }
+    }
+
+    /**
+     * Write a variable-length, non-negative integer
+     * 
+     * @param out
+     *            the output to write to
+     * @param value
+     *            the integer
+     * @throws IOException
+     *             if the output cannot be written to
+     */
+    private static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+        assert value >= 0;
+
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Write flag words, run-length encoding runs of empty words
+     * 
+     * @param out
+     *            the output to write to
+     * @param bits
+     *            the flag bits
+     * @throws IOException
+     *             if the output cannot be written to
+     */
+    private static void writeWords(final DataOutputStream out, final TileBits bits) throws IOException {
+        final int words = bits.words();
+        int w = 0;
+        while (w < words) {
+            final int zerosStart = w;
+            while ((w < words) && (bits.word(w) == 0)) {
+                // Pages that were never written are empty throughout
+                final int p = w >>> TileBits.PAGE_SHIFT;
+                w = bits.hasPage(p) ? (w + 1) : Math.min(words, (p + 1) << TileBits.PAGE_SHIFT);
+            }
+            final int literalsStart = w;
+            while ((w < words) && (bits.word(w) != 0)) {
+                w++;
+            }
+            writeVarInt(out, literalsStart - zerosStart);
+            writeVarInt(out, w - literalsStart);
+            for (int k = literalsStart; k < w; k++) {
+                out.writeLong(bits.word(k));
+            }
+        }
+    }
+
+    /**
+     * The flags stored in a snapshot, in encoding order
+     */
+    private static final int[] FLAGS = { Map.BREEZE_FLAG, Map.GLITTER_FLAG, Map.OBSTRUCTION_FLAG, Map.SEARCHED_FLAG, Map.SMELL_FLAG, Map.VISITED_FLAG, Map.CLAIMED_FLAG };
+
+    /**
+     * Marks the start of every map message
+     */
+    private static final short MAGIC = 0x4D50;
+
+    /**
+     * The version of the encoding
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The changed tiles of a delta message
+     */
+    private final MapDelta delta;
+
+    /**
+     * The sending agent
+     */
+    private final String sender;
+
+    /**
+     * The sender's sequence number for this message
+     */
+    private final long sequence;
+
+    /**
+     * The map of a snapshot message
+     */
+    private final Map snapshot;
+
+    /**
+     * The message type
+     */
+    private final Type type;
+}
@@ -57,10 +57,12 @@ public final class MapUtils {
      * Randomly choose one of the two return locations to hopefully cut down on
      * collisions
      * 
+     * @param random
+     *            the random number generator to choose with
      * @return the LocationData to return gold to
      */
-    public static LocationData getGoldReturnLocation() {
-        if (RANDOM.nextBoolean()) {
+    public static LocationData getGoldReturnLocation(final Random random) {
+        if (random.nextBoolean()) {
             return RETURN_LOCATION_1;
         }
         return RETURN_LOCATION_2;
@@ -130,10 +132,12 @@ public final class MapUtils {
     /**
      * Get a random direction
      * 
+     * @param random
+     *            the random number generator to choose with
      * @return the random direction
      */
-    public static Direction getRandomDirection() {
-        switch (RANDOM.nextInt(Direction.values().length)) {
+    public static Direction getRandomDirection(final Random random) {
+        switch (random.nextInt(Direction.values().length)) {
             case 0:
                 return Direction.NORTH;
             case 1:
@@ -164,11 +168,6 @@ public final class MapUtils {
         return false;
     }
 
-    /**
-     * Shared PRNG used for random operations in navigator
-     */
-    private static final Random RANDOM = new Random();
-
     /**
      * The first possible gold return location
      */
@@ -1,11 +1,12 @@
 package edu.ksu.cis.macr.simulator.capabilities.map;
 
-import java.util.Collection;
 import java.util.LinkedList;
 import java.util.Queue;
-import java.util.TreeSet;
 
 import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.metrics.Histogram;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
+import edu.ksu.cis.macr.simulator.metrics.Timer;
 
 /**
  * Collection of navigation utilities and search functions
@@ -14,115 +15,282 @@ import edu.ksu.cis.macr.simulator.capabilities.LocationData;
  */
 public class Navigator {
     /**
-     * Internal search node representation for findPath()
+     * The way a Navigator searches for paths
      * 
      * @author Kyle Hill
+     * 
      */
-    private static final class Node implements Comparable<Node> {
+    public static enum Strategy {
+        /**
+         * A* over every tile
+         */
+        A_STAR,
+
         /**
-         * Node constructor
-         * 
-         * @param aX
-         *            x-coordinate
-         * @param aY
-         *            y-coordinate
+         * Jump point search, which only stops at tiles where the shortest
+         * paths may turn. Since every step costs the same, many paths are
+         * equally short; jump point search only considers one of them between
+         * each pair of tiles, and so examines far fewer tiles on open ground.
+         * Paths are as short as those found by A*, though they may take a
+         * different route.
          */
-        public Node(final int aX, final int aY) {
-            x = aX;
-            y = aY;
+        JUMP_POINT
+    }
+
+    /**
+     * Navigator Constructor, using A*
+     */
+    public Navigator() {
+        this(Strategy.A_STAR);
+    }
+
+    /**
+     * Navigator Constructor
+     * 
+     * @param s
+     *            the way to search for paths
+     */
+    public Navigator(final Strategy s) {
+        // The per-node state is sized from the first map searched
+        strategy = s;
+    }
+
+    /**
+     * A simple implementation of the A* path finding algorithm.
+     * 
+     * @param map
+     *            the map to search within
+     * @param from
+     *            the location to start from
+     * @param to
+     *            the location to get to
+     * @return the path to follow to get from from to to, null if no path can be
+     *         made, empty if at the destination already
+     */
+    public final Queue<LocationData> findPath(final Map map, final LocationData from, final LocationData to) {
+        if (!Metrics.ENABLED) {
+            return search(map, from, to);
         }
+        final long start = System.nanoTime();
+        final Queue<LocationData> path = search(map, from, to);
+        FIND_PATH_TIME.stop(start);
+        FIND_PATH_EXPANDED.record(expanded);
+        return path;
+    }
+
+    /**
+     * Get the number of nodes expanded by the last call to
+     * {@link #findPath(Map, LocationData, LocationData)}
+     * 
+     * @return the number of nodes expanded
+     */
+    public final int getExpandedNodes() {
+        return expanded;
+    }
+
+    /**
+     * Get the way this navigator searches for paths
+     * 
+     * @return the strategy
+     */
+    public final Strategy getStrategy() {
+        return strategy;
+    }
 
-        @Override
-        public int compareTo(final Node other) {
-            // Two Nodes are equal if and only if they have the same x and y
-            // coordinates
-            if (this == other || ((x == other.x) && (y == other.y))) {
-                return 0;
+    /**
+     * Find a path with jump point search, for movement in four directions.
+     * From each tile taken off the open list, the search jumps along straight
+     * lines in every direction but backwards. Each line is followed until it
+     * reaches the goal or a tile where a shortest path may have to turn, and
+     * only those tiles are added to the open list. Vertical jumps also look
+     * left and right from every tile they pass, so that horizontal jumps only
+     * need to look for turns.
+     * 
+     * @param map
+     *            the map to search within
+     * @param source
+     *            the index of the location to start from
+     * @param goal
+     *            the index of the location to get to
+     * @return the path to follow to get from source to goal, null if no path
+     *         can be made
+     */
+    private final Queue<LocationData> findJumpPointPath(final Map map, final int source, final int goal) {
+        final int goalX = map.xOf(goal);
+        final int goalY = map.yOf(goal);
+
+        // Jumping reads the passability of many tiles, so read it from a
+        // single bitset
+        blocked = map.getBlockedBits();
+
+        visit(source, 0, source, MapUtils.getManhattanDistance(map.xOf(source), map.yOf(source), goalX, goalY));
+
+        boolean found = false;
+        while (!open.isEmpty()) {
+            final int cur = open.poll();
+            if (cur == goal) {
+                found = true;
+                break;
             }
+            closed.set(cur, generation);
+            expanded++;
+
+            // Carry on in every direction but the one we came from
+            final int x = map.xOf(cur);
+            final int y = map.yOf(cur);
+            final int dX = Integer.signum(x - map.xOf(parent.get(cur)));
+            final int dY = Integer.signum(y - map.yOf(parent.get(cur)));
+            for (int d = 0; d < JUMP_DIRECTIONS.length; d += 2) {
+                final int jX = JUMP_DIRECTIONS[d];
+                final int jY = JUMP_DIRECTIONS[d + 1];
+                if ((jX == -dX) && (jY == -dY)) {
+                    // Never turn back
+                    continue;
+                }
 
-            // Compare two nodes based on heuristic + cost, then position
-            int f = (heuristic + cost) - (other.heuristic + other.cost);
-            if (f == 0) {
-                f = x - other.x;
-                if (f == 0) {
-                    f = y - other.y;
+                final int next = (jX != 0) ? jumpHorizontally(map, x, y, jX, goal) : jumpVertically(map, x, y, jY, goal);
+                if ((next < 0) || (closed.get(next) == generation)) {
+                    continue;
+                }
+                final int nextCost = cost.get(cur) + (MapUtils.getManhattanDistance(x, y, map.xOf(next), map.yOf(next)) * Tile.getCost());
+                if ((seen.get(next) != generation) || (nextCost < cost.get(next))) {
+                    visit(next, nextCost, cur, MapUtils.getManhattanDistance(map.xOf(next), map.yOf(next), goalX, goalY));
                 }
             }
+        }
 
-            assert f != 0;
-            return f;
+        if (!found) {
+            return null;
         }
 
-        @Override
-        public boolean equals(final Object o) {
-            if (!(o instanceof Node)) {
-                return false;
+        // Jump points lie in straight lines from each other, so fill in the
+        // tiles in between
+        final LinkedList<LocationData> path = new LinkedList<LocationData>();
+        for (int i = goal; i != source; i = parent.get(i)) {
+            final int from = parent.get(i);
+            final int step = (map.xOf(i) != map.xOf(from)) ? (Integer.signum(i - from) * maxY) : Integer.signum(i - from);
+            for (int t = i; t != from; t -= step) {
+                path.addFirst(new LocationData(map.xOf(t), map.yOf(t)));
             }
-
-            // We guarantee that we are compatible with equals by implementing
-            // equals as a call to compareTo
-            return compareTo((Node) o) == 0;
         }
+        return path;
+    }
 
-        @Override
-        public int hashCode() {
-            int result = 17;
-            result = (37 * result) + x;
-            result = (37 * result) + y;
+    /**
+     * Can an agent move into the given tile? Tiles outside the world's
+     * boundaries cannot be moved into.
+     * 
+     * @param map
+     *            the map being searched
+     * @param x
+     *            the x-coordinate
+     * @param y
+     *            the y-coordinate
+     * @return true if the tile is inside the world's boundaries and passable
+     */
+    private final boolean isOpen(final Map map, final int x, final int y) {
+        return (x > 0) && (x < maxX) && (y > 0) && (y < maxY) && !blocked.get((x * maxY) + y);
+    }
 
-            return result;
+    /**
+     * Move horizontally from the given tile until reaching a jump point: the
+     * goal, or a tile with an opening above or below that was closed off
+     * behind it
+     * 
+     * @param map
+     *            the map being searched
+     * @param fromX
+     *            the x-coordinate to start from
+     * @param y
+     *            the y-coordinate
+     * @param dX
+     *            the direction to move in, 1 or -1
+     * @param goal
+     *            the goal's index
+     * @return the jump point's index, -1 if the way is blocked first
+     */
+    private final int jumpHorizontally(final Map map, final int fromX, final int y, final int dX, final int goal) {
+        int x = fromX;
+        while (true) {
+            x += dX;
+            if (!isOpen(map, x, y)) {
+                return -1;
+            }
+            final int i = map.indexOf(x, y);
+            if ((i == goal) || (isOpen(map, x, y - 1) && !isOpen(map, x - dX, y - 1)) || (isOpen(map, x, y + 1) && !isOpen(map, x - dX, y + 1))) {
+                return i;
+            }
         }
+    }
 
-        /**
-         * Resets this node back to its default properties
-         */
-        public void reset() {
-            cost = Tile.COST;
-            heuristic = 0;
-            parent = null;
+    /**
+     * Move vertically from the given tile until reaching a jump point: the
+     * goal, a tile with an opening to the left or right that was closed off
+     * behind it, or a tile from which a horizontal jump finds a jump point
+     * 
+     * @param map
+     *            the map being searched
+     * @param x
+     *            the x-coordinate
+     * @param fromY
+     *            the y-coordinate to start from
+     * @param dY
+     *            the direction to move in, 1 or -1
+     * @param goal
+     *            the goal's index
+     * @return the jump point's index, -1 if the way is blocked first
+     */
+    private final int jumpVertically(final Map map, final int x, final int fromY, final int dY, final int goal) {
+        int y = fromY;
+        while (true) {
+            y += dY;
+            if (!isOpen(map, x, y)) {
+                return -1;
+            }
+            final int i = map.indexOf(x, y);
+            if ((i == goal) || (isOpen(map, x - 1, y) && !isOpen(map, x - 1, y - dY)) || (isOpen(map, x + 1, y) && !isOpen(map, x + 1, y - dY))) {
+                return i;
+            }
+            if ((jumpHorizontally(map, x, y, 1, goal) >= 0) || (jumpHorizontally(map, x, y, -1, goal) >= 0)) {
+                return i;
+            }
         }
-
-        /**
-         * The cost of traveling across this node
-         */
-        int cost = Tile.COST;
-
-        /**
-         * The guess as to how expensive getting to this node will be
-         */
-        int heuristic = 0;
-
-        /**
-         * The parent of this node
-         */
-        Node parent = null;
-
-        /**
-         * This node's x position
-         */
-        final int x;
-
-        /**
-         * This node's y position
-         */
-        final int y;
     }
 
     /**
-     * Navigator Constructor
+     * Start a new search, invalidating every node's per-search state
+     * 
+     * @param map
+     *            the map to be searched
      */
-    public Navigator() {
-        nodes = new Node[Map.MAX_X][Map.MAX_Y];
+    private final void nextGeneration(final Map map) {
+        if ((map.getMaxX() != maxX) || (map.getMaxY() != maxY)) {
+            // Nodes are numbered differently on a map of a different size
+            maxX = map.getMaxX();
+            maxY = map.getMaxY();
+            neighborOffsets = neighborOffsets(map);
+
+            final int size = maxX * maxY;
+            cost = new TileInts(size, 0);
+            parent = new TileInts(size, 0);
+            seen = new TileInts(size, 0);
+            closed = new TileInts(size, 0);
+            open = new IndexedHeap(size);
+            generation = 0;
+        }
 
-        for (int x = 0; x < Map.MAX_X; x++) {
-            for (int y = 0; y < Map.MAX_Y; y++) {
-                nodes[x][y] = new Node(x, y);
-            }
+        generation++;
+        if (generation == 0) {
+            // The stamps have wrapped around, so old stamps may look current
+            seen.clear();
+            closed.clear();
+            generation = 1;
         }
+        open.clear();
     }
 
     /**
-     * A simple implementation of the A* path finding algorithm.
+     * Search for a path, as {@link #findPath(Map, LocationData, LocationData)}
      * 
      * @param map
      *            the map to search within
@@ -133,80 +301,76 @@ public class Navigator {
      * @return the path to follow to get from from to to, null if no path can be
      *         made, empty if at the destination already
      */
-    public final Queue<LocationData> findPath(final Map map, final LocationData from, final LocationData to) {
+    private final Queue<LocationData> search(final Map map, final LocationData from, final LocationData to) {
+        final int source = map.indexOf(from.getX(), from.getY());
+        final int goal = map.indexOf(to.getX(), to.getY());
+        expanded = 0;
+
         // If we know we can't reach our goal, exit immediately
-        final Tile t = map.getTile(to);
-        if (t.hasObstruction() || t.isDangerous()) {
+        if (!map.isPassable(goal)) {
             return null;
         }
 
-        final Node source = nodes[from.getX()][from.getY()];
-        Node goal = nodes[to.getX()][to.getY()];
-
         // If we're at our goal already, no need to calculate a path
         if (source == goal) {
             return new LinkedList<LocationData>();
         }
 
-        // Reset all nodes back to their default values
-        resetNodes();
+        // Start a new search. Nodes stamped with an older generation are
+        // treated as unseen, so nothing needs to be reset.
+        nextGeneration(map);
+
+        if (strategy == Strategy.JUMP_POINT) {
+            return findJumpPointPath(map, source, goal);
+        }
 
-        final TreeSet<Node> open = new TreeSet<Node>();
-        final TreeSet<Node> closed = new TreeSet<Node>();
+        final int goalX = to.getX();
+        final int goalY = to.getY();
 
-        open.add(source);
+        visit(source, Tile.COST, source, MapUtils.getManhattanDistance(from.getX(), from.getY(), goalX, goalY));
 
         // While we haven't explored all possible paths to the goal
+        boolean found = false;
         while (!open.isEmpty()) {
             // Get the first node in our open list. This is most likely to be
             // the next step in the path.
-            final Node cur = open.pollFirst();
+            final int cur = open.poll();
             if (cur == goal) {
                 // We've found our goal, we're done
+                found = true;
                 break;
             }
 
             // Add current node to the closed list
-            closed.add(cur);
+            closed.set(cur, generation);
+            expanded++;
 
             // Search all of our immediate neighbors to find the next best step
-            final Collection<Tile> neighbors = map.getNeighbors(cur.x, cur.y, 1, Map.RangeType.MANHATTAN);
-            for (final Tile tile : neighbors) {
-                if (!tile.hasObstruction() && !tile.isDangerous()) {
-                    final Node neighbor = nodes[tile.getLocation().getX()][tile.getLocation().getY()];
-
-                    // If we find the cost to get to this neighbor is lower than
-                    // we thought it was previously, make sure it gets
-                    // re-evaluated in case we've found a better path
-                    final int nextCost = cur.cost + Tile.getCost();
-                    if (nextCost < neighbor.cost) {
-                        open.remove(neighbor);
-                        closed.remove(neighbor);
-                    }
-
-                    // If we haven't seen this neighbor yet, update its
-                    // properties and add it to the open list
-                    if (!open.contains(neighbor) && !closed.contains(neighbor)) {
-                        neighbor.cost = nextCost;
-                        neighbor.heuristic = MapUtils.getManhattanDistance(tile.getLocation().getX(), tile.getLocation().getY(), to.getX(), to.getY());
-                        neighbor.parent = cur;
-                        open.add(neighbor);
-                    }
+            final int nextCost = cost.get(cur) + Tile.getCost();
+            for (final int offset : neighborOffsets) {
+                final int neighbor = cur + offset;
+                if (!map.contains(neighbor) || !map.isPassable(neighbor) || (closed.get(neighbor) == generation)) {
+                    continue;
+                }
+
+                // If we haven't seen this neighbor yet, or we've found a
+                // cheaper way to it, update its properties and (re)position it
+                // in the open list
+                if ((seen.get(neighbor) != generation) || (nextCost < cost.get(neighbor))) {
+                    visit(neighbor, nextCost, cur, MapUtils.getManhattanDistance(map.xOf(neighbor), map.yOf(neighbor), goalX, goalY));
                 }
             }
         }
 
-        // If we didn't make it to our destination, return an empty path
-        if (goal.parent == null) {
+        // If we didn't make it to our destination, there is no path
+        if (!found) {
             return null;
         }
 
         // Construct path to goal by following parent pointers back to the start
         final LinkedList<LocationData> path = new LinkedList<LocationData>();
-        while (goal != source) {
-            final LocationData loc = new LocationData(goal.x, goal.y);
-            path.addFirst(loc);
-            goal = goal.parent;
+        for (int i = goal; i != source; i = parent.get(i)) {
+            path.addFirst(new LocationData(map.xOf(i), map.yOf(i)));
         }
 
         assert path.getLast().equals(to);
@@ -214,18 +378,113 @@ public class Navigator {
     }
 
     /**
-     * Resets all nodes in this Navigator back to their default
+     * Add a node to the open list, or update it if we've found a cheaper way to
+     * it. Nodes are ordered by cost + heuristic, then by position. Since
+     * indexes are laid out by x and then y, breaking ties by index breaks them
+     * by x and then by y.
+     * 
+     * @param node
+     *            the node
+     * @param c
+     *            the cost of getting to the node
+     * @param from
+     *            the node we got here from
+     * @param heuristic
+     *            the guess as to how expensive getting to the goal will be
+     */
+    private final void visit(final int node, final int c, final int from, final int heuristic) {
+        seen.set(node, generation);
+        cost.set(node, c);
+        parent.set(node, from);
+        open.put(node, ((long) (c + heuristic) << 32) | node);
+    }
+
+    /**
+     * Get the index offsets of a node's orthogonal neighbors in the given map,
+     * in the order they are examined
+     * 
+     * @param map
+     *            the map
+     * @return the index offsets
      */
-    private final void resetNodes() {
-        for (int x = 0; x < Map.MAX_X; x++) {
-            for (int y = 0; y < Map.MAX_Y; y++) {
-                nodes[x][y].reset();
-            }
-        }
+    static int[] neighborOffsets(final Map map) {
+        return new int[] { -map.getMaxY(), -1, 1, map.getMaxY() };
     }
 
     /**
-     * The set of nodes that make up our map
+     * The number of nodes each search expands
+     */
+    private static final Histogram FIND_PATH_EXPANDED = Metrics.histogram("navigator.findPath.expanded");
+
+    /**
+     * The time each search takes
+     */
+    private static final Timer FIND_PATH_TIME = Metrics.timer("navigator.findPath.time");
+
+    /**
+     * The directions jump point search moves in, as x, y pairs
+     */
+    private static final int[] JUMP_DIRECTIONS = { -1, 0, 0, -1, 0, 1, 1, 0 };
+
+    /**
+     * One bit per tile, set if the tile is not passable, for the current jump
+     * point search
+     */
+    private TileBits blocked = null;
+
+    /**
+     * The generation each node was closed in
+     */
+    private TileInts closed = null;
+
+    /**
+     * The cost of getting to each node
+     */
+    private TileInts cost = null;
+
+    /**
+     * The number of nodes expanded by the last search
+     */
+    private int expanded = 0;
+
+    /**
+     * The current search's generation
+     */
+    private int generation = 0;
+
+    /**
+     * The maximum size for the X coordinate of the map last searched
+     */
+    private int maxX = 0;
+
+    /**
+     * The maximum size for the Y coordinate of the map last searched
+     */
+    private int maxY = 0;
+
+    /**
+     * Index offsets of a node's orthogonal neighbors, in the order they are
+     * examined
+     */
+    private int[] neighborOffsets = null;
+
+    /**
+     * The open list
+     */
+    private IndexedHeap open = null;
+
+    /**
+     * The node each node was reached from
+     */
+    private TileInts parent = null;
+
+    /**
+     * The generation each node was last seen in
+     */
+    private TileInts seen = null;
+
+    /**
+     * The way this navigator searches for paths
      */
-    private final Node[][] nodes;
+    private final Strategy strategy;
 }
@@ -0,0 +1,127 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The neighbors of the tiles of a map of one size, for a single table of
+ * neighbor offsets. Neighbors are given as offsets from the tile's own index,
+ * in the order of the neighbor offsets. Neighbors outside the world's
+ * boundaries are left out, so walking a list needs no bounds checks.
+ * <p>
+ * Which neighbors are left out only depends on how close a tile is to each
+ * edge of the world, up to the largest offset, so tiles share lists. Every
+ * tile away from the edges shares the same list, and a very large map costs no
+ * more than a small one.
+ * 
+ * @author Kyle Hill
+ */
+final class NeighborTable {
+    /**
+     * Constructs a new NeighborTable
+     * 
+     * @param mX
+     *            the maximum size for the world's X coordinate
+     * @param mY
+     *            the maximum size for the world's Y coordinate
+     * @param o
+     *            the offsets to the neighbors, as x, y pairs
+     */
+    NeighborTable(final int mX, final int mY, final int[] o) {
+        maxX = mX;
+        maxY = mY;
+        offsets = o;
+
+        int r = 0;
+        for (final int offset : o) {
+            r = Math.max(r, Math.abs(offset));
+        }
+        reach = r;
+
+        final int sides = reach + 2;
+        lists = new AtomicReferenceArray<int[]>(sides * sides * sides * sides);
+    }
+
+    /**
+     * Get the neighbors of the given tile
+     * 
+     * @param i
+     *            the tile index
+     * @return the offsets from the tile's index to each of its neighbors,
+     *         which must not be modified
+     */
+    int[] of(final int i) {
+        final int x = i / maxY;
+        final int y = i % maxY;
+
+        // The number of columns and rows inside the boundaries on each side
+        // of the tile, -1 if the tile itself is outside them
+        final int left = Math.min(x - 1, reach);
+        final int right = Math.min(maxX - 1 - x, reach);
+        final int below = Math.min(y - 1, reach);
+        final int above = Math.min(maxY - 1 - y, reach);
+
+        final int sides = reach + 2;
+        final int k = (((((((left + 1) * sides) + right + 1) * sides) + below + 1) * sides) + above) + 1;
+        int[] list = lists.get(k);
+        if (list == null) {
+            // Two threads may both build the same list, but either copy will
+            // do
+            list = buildList(left, right, below, above);
+            lists.set(k, list);
+        }
+        return list;
+    }
+
+    /**
+     * Build the list of neighbors for tiles with the given room on each side
+     * 
+     * @param left
+     *            the number of columns inside the boundaries to the left
+     * @param right
+     *            the number of columns inside the boundaries to the right
+     * @param below
+     *            the number of rows inside the boundaries below
+     * @param above
+     *            the number of rows inside the boundaries above
+     * @return the offsets from a tile's index to each of its neighbors
+     */
+    private int[] buildList(final int left, final int right, final int below, final int above) {
+        final int[] all = new int[offsets.length / 2];
+        int n = 0;
+        for (int o = 0; o < offsets.length; o += 2) {
+            final int dX = offsets[o];
+            final int dY = offsets[o + 1];
+            if ((-dX <= left) && (dX <= right) && (-dY <= below) && (dY <= above)) {
+                all[n++] = (dX * maxY) + dY;
+            }
+        }
+        return Arrays.copyOf(all, n);
+    }
+
+    /**
+     * The neighbor lists, indexed by the room on each side of a tile, built
+     * the first time they are needed
+     */
+    private final AtomicReferenceArray<int[]> lists;
+
+    /**
+     * The maximum size for the world's X coordinate
+     */
+    private final int maxX;
+
+    /**
+     * The maximum size for the world's Y coordinate
+     */
+    private final int maxY;
+
+    /**
+     * The offsets to the neighbors, as x, y pairs
+     */
+    private final int[] offsets;
+
+    /**
+     * The largest x or y offset to any neighbor
+     */
+    private final int reach;
+}
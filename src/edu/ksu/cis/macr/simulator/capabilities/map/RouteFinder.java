@@ -0,0 +1,30 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+
+/**
+ * Finds the way to a single destination one step at a time, keeping whatever
+ * it has worked out between steps
+ * 
+ * @author Kyle Hill
+ */
+public interface RouteFinder {
+    /**
+     * Get the location this route finder finds the way to
+     * 
+     * @return the destination
+     */
+    LocationData getDestination();
+
+    /**
+     * Get the next step on a path from the given location to the destination
+     * 
+     * @param map
+     *            the map to search within
+     * @param from
+     *            the location to start from
+     * @return the next location to move to, null if no path can be made or if
+     *         at the destination already
+     */
+    LocationData getNextStep(Map map, LocationData from);
+}
@@ -5,7 +5,9 @@ import java.io.Serializable;
 import edu.ksu.cis.macr.simulator.capabilities.LocationData;
 
 /**
- * Represents the state of a tile in Wumpi World
+ * Represents the state of a tile in Wumpi World. A tile is a lightweight view
+ * over the flag storage of the {@link Map} it belongs to. Two tiles are equal
+ * when they view the same tile of the same Map.
  * 
  * @author Kyle Hill
  */
@@ -20,16 +22,30 @@ public class Tile implements Serializable {
      */
     public Tile(final Map m, final LocationData loc) {
         map = m;
+        index = m.indexOf(loc.getX(), loc.getY());
         location = loc;
     }
 
+    /**
+     * Initializes a tile in the given map at the given index
+     * 
+     * @param m
+     *            the map
+     * @param i
+     *            the tile index
+     */
+    Tile(final Map m, final int i) {
+        map = m;
+        index = i;
+    }
+
     @Override
     public final boolean equals(final Object o) {
         if (!(o instanceof Tile)) {
             return false;
         }
         final Tile other = (Tile) o;
-        return location.equals(other.location);
+        return (map == other.map) && (index == other.index);
     }
 
     /**
@@ -38,6 +54,9 @@ public class Tile implements Serializable {
      * @return the tile's location
      */
     public final LocationData getLocation() {
+        if (location == null) {
+            location = new LocationData(map.xOf(index), map.yOf(index));
+        }
         return location;
     }
 
@@ -47,9 +66,7 @@ public class Tile implements Serializable {
      * @return true if this tile has a breeze, false otherwise
      */
     public final boolean hasBreeze() {
-        // Tiles that we have visited or have an obstruction cannot contain a
-        // breeze
-        return hasBreeze && !hasObstruction() && !hasVisited();
+        return map.hasBreeze(index);
     }
 
     /**
@@ -58,13 +75,12 @@ public class Tile implements Serializable {
      * @return true if this tile has glitter, false otherwise
      */
     public final boolean hasGlitter() {
-        // Tiles that contain an obstruction cannot contain gold
-        return hasGlitter && !hasObstruction();
+        return map.hasGlitter(index);
     }
 
     @Override
     public int hashCode() {
-        return location.hashCode();
+        return index;
     }
 
     /**
@@ -74,8 +90,7 @@ public class Tile implements Serializable {
      * @return true if this tile has an obstruction, false otherwise
      */
     public final boolean hasObstruction() {
-        // Tiles that we have visited cannot contain an obstruction
-        return hasObstruction && !hasVisited();
+        return map.hasObstruction(index);
     }
 
     /**
@@ -84,7 +99,7 @@ public class Tile implements Serializable {
      * @return true if this tile has been searched, false otherwise
      */
     public final boolean hasSearched() {
-        return hasSearched;
+        return map.hasSearched(index);
     }
 
     /**
@@ -93,9 +108,7 @@ public class Tile implements Serializable {
      * @return true if this tile has a smell, false otherwise
      */
     public final boolean hasSmell() {
-        // Tiles that contain obstructions or that we have visited cannot
-        // contain a smell
-        return hasSmell && !hasObstruction() && !hasVisited();
+        return map.hasSmell(index);
     }
 
     /**
@@ -104,7 +117,7 @@ public class Tile implements Serializable {
      * @return true if it has been visited by an agent, false otherwise
      */
     public final boolean hasVisited() {
-        return hasVisited;
+        return map.hasVisited(index);
     }
 
     /**
@@ -113,7 +126,7 @@ public class Tile implements Serializable {
      * @return true if this tile has been "claimed" by an agent, false otherwise
      */
     public final boolean isClaimed() {
-        return isClaimed && (hasGlitter() || isWumpi());
+        return map.isClaimed(index);
     }
 
     /**
@@ -123,9 +136,7 @@ public class Tile implements Serializable {
      *         otherwise
      */
     public final boolean isDangerous() {
-        // We consider a tile dangerous if it could possibly contain a pit or
-        // Wumpi.
-        return hasSmell() || hasBreeze();
+        return map.isDangerous(index);
     }
 
     /**
@@ -134,20 +145,7 @@ public class Tile implements Serializable {
      * @return true if this tile is a wall, false otherwise
      */
     public final boolean isWall() {
-        // We know a tile is a wall if we've searched it or visited any of its
-        // direct neighbors and it has an obstruction
-        if (hasObstruction()) {
-            if (hasSearched()) {
-                return true;
-            }
-
-            for (final Tile tile : map.getNeighbors(getLocation(), Map.SMELL_RANGE - 1, Map.SMELL_RANGE_TYPE)) {
-                if (tile.hasVisited()) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return map.isWall(index);
     }
 
     /**
@@ -157,40 +155,7 @@ public class Tile implements Serializable {
      * @return true if we think this tile is a Wumpi, false otherwise
      */
     public final boolean isWumpi() {
-        // This tile can't have a Wumpi if it doesn't have an obstruction, or if
-        // we already know that this location is a wall.
-        if (!hasObstruction() || isWall()) {
-            return false;
-        }
-
-        // See if there are any other obstructions adjacent to this tile. If
-        // it's surrounded by too many, it's probably a wall
-        final int WALL_THRESHOLD = 2;
-
-        int obsCount = 0;
-        for (final Tile tile : map.getNeighbors(getLocation(), 1, Map.RangeType.MANHATTAN)) {
-            if (tile.hasObstruction()) {
-                obsCount++;
-                if (obsCount >= WALL_THRESHOLD) {
-                    return false;
-                }
-            }
-        }
-
-        // See if this tile is surrounded by enough smelly tiles to have a good
-        // chance of being a Wumpi
-        final int WUMPI_THRESHOLD = 4;
-
-        int smellCount = 0;
-        for (final Tile tile : map.getNeighbors(getLocation(), Map.SMELL_RANGE - 1, Map.SMELL_RANGE_TYPE)) {
-            if (tile.hasSmell()) {
-                smellCount++;
-                if (smellCount >= WUMPI_THRESHOLD) {
-                    break;
-                }
-            }
-        }
-        return smellCount >= WUMPI_THRESHOLD;
+        return map.isWumpi(index);
     }
 
     /**
@@ -201,36 +166,8 @@ public class Tile implements Serializable {
      */
     public final void mergeFrom(final Tile other) {
         // Only attempt to merge tiles at the same location
-        if (location.equals(other.location)) {
-            if (!hasSearched() && other.hasSearched()) {
-                // Trust the other tile since it has been searched and this
-                // one has not
-                hasBreeze = other.hasBreeze;
-                hasGlitter = other.hasGlitter;
-                hasObstruction = other.hasObstruction;
-                hasSearched = other.hasSearched;
-                hasSmell = other.hasSmell;
-                isClaimed = other.isClaimed;
-
-                // Don't let someone else tell us that we have not visited a
-                // place if we already have
-                setVisited(other.hasVisited());
-            } else {
-                // Use public setters to sanitize the data from the other tile.
-                // Only allow false positives, not false negatives.
-                if (other.hasVisited()) {
-                    setVisited(true);
-                }
-                if (other.hasSearched()) {
-                    setSearched(true);
-                }
-                if (other.hasObstruction()) {
-                    setObstruction(true);
-                }
-                if (other.isClaimed()) {
-                    setClaimed();
-                }
-            }
+        if (index == other.index) {
+            map.mergeFrom(index, other.map, other.index);
         } else {
             assert false;
         }
@@ -245,14 +182,7 @@ public class Tile implements Serializable {
      * @return if this tile's state has changed
      */
     public final boolean setBreeze(final boolean b) {
-        final boolean old = hasBreeze;
-
-        // Don't allow tiles with obstructions, tiles we've searched or visited
-        // to have the breeze flag set to true again
-        if (!hasObstruction() && !(b && hasSearched()) && !(b && hasVisited())) {
-            hasBreeze = b;
-        }
-        return old != hasBreeze;
+        return map.setBreeze(index, b);
     }
 
     /**
@@ -260,7 +190,7 @@ public class Tile implements Serializable {
      * against it
      */
     public final void setClaimed() {
-        isClaimed = (hasGlitter() || isWumpi());
+        map.setClaimed(index);
     }
 
     /**
@@ -272,14 +202,7 @@ public class Tile implements Serializable {
      * @return if this tile's state has changed
      */
     public final boolean setGlitter(final boolean g) {
-        final boolean old = hasGlitter;
-
-        // Don't allow tiles with obstructions, or tiles that we've searched to
-        // have the glitter flag set to true again
-        if (!hasObstruction() && !(g && hasSearched())) {
-            hasGlitter = g;
-        }
-        return old != hasGlitter;
+        return map.setGlitter(index, g);
     }
 
     /**
@@ -291,14 +214,7 @@ public class Tile implements Serializable {
      * @return if this tile's state has changed
      */
     public final boolean setObstruction(final boolean o) {
-        final boolean old = hasObstruction;
-
-        // Don't allow tiles that we've searched or visited to have the
-        // obstruction flag set to true again
-        if (!(o && hasSearched()) && !(o && hasVisited())) {
-            hasObstruction = o;
-        }
-        return old != hasObstruction;
+        return map.setObstruction(index, o);
     }
 
     /**
@@ -309,9 +225,7 @@ public class Tile implements Serializable {
      * @return if this tile's state has changed
      */
     public final boolean setSearched(final boolean s) {
-        final boolean old = hasSearched;
-        hasSearched = s;
-        return old != hasSearched;
+        return map.setSearched(index, s);
     }
 
     /**
@@ -323,20 +237,7 @@ public class Tile implements Serializable {
      * @return if this tile's state has changed
      */
     public final boolean setSmell(final boolean s) {
-        final boolean old = hasSmell;
-
-        // Don't allow tiles with obstructions, tiles we've searched or visited
-        // to have the smell flag set to true again
-        if (!hasObstruction() && !(s && hasSearched()) && !(s && hasVisited())) {
-            hasSmell = s;
-
-            // When clearing the smell flag, make sure to mark this tile as
-            // unsearched so agents try to check it again
-            if (old && !hasSmell) {
-                setSearched(false);
-            }
-        }
-        return old != hasSmell;
+        return map.setSmell(index, s);
     }
 
     /**
@@ -347,13 +248,28 @@ public class Tile implements Serializable {
      * @return if this tile's state has changed
      */
     public final boolean setVisited(final boolean v) {
-        final boolean old = hasVisited;
+        return map.setVisited(index, v);
+    }
 
-        // We can't ever "unvisit" a place
-        if (!hasVisited && v) {
-            hasVisited = v;
-        }
-        return old != hasVisited;
+    /**
+     * Get this tile's index within its map
+     * 
+     * @return the tile index
+     */
+    final int getIndex() {
+        return index;
+    }
+
+    /**
+     * Move this tile to the given index. Used to visit many tiles with a single
+     * Tile object.
+     * 
+     * @param i
+     *            the new tile index
+     */
+    final void moveTo(final int i) {
+        index = i;
+        location = null;
     }
 
     /**
@@ -373,47 +289,17 @@ public class Tile implements Serializable {
     /**
      * The serialVersionUID
      */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * This tile's breeze flag
-     */
-    private boolean hasBreeze = false;
-
-    /**
-     * This tile's glitter flag
-     */
-    private boolean hasGlitter = false;
-
-    /**
-     * This tile's obstruction flag
-     */
-    private boolean hasObstruction = false;
-
-    /**
-     * This tile's searched flag
-     */
-    private boolean hasSearched = false;
-
-    /**
-     * This tile's smell flag
-     */
-    private boolean hasSmell = false;
-
-    /**
-     * This tile's visited flag
-     */
-    private boolean hasVisited = false;
+    private static final long serialVersionUID = 2L;
 
     /**
-     * true if this tile has been "claimed" by us, or another agent
+     * This tile's index within its map
      */
-    private boolean isClaimed = false;
+    private int index;
 
     /**
-     * This tile's location
+     * This tile's location, created on demand
      */
-    private final LocationData location;
+    private LocationData location;
 
     /**
      * The map this tile belongs to
@@ -0,0 +1,206 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.io.Serializable;
+
+/**
+ * One bit per tile index, stored as 64-bit words grouped into pages. A page is
+ * only allocated once one of its bits is set, so a large map that has only
+ * been explored in places takes up room only for those places. Missing pages
+ * read as all zero.
+ * 
+ * @author Kyle Hill
+ */
+final class TileBits implements Serializable {
+    /**
+     * Constructs a new, empty TileBits
+     * 
+     * @param w
+     *            the number of words needed to hold every tile index
+     */
+    TileBits(final int w) {
+        words = w;
+        pages = new long[(w + PAGE_WORDS - 1) >>> PAGE_SHIFT][];
+    }
+
+    /**
+     * TileBits copy constructor
+     * 
+     * @param other
+     *            the bits to copy
+     */
+    TileBits(final TileBits other) {
+        words = other.words;
+        pages = new long[other.pages.length][];
+        for (int p = 0; p < pages.length; p++) {
+            if (other.pages[p] != null) {
+                pages[p] = other.pages[p].clone();
+            }
+        }
+    }
+
+    /**
+     * Clear every bit, releasing every page
+     */
+    void clear() {
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = null;
+        }
+    }
+
+    /**
+     * Replace every bit with those of the given TileBits
+     * 
+     * @param other
+     *            the bits to copy, of the same size as these
+     */
+    void copyFrom(final TileBits other) {
+        assert other.words == words;
+
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = (other.pages[p] == null) ? null : other.pages[p].clone();
+        }
+    }
+
+    /**
+     * Read a single bit
+     * 
+     * @param i
+     *            the tile index
+     * @return the value of the bit
+     */
+    boolean get(final int i) {
+        final long[] page = pages[i >>> (PAGE_SHIFT + 6)];
+        return (page != null) && ((page[(i >>> 6) & (PAGE_WORDS - 1)] & (1L << i)) != 0);
+    }
+
+    /**
+     * Is the given page allocated? Words on pages that are not allocated are
+     * all zero.
+     * 
+     * @param p
+     *            the page number
+     * @return true if the page is allocated, false otherwise
+     */
+    boolean hasPage(final int p) {
+        return pages[p] != null;
+    }
+
+    /**
+     * Is every bit clear?
+     * 
+     * @return true if no bits are set, false otherwise
+     */
+    boolean isEmpty() {
+        for (final long[] page : pages) {
+            if (page != null) {
+                for (final long word : page) {
+                    if (word != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of pages
+     * 
+     * @return the number of pages
+     */
+    int pageCount() {
+        return pages.length;
+    }
+
+    /**
+     * Write a single bit
+     * 
+     * @param i
+     *            the tile index
+     * @param value
+     *            the new value of the bit
+     * @return true if the bit changed, false otherwise
+     */
+    boolean set(final int i, final boolean value) {
+        if (get(i) == value) {
+            return false;
+        }
+        page(i >>> (PAGE_SHIFT + 6))[(i >>> 6) & (PAGE_WORDS - 1)] ^= 1L << i;
+        return true;
+    }
+
+    /**
+     * Replace 64 bits at a time
+     * 
+     * @param w
+     *            the word index
+     * @param value
+     *            the new bits
+     */
+    void setWord(final int w, final long value) {
+        final int p = w >>> PAGE_SHIFT;
+        if ((value != 0) || (pages[p] != null)) {
+            page(p)[w & (PAGE_WORDS - 1)] = value;
+        }
+    }
+
+    /**
+     * Read 64 bits at a time
+     * 
+     * @param w
+     *            the word index
+     * @return the bits, zero if the word's page is not allocated
+     */
+    long word(final int w) {
+        final long[] page = pages[w >>> PAGE_SHIFT];
+        return (page == null) ? 0 : page[w & (PAGE_WORDS - 1)];
+    }
+
+    /**
+     * Get the number of words needed to hold every tile index
+     * 
+     * @return the number of words
+     */
+    int words() {
+        return words;
+    }
+
+    /**
+     * Get the given page, allocating it if needed
+     * 
+     * @param p
+     *            the page number
+     * @return the page
+     */
+    private long[] page(final int p) {
+        if (pages[p] == null) {
+            pages[p] = new long[PAGE_WORDS];
+        }
+        return pages[p];
+    }
+
+    /**
+     * Log base 2 of the number of words in a page
+     */
+    static final int PAGE_SHIFT = 4;
+
+    /**
+     * The number of words in a page
+     */
+    static final int PAGE_WORDS = 1 << PAGE_SHIFT;
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The pages of words, null where no bits have been set
+     */
+    private final long[][] pages;
+
+    /**
+     * The number of words needed to hold every tile index
+     */
+    private final int words;
+}
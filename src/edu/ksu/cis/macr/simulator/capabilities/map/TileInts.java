@@ -0,0 +1,94 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * One int per tile index, stored in pages that are only allocated once one of
+ * their values is written. Missing pages read as the default value. Used for
+ * the per-tile state of the path finding searches, so that a search only
+ * takes up room for the part of the map it reaches.
+ * 
+ * @author Kyle Hill
+ */
+final class TileInts implements Serializable {
+    /**
+     * Constructs a new TileInts with every value set to the given default
+     * 
+     * @param size
+     *            the number of tile indexes
+     * @param d
+     *            the default value
+     */
+    TileInts(final int size, final int d) {
+        pages = new int[(size + PAGE_SIZE - 1) >>> PAGE_SHIFT][];
+        defaultValue = d;
+    }
+
+    /**
+     * Reset every value to the default, releasing every page
+     */
+    void clear() {
+        Arrays.fill(pages, null);
+    }
+
+    /**
+     * Read the value of the given tile
+     * 
+     * @param i
+     *            the tile index
+     * @return the value
+     */
+    int get(final int i) {
+        final int[] page = pages[i >>> PAGE_SHIFT];
+        return (page == null) ? defaultValue : page[i & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * Write the value of the given tile
+     * 
+     * @param i
+     *            the tile index
+     * @param value
+     *            the new value
+     */
+    void set(final int i, final int value) {
+        int[] page = pages[i >>> PAGE_SHIFT];
+        if (page == null) {
+            if (value == defaultValue) {
+                return;
+            }
+            page = new int[PAGE_SIZE];
+            if (defaultValue != 0) {
+                Arrays.fill(page, defaultValue);
+            }
+            pages[i >>> PAGE_SHIFT] = page;
+        }
+        page[i & (PAGE_SIZE - 1)] = value;
+    }
+
+    /**
+     * Log base 2 of the number of values in a page
+     */
+    private static final int PAGE_SHIFT = 10;
+
+    /**
+     * The number of values in a page
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The value of tiles that have not been written
+     */
+    private final int defaultValue;
+
+    /**
+     * The pages of values, null where no values have been written
+     */
+    private final int[][] pages;
+}
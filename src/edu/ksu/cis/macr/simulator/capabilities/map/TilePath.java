@@ -0,0 +1,66 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.util.Arrays;
+
+/**
+ * A path through a map, as a growable list of tile indexes
+ * 
+ * @author Kyle Hill
+ */
+final class TilePath {
+    /**
+     * Add a tile to the end of this path
+     * 
+     * @param i
+     *            the tile index
+     */
+    void add(final int i) {
+        if (size == tiles.length) {
+            tiles = Arrays.copyOf(tiles, size * 2);
+        }
+        tiles[size++] = i;
+    }
+
+    /**
+     * Remove every tile from this path
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get a tile of this path
+     * 
+     * @param k
+     *            the position along this path
+     * @return the tile index
+     */
+    int get(final int k) {
+        assert k < size;
+        return tiles[k];
+    }
+
+    /**
+     * Get the number of tiles in this path
+     * 
+     * @return the number of tiles
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * The number of tiles a path has room for when first created
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The number of tiles in this path
+     */
+    private int size = 0;
+
+    /**
+     * The tile indexes, of which the first size are in use
+     */
+    private int[] tiles = new int[INITIAL_CAPACITY];
+}
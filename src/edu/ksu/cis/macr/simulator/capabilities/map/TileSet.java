@@ -0,0 +1,469 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A set of tiles, stored as one bit per tile index along with the number of
+ * tiles in each CHUNK x CHUNK square of the map. Each chunk also has a summary
+ * bit saying whether it holds any tiles, and one saying whether it holds every
+ * tile inside the world's boundaries. Queries look at the summaries first and
+ * only search the tiles of chunks that can hold a result, so a mostly empty or
+ * mostly full set is cheap to search whatever the size of the map.
+ * 
+ * @author Kyle Hill
+ */
+final class TileSet implements Serializable {
+    /**
+     * Constructs a new, empty TileSet
+     * 
+     * @param mX
+     *            the maximum size for the world's X coordinate
+     * @param mY
+     *            the maximum size for the world's Y coordinate
+     */
+    TileSet(final int mX, final int mY) {
+        maxX = mX;
+        maxY = mY;
+        chunksX = (mX + CHUNK - 1) / CHUNK;
+        chunksY = (mY + CHUNK - 1) / CHUNK;
+        bits = new TileBits(((mX * mY) + 63) >>> 6);
+        counts = new TileInts(chunksX * chunksY, 0);
+        full = new TileBits(((chunksX * chunksY) + 63) >>> 6);
+        occupied = new TileBits(((chunksX * chunksY) + 63) >>> 6);
+    }
+
+    /**
+     * Remove every tile from this set
+     */
+    void clear() {
+        bits.clear();
+        counts.clear();
+        full.clear();
+        occupied.clear();
+        size = 0;
+    }
+
+    /**
+     * Is the tile at the given index in this set?
+     * 
+     * @param i
+     *            the tile index
+     * @return true if the tile is in this set, false otherwise
+     */
+    boolean contains(final int i) {
+        return bits.get(i);
+    }
+
+    /**
+     * Is this set empty?
+     * 
+     * @return true if this set contains no tiles, false otherwise
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Find the tile in this set nearest to the given location. Ties are broken
+     * the same way as {@link LocationComparator}: by Manhattan distance, then
+     * by x, then by y.
+     * 
+     * @param fX
+     *            the x-coordinate to search from
+     * @param fY
+     *            the y-coordinate to search from
+     * @return the index of the nearest tile, -1 if this set is empty
+     */
+    int nearest(final int fX, final int fY) {
+        return nearestAfter(fX, fY, -1);
+    }
+
+    /**
+     * Find the tile inside the world's boundaries that is not in this set
+     * nearest to the given location, in the order used by
+     * {@link #nearest(int, int)}. This set must only hold tiles inside the
+     * world's boundaries.
+     * 
+     * @param fX
+     *            the x-coordinate to search from
+     * @param fY
+     *            the y-coordinate to search from
+     * @return the index of the nearest tile, -1 if this set holds every tile
+     */
+    int nearestAbsent(final int fX, final int fY) {
+        return search(fX, fY, -1, true);
+    }
+
+    /**
+     * Find the tile in this set nearest to the given location that comes
+     * after the given tile, in the order used by {@link #nearest(int, int)}.
+     * Calling this repeatedly with the previous result visits every tile in
+     * this set, nearest first.
+     * 
+     * @param fX
+     *            the x-coordinate to search from
+     * @param fY
+     *            the y-coordinate to search from
+     * @param after
+     *            the index of the previous tile, -1 to start from the nearest
+     * @return the index of the next nearest tile, -1 if there are no more
+     */
+    int nearestAfter(final int fX, final int fY, final int after) {
+        return search(fX, fY, after, false);
+    }
+
+    /**
+     * Get every tile in this set, nearest to the given location first, in the
+     * order used by {@link #nearest(int, int)}
+     * 
+     * @param fX
+     *            the x-coordinate to search from
+     * @param fY
+     *            the y-coordinate to search from
+     * @return the indexes of the tiles in this set
+     */
+    int[] nearestFirst(final int fX, final int fY) {
+        // Sort by distance, then index, packed into a single key
+        final long[] keys = new long[size];
+        int k = 0;
+        final int last = (chunksX * chunksY) - 1;
+        for (int c = nextChunk(0, last, false); c >= 0; c = nextChunk(c + 1, last, false)) {
+            final int minY = (c % chunksY) * CHUNK;
+            final int length = Math.min(CHUNK, maxY - minY);
+            for (int tX = (c / chunksY) * CHUNK; tX < Math.min(maxX, ((c / chunksY) + 1) * CHUNK); tX++) {
+                final int start = (tX * maxY) + minY;
+                long column = bitsAt(start, length);
+                while (column != 0) {
+                    final int i = start + Long.numberOfTrailingZeros(column);
+                    column &= column - 1;
+                    keys[k++] = keyOf(i, fX, fY);
+                }
+            }
+        }
+        Arrays.sort(keys);
+
+        final int[] tiles = new int[size];
+        for (k = 0; k < size; k++) {
+            tiles[k] = (int) keys[k];
+        }
+        return tiles;
+    }
+
+    /**
+     * Add or remove the tile at the given index
+     * 
+     * @param i
+     *            the tile index
+     * @param value
+     *            true to add the tile, false to remove it
+     */
+    void set(final int i, final boolean value) {
+        if (bits.set(i, value)) {
+            count(i, value ? 1 : -1);
+        }
+    }
+
+    /**
+     * Replace 64 tiles at a time
+     * 
+     * @param w
+     *            the word index
+     * @param value
+     *            one bit per tile, set if the tile should be in this set
+     */
+    void setWord(final int w, final long value) {
+        long changes = bits.word(w) ^ value;
+        bits.setWord(w, value);
+        while (changes != 0) {
+            final int i = (w << 6) + Long.numberOfTrailingZeros(changes);
+            changes &= changes - 1;
+            count(i, contains(i) ? 1 : -1);
+        }
+    }
+
+    /**
+     * Get the number of tiles in this set
+     * 
+     * @return the number of tiles in this set
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Read up to 64 consecutive bits
+     * 
+     * @param start
+     *            the index of the first bit
+     * @param length
+     *            the number of bits
+     * @return the bits, with the first in the lowest position
+     */
+    private long bitsAt(final int start, final int length) {
+        final int w = start >>> 6;
+        final int b = start & 63;
+        long value = bits.word(w) >>> b;
+        if (((b + length) > 64) && ((w + 1) < bits.words())) {
+            value |= bits.word(w + 1) << (64 - b);
+        }
+        return (length == 64) ? value : (value & ((1L << length) - 1));
+    }
+
+    /**
+     * Adjust the count of tiles in the chunk containing the given tile
+     * 
+     * @param i
+     *            the tile index
+     * @param delta
+     *            the amount to adjust the count by
+     */
+    private void count(final int i, final int delta) {
+        final int x = (i / maxY) / CHUNK;
+        final int y = (i % maxY) / CHUNK;
+        final int c = (x * chunksY) + y;
+        final int count = counts.get(c) + delta;
+        counts.set(c, count);
+        occupied.set(c, count != 0);
+        full.set(c, count == validTiles(x, y));
+        size += delta;
+    }
+
+    /**
+     * Get the sort key of a tile: its distance from the given location in the
+     * upper half, and its index in the lower half
+     * 
+     * @param i
+     *            the tile index
+     * @param fX
+     *            the x-coordinate to measure from
+     * @param fY
+     *            the y-coordinate to measure from
+     * @return the tile's key
+     */
+    private long keyOf(final int i, final int fX, final int fY) {
+        final int distance = Math.abs((i / maxY) - fX) + Math.abs((i % maxY) - fY);
+        return ((long) distance << 32) | i;
+    }
+
+    /**
+     * Can the given chunk hold a result, according to its summary bits?
+     * 
+     * @param c
+     *            the chunk index
+     * @param absent
+     *            true to look for tiles inside the world's boundaries that are
+     *            not in this set, false to look for tiles that are
+     * @return true if the chunk is worth searching, false otherwise
+     */
+    private boolean mayHold(final int c, final boolean absent) {
+        return absent ? !full.get(c) : occupied.get(c);
+    }
+
+    /**
+     * Find the first chunk in a range of chunk indexes that may hold a result,
+     * using the summary bits to skip 64 chunks at a time
+     * 
+     * @param from
+     *            the index of the first chunk to consider
+     * @param to
+     *            the index of the last chunk to consider
+     * @param absent
+     *            true to find chunks that are missing tiles inside the world's
+     *            boundaries, false to find chunks holding any tiles
+     * @return the chunk index, -1 if there are none in the range
+     */
+    private int nextChunk(final int from, final int to, final boolean absent) {
+        if (from > to) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = (absent ? ~full.word(w) : occupied.word(w)) & (-1L << from);
+        while (word == 0) {
+            if (++w > (to >>> 6)) {
+                return -1;
+            }
+            word = absent ? ~full.word(w) : occupied.word(w);
+        }
+        final int c = (w << 6) + Long.numberOfTrailingZeros(word);
+        return (c <= to) ? c : -1;
+    }
+
+    /**
+     * Find the tile nearest to the given location that comes after the given
+     * tile, in the order used by {@link #nearest(int, int)}
+     * 
+     * @param fX
+     *            the x-coordinate to search from
+     * @param fY
+     *            the y-coordinate to search from
+     * @param after
+     *            the index of the previous tile, -1 to start from the nearest
+     * @param absent
+     *            true to find tiles inside the world's boundaries that are not
+     *            in this set, false to find tiles that are
+     * @return the index of the next nearest tile, -1 if there are no more
+     */
+    private int search(final int fX, final int fY, final int after, final boolean absent) {
+        if (size == (absent ? (maxX - 1) * (maxY - 1) : 0)) {
+            return -1;
+        }
+        final long afterKey = (after < 0) ? -1 : keyOf(after, fX, fY);
+
+        final int cX = fX / CHUNK;
+        final int cY = fY / CHUNK;
+        final int rings = Math.max(Math.max(cX, chunksX - 1 - cX), Math.max(cY, chunksY - 1 - cY));
+
+        long best = Long.MAX_VALUE;
+
+        // Search outwards one ring of chunks at a time. Every tile in ring r
+        // is more than (r - 1) whole chunks away, so once that is further
+        // than the best tile found so far, nothing closer is left.
+        for (int r = 0; (r <= rings) && ((r == 0) || ((((r - 1) * CHUNK) + 1) <= (best >>> 32))); r++) {
+            for (int x = Math.max(0, cX - r); x <= Math.min(chunksX - 1, cX + r); x++) {
+                if (Math.abs(x - cX) == r) {
+                    // The left and right sides of the ring are runs of
+                    // consecutive chunks, so skip along their summary bits
+                    final int first = (x * chunksY) + Math.max(0, cY - r);
+                    final int last = (x * chunksY) + Math.min(chunksY - 1, cY + r);
+                    for (int c = nextChunk(first, last, absent); c >= 0; c = nextChunk(c + 1, last, absent)) {
+                        best = searchChunk(x, c - (x * chunksY), fX, fY, afterKey, best, absent);
+                    }
+                } else {
+                    // Only the top and bottom of the ring are in between
+                    if (((cY - r) >= 0) && mayHold((x * chunksY) + (cY - r), absent)) {
+                        best = searchChunk(x, cY - r, fX, fY, afterKey, best, absent);
+                    }
+                    if (((cY + r) < chunksY) && mayHold((x * chunksY) + cY + r, absent)) {
+                        best = searchChunk(x, cY + r, fX, fY, afterKey, best, absent);
+                    }
+                }
+            }
+        }
+        return (best == Long.MAX_VALUE) ? -1 : (int) best;
+    }
+
+    /**
+     * Search the tiles of a single chunk for one nearer than the best found so
+     * far
+     * 
+     * @param x
+     *            the chunk's x-coordinate
+     * @param y
+     *            the chunk's y-coordinate
+     * @param fX
+     *            the x-coordinate to search from
+     * @param fY
+     *            the y-coordinate to search from
+     * @param afterKey
+     *            the key of the previous tile, -1 to start from the nearest
+     * @param best
+     *            the key of the best tile found so far
+     * @param absent
+     *            true to find tiles inside the world's boundaries that are not
+     *            in this set, false to find tiles that are
+     * @return the key of the best tile found so far, including this chunk
+     */
+    private long searchChunk(final int x, final int y, final int fX, final int fY, final long afterKey, final long best, final boolean absent) {
+        // Skip chunks whose tiles have all been visited already
+        final int minY = y * CHUNK;
+        final int length = Math.min(CHUNK, maxY - minY);
+        final int lastX = Math.min(maxX, (x + 1) * CHUNK) - 1;
+        final int farthest = Math.max(Math.abs(fX - (x * CHUNK)), Math.abs(fX - lastX)) + Math.max(Math.abs(fY - minY), Math.abs(fY - ((minY + length) - 1)));
+        if (farthest < (afterKey >> 32)) {
+            return best;
+        }
+
+        // Search each column of the chunk. When looking for absent tiles,
+        // column 0 and row 0 are outside the boundaries.
+        long result = best;
+        final long rows = ((1L << length) - 1) & ((minY == 0) ? ~1L : -1L);
+        for (int tX = Math.max(absent ? 1 : 0, x * CHUNK); tX <= lastX; tX++) {
+            final int start = (tX * maxY) + minY;
+            long column = absent ? (~bitsAt(start, length) & rows) : bitsAt(start, length);
+            while (column != 0) {
+                final int i = start + Long.numberOfTrailingZeros(column);
+                column &= column - 1;
+
+                // Skip tiles that have been visited already
+                final long key = keyOf(i, fX, fY);
+                if ((key > afterKey) && (key < result)) {
+                    result = key;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of tiles inside the world's boundaries in the given chunk
+     * 
+     * @param x
+     *            the chunk's x-coordinate
+     * @param y
+     *            the chunk's y-coordinate
+     * @return the number of tiles
+     */
+    private int validTiles(final int x, final int y) {
+        final int columns = Math.min(maxX, (x + 1) * CHUNK) - Math.max(1, x * CHUNK);
+        final int rows = Math.min(maxY, (y + 1) * CHUNK) - Math.max(1, y * CHUNK);
+        return columns * rows;
+    }
+
+    /**
+     * The width and height of a chunk
+     */
+    private static final int CHUNK = 8;
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 3L;
+
+    /**
+     * One bit per tile, set if the tile is in this set
+     */
+    private final TileBits bits;
+
+    /**
+     * The number of chunks along the x axis
+     */
+    private final int chunksX;
+
+    /**
+     * The number of chunks along the y axis
+     */
+    private final int chunksY;
+
+    /**
+     * The number of tiles in each chunk, indexed by chunk x * chunksY +
+     * chunk y
+     */
+    private final TileInts counts;
+
+    /**
+     * One bit per chunk, set if the chunk holds every tile inside the world's
+     * boundaries
+     */
+    private final TileBits full;
+
+    /**
+     * The maximum size for the world's X coordinate
+     */
+    private final int maxX;
+
+    /**
+     * The maximum size for the world's Y coordinate
+     */
+    private final int maxY;
+
+    /**
+     * One bit per chunk, set if the chunk holds any tiles
+     */
+    private final TileBits occupied;
+
+    /**
+     * The number of tiles in this set
+     */
+    private int size = 0;
+}
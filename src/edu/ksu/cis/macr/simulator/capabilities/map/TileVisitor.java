@@ -0,0 +1,22 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+/**
+ * Visits tiles of a {@link Map} one at a time, without the Map building a
+ * collection of them
+ * 
+ * @author Kyle Hill
+ */
+public interface TileVisitor {
+    /**
+     * Called for each tile visited. The same Tile object is moved from tile to
+     * tile during a visit, so it must not be kept past the end of this call,
+     * such as by adding it to a collection: it would then refer to whichever
+     * tile was visited last. Use {@link Tile#getLocation()} to remember a
+     * tile instead, or {@link Map#getTile(int, int)} for a Tile of its own.
+     * 
+     * @param tile
+     *            the tile being visited
+     * @return true to carry on visiting tiles, false to stop
+     */
+    boolean visit(Tile tile);
+}
@@ -0,0 +1,268 @@
+package edu.ksu.cis.macr.simulator.capabilities.map;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+
+/**
+ * The number of steps it takes to walk from one location of a map to others,
+ * found by a single breadth first search outwards from that location over
+ * passable tiles. The search only goes as far as it needs to, so asking for
+ * the distances to many nearby targets costs no more than one search.
+ * Impassable tiles, such as a Wumpi's, are given a distance one step further
+ * than their nearest passable neighbor, but are not searched past.
+ * <p>
+ * Distances are as of when the search reaches each tile, so a TravelDistances
+ * should only be kept while the map does not change.
+ * <p>
+ * As a comparator, locations are ordered by travel distance, and then in the
+ * same order as {@link LocationComparator}. Locations that cannot be reached
+ * come last.
+ * 
+ * @author Kyle Hill
+ */
+public final class TravelDistances implements Comparator<LocationData> {
+    /**
+     * Constructs a new TravelDistances
+     * 
+     * @param m
+     *            the map
+     * @param s
+     *            the index of the tile to search from
+     */
+    TravelDistances(final Map m, final int s) {
+        map = m;
+        source = s;
+        fromX = m.xOf(s);
+        fromY = m.yOf(s);
+        order = new LocationComparator(new LocationData(fromX, fromY));
+        neighborOffsets = Navigator.neighborOffsets(m);
+        distances = new TileInts(m.getMaxX() * m.getMaxY(), -1);
+
+        if (m.contains(s)) {
+            distances.set(s, 0);
+            queue.add(s);
+        }
+    }
+
+    @Override
+    public int compare(final LocationData l1, final LocationData l2) {
+        if (l1.equals(l2)) {
+            return 0;
+        }
+
+        final int d1 = getDistance(l1);
+        final int d2 = getDistance(l2);
+        if (d1 != d2) {
+            return (d1 < d2) ? -1 : 1;
+        }
+        return order.compare(l1, l2);
+    }
+
+    /**
+     * Get the number of steps it takes to walk to the given location
+     * 
+     * @param to
+     *            the location
+     * @return the number of steps, Integer.MAX_VALUE if the location cannot be
+     *         reached
+     */
+    public int getDistance(final LocationData to) {
+        final int i = map.indexOf(to.getX(), to.getY());
+        if ((to.getX() < 0) || (to.getX() >= map.getMaxX()) || (to.getY() < 0) || (to.getY() >= map.getMaxY()) || !map.contains(i)) {
+            return Integer.MAX_VALUE;
+        }
+
+        while ((distances.get(i) < 0) && expand()) {
+            // Keep searching until the tile is reached
+        }
+        final int d = distances.get(i);
+        return (d < 0) ? Integer.MAX_VALUE : d;
+    }
+
+    /**
+     * Get the distance found to the given tile so far, without searching any
+     * further
+     * 
+     * @param i
+     *            the tile index
+     * @return the number of steps, -1 if the tile has not been reached yet
+     */
+    int known(final int i) {
+        return distances.get(i);
+    }
+
+    /**
+     * Get the number of steps out of the last level collected by
+     * {@link #nextLevel(TileSet, boolean, TilePath)}
+     * 
+     * @return the number of steps, -1 if no level has been collected
+     */
+    int lastLevel() {
+        return level - 1;
+    }
+
+    /**
+     * Find the nearest tile that is in, or absent from, the given set. Of the
+     * tiles the same number of steps away, the first in the order of
+     * {@link LocationComparator} is taken.
+     * 
+     * @param set
+     *            the set of tiles
+     * @param absent
+     *            true to find a tile absent from the set, false to find one in
+     *            it
+     * @return the index of the nearest tile, -1 if none can be reached
+     */
+    int nearest(final TileSet set, final boolean absent) {
+        final TilePath found = new TilePath();
+        while (nextLevel(set, absent, found)) {
+            if (found.size() > 0) {
+                return found.get(0);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Search the next number of steps out, collecting the tiles that many
+     * steps away that are in, or absent from, the given set. The tiles are
+     * collected in the order of {@link LocationComparator}.
+     * 
+     * @param set
+     *            the set of tiles
+     * @param absent
+     *            true to collect tiles absent from the set, false to collect
+     *            those in it
+     * @param found
+     *            the list to put the tiles in, which is cleared first
+     * @return true if the step was searched, false if there are no more tiles
+     *         that can be reached, or the search has gone as far as it may
+     */
+    boolean nextLevel(final TileSet set, final boolean absent, final TilePath found) {
+        found.clear();
+
+        // Every tile one step closer must be searched past first
+        while ((head < queue.size()) && (distances.get(queue.get(head)) < level) && expand()) {
+            // Keep searching until the level is complete
+        }
+        if ((head < queue.size()) && (distances.get(queue.get(head)) < level)) {
+            // The search reached its limit part way through
+            return false;
+        }
+        if (scan == queue.size()) {
+            return false;
+        }
+
+        // Sort by Manhattan distance, then index, packed into a single key
+        int n = 0;
+        for (; (scan < queue.size()) && (distances.get(queue.get(scan)) == level); scan++) {
+            final int i = queue.get(scan);
+            if (set.contains(i) != absent) {
+                if (n == keys.length) {
+                    keys = Arrays.copyOf(keys, n * 2);
+                }
+                keys[n++] = ((long) MapUtils.getManhattanDistance(fromX, fromY, map.xOf(i), map.yOf(i)) << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, n);
+        for (int k = 0; k < n; k++) {
+            found.add((int) keys[k]);
+        }
+        level++;
+        return true;
+    }
+
+    /**
+     * Search past the next tile in the queue
+     * 
+     * @return true if a tile was searched past, false if there are no more
+     *         tiles to search or the search has gone as far as it may
+     */
+    private boolean expand() {
+        if ((head == queue.size()) || (queue.size() >= MAX_REACHED)) {
+            return false;
+        }
+
+        final int u = queue.get(head++);
+        if ((u != source) && !map.isPassable(u)) {
+            return true;
+        }
+        final int next = distances.get(u) + 1;
+        for (final int offset : neighborOffsets) {
+            final int n = u + offset;
+            if (map.contains(n) && (distances.get(n) < 0)) {
+                distances.set(n, next);
+                queue.add(n);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The most tiles a search reaches before giving up, so that a search for
+     * a far off tile on a very large map stays bounded
+     */
+    private static final int MAX_REACHED = 1 << 18;
+
+    /**
+     * The number of steps to each tile reached, -1 for tiles not yet reached
+     */
+    private final TileInts distances;
+
+    /**
+     * The x-coordinate searched from
+     */
+    private final int fromX;
+
+    /**
+     * The y-coordinate searched from
+     */
+    private final int fromY;
+
+    /**
+     * The position in the queue of the next tile to search past
+     */
+    private int head = 0;
+
+    /**
+     * Scratch space for sorting a level's tiles
+     */
+    private long[] keys = new long[16];
+
+    /**
+     * The number of steps out the next level collected will be
+     */
+    private int level = 0;
+
+    /**
+     * The map being searched
+     */
+    private final Map map;
+
+    /**
+     * Index offsets of a tile's orthogonal neighbors
+     */
+    private final int[] neighborOffsets;
+
+    /**
+     * How locations the same number of steps away are ordered
+     */
+    private final LocationComparator order;
+
+    /**
+     * Every tile reached, in the order they were reached
+     */
+    private final TilePath queue = new TilePath();
+
+    /**
+     * The position in the queue of the first tile of the next level
+     */
+    private int scan = 0;
+
+    /**
+     * The index of the tile searched from
+     */
+    private final int source;
+}
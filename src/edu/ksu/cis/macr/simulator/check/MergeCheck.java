@@ -0,0 +1,285 @@
+package edu.ksu.cis.macr.simulator.check;
+
+import java.util.Random;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.capabilities.map.Tile;
+
+/**
+ * Checks that {@link Map#mergeFrom(Map)}, which merges 64 tiles at a time,
+ * gives exactly the same map as merging every tile in order with
+ * {@link Tile#mergeFrom(Tile)}, as maps were merged before. Random pairs of
+ * agent maps are merged both ways and every tile is compared, then the same
+ * random changes are made to both results and they are compared again, so
+ * that the merged maps are checked as agents go on to use them.
+ * <p>
+ * Half of the map pairs are dense with Wumpi, which both maps have smelled
+ * and claimed a little differently, since claims are the one part of the
+ * merge that depends on the tiles around them.
+ * <p>
+ * Usage: MergeCheck [number of seeds]. Exits with status 1 on the first
+ * difference found.
+ * 
+ * @author Kyle Hill
+ */
+public final class MergeCheck {
+    /**
+     * Constructor
+     */
+    private MergeCheck() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Runs the check
+     * 
+     * @param args
+     *            the number of seeds to check, by default {@value #SEEDS}
+     */
+    public static void main(final String[] args) {
+        final int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : SEEDS;
+        for (int seed = 0; seed < seeds; seed++) {
+            final Random random = new Random(seed);
+
+            // Sizes either side of a 64 tile word
+            final int maxX = 2 + random.nextInt(70);
+            final int maxY = 2 + random.nextInt(70);
+            final LocationData[] wumpi = ((seed % 2) == 1) ? randomWumpi(maxX, maxY, random) : new LocationData[0];
+            final Map mine = randomMap(maxX, maxY, random, wumpi);
+            final Map other = randomMap(maxX, maxY, random, wumpi);
+
+            final Map expected = new Map(mine);
+            mergeTileByTile(expected, other);
+            final Map actual = new Map(mine);
+            actual.mergeFrom(other);
+            compare(seed, "after merging", expected, actual);
+
+            // Carry on using both maps the same way
+            final long opSeed = random.nextLong();
+            change(expected, new Random(opSeed));
+            change(actual, new Random(opSeed));
+            compare(seed, "after changes following the merge", expected, actual);
+        }
+        System.out.println("Checked " + seeds + " seeds, no differences");
+    }
+
+    /**
+     * Make random changes to a map through its tiles, as sensor readings do
+     * 
+     * @param map
+     *            the map
+     * @param random
+     *            the random number generator
+     */
+    static void change(final Map map, final Random random) {
+        final int changes = (map.getMaxX() * map.getMaxY()) / 4;
+        for (int k = 0; k < changes; k++) {
+            final Tile tile = map.getTile(1 + random.nextInt(map.getMaxX() - 1), 1 + random.nextInt(map.getMaxY() - 1));
+            switch (random.nextInt(7)) {
+            case 0:
+                tile.setBreeze(random.nextBoolean());
+                break;
+            case 1:
+                tile.setGlitter(random.nextBoolean());
+                break;
+            case 2:
+                tile.setObstruction(random.nextBoolean());
+                break;
+            case 3:
+                tile.setSearched(true);
+                break;
+            case 4:
+                tile.setSmell(random.nextBoolean());
+                break;
+            case 5:
+                tile.setVisited(true);
+                break;
+            default:
+                tile.setClaimed();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Compare every tile of two maps, and what is found searching them, and
+     * exit on the first difference
+     * 
+     * @param seed
+     *            the seed the maps were built from
+     * @param when
+     *            when the maps are being compared
+     * @param expected
+     *            the expected map
+     * @param actual
+     *            the map to check against it
+     */
+    static void compare(final int seed, final String when, final Map expected, final Map actual) {
+        for (int x = 1; x < expected.getMaxX(); x++) {
+            for (int y = 1; y < expected.getMaxY(); y++) {
+                final String e = describe(expected.getTile(x, y));
+                final String a = describe(actual.getTile(x, y));
+                if (!e.equals(a)) {
+                    fail(seed, when, "tile (" + x + ", " + y + ") is " + a + ", expected " + e);
+                }
+            }
+        }
+
+        final LocationData from = new LocationData(expected.getMaxX() / 2, expected.getMaxY() / 2);
+        if (!expected.findGold(from).equals(actual.findGold(from))) {
+            fail(seed, when, "findGold differs");
+        }
+        if (!expected.findWumpi(from).equals(actual.findWumpi(from))) {
+            fail(seed, when, "findWumpi differs");
+        }
+        final LocationData e = expected.findNearestUnsearchedLocation(from);
+        final LocationData a = actual.findNearestUnsearchedLocation(from);
+        if ((e == null) ? (a != null) : !e.equals(a)) {
+            fail(seed, when, "findNearestUnsearchedLocation is " + a + ", expected " + e);
+        }
+    }
+
+    /**
+     * Describe every flag of a tile, raw and derived
+     * 
+     * @param tile
+     *            the tile
+     * @return the description
+     */
+    private static String describe(final Tile tile) {
+        final StringBuilder s = new StringBuilder();
+        s.append(tile.hasBreeze() ? 'B' : '-');
+        s.append(tile.hasGlitter() ? 'G' : '-');
+        s.append(tile.hasObstruction() ? 'O' : '-');
+        s.append(tile.hasSearched() ? 'S' : '-');
+        s.append(tile.hasSmell() ? 'M' : '-');
+        s.append(tile.hasVisited() ? 'V' : '-');
+        s.append(tile.isClaimed() ? 'C' : '-');
+        s.append(tile.isDangerous() ? 'D' : '-');
+        s.append(tile.isWall() ? 'W' : '-');
+        s.append(tile.isWumpi() ? 'U' : '-');
+        return s.toString();
+    }
+
+    /**
+     * Report a difference and exit
+     * 
+     * @param seed
+     *            the seed the maps were built from
+     * @param when
+     *            when the maps were being compared
+     * @param message
+     *            the difference
+     */
+    static void fail(final int seed, final String when, final String message) {
+        System.err.println("Seed " + seed + ", " + when + ": " + message);
+        System.exit(1);
+    }
+
+    /**
+     * Merge the other map into a map one tile at a time, in order. This is the
+     * reference that Map.mergeFrom must agree with.
+     * 
+     * @param map
+     *            the map to merge into
+     * @param other
+     *            the other map
+     */
+    private static void mergeTileByTile(final Map map, final Map other) {
+        for (int x = 1; x < map.getMaxX(); x++) {
+            for (int y = 1; y < map.getMaxY(); y++) {
+                map.getTile(x, y).mergeFrom(other.getTile(x, y));
+            }
+        }
+    }
+
+    /**
+     * Build a random agent map, setting flags through the tiles' setters so
+     * that only states an agent could reach are built
+     * 
+     * @param maxX
+     *            the maximum X coordinate
+     * @param maxY
+     *            the maximum Y coordinate
+     * @param random
+     *            the random number generator
+     * @param wumpi
+     *            where Wumpi are, which each map smells and claims a little
+     *            differently
+     * @return the map
+     */
+    static Map randomMap(final int maxX, final int maxY, final Random random, final LocationData[] wumpi) {
+        final Map map = new Map(maxX, maxY);
+        final double scale = (wumpi.length > 0) ? 0.3 : 1;
+        for (int x = 1; x < maxX; x++) {
+            for (int y = 1; y < maxY; y++) {
+                final Tile tile = map.getTile(x, y);
+                if (random.nextDouble() < (0.3 * scale)) {
+                    tile.setVisited(true);
+                }
+                if (random.nextDouble() < (0.4 * scale)) {
+                    tile.setSearched(true);
+                }
+                if (random.nextDouble() < 0.15) {
+                    tile.setObstruction(true);
+                }
+                if (random.nextDouble() < 0.1) {
+                    tile.setSmell(true);
+                }
+                if (random.nextDouble() < 0.1) {
+                    tile.setBreeze(true);
+                }
+                if (random.nextDouble() < 0.05) {
+                    tile.setGlitter(true);
+                }
+                if (random.nextDouble() < 0.05) {
+                    tile.setClaimed();
+                }
+            }
+        }
+
+        for (final LocationData wumpus : wumpi) {
+            final int x = wumpus.getX();
+            final int y = wumpus.getY();
+            map.getTile(x, y).setObstruction(random.nextDouble() < 0.9);
+            for (int nX = Math.max(1, x - 1); nX <= Math.min(maxX - 1, x + 1); nX++) {
+                for (int nY = Math.max(1, y - 1); nY <= Math.min(maxY - 1, y + 1); nY++) {
+                    if ((nX != x) || (nY != y)) {
+                        final Tile tile = map.getTile(nX, nY);
+                        tile.setSmell(random.nextDouble() < 0.8);
+                        if (random.nextDouble() < 0.15) {
+                            tile.setObstruction(true);
+                        }
+                    }
+                }
+            }
+            map.getTile(x, y).setClaimed();
+        }
+        return map;
+    }
+
+    /**
+     * Pick where Wumpi are, for both maps of a pair
+     * 
+     * @param maxX
+     *            the maximum X coordinate
+     * @param maxY
+     *            the maximum Y coordinate
+     * @param random
+     *            the random number generator
+     * @return the Wumpi locations
+     */
+    static LocationData[] randomWumpi(final int maxX, final int maxY, final Random random) {
+        final LocationData[] wumpi = new LocationData[((maxX - 1) * (maxY - 1)) / 12];
+        for (int k = 0; k < wumpi.length; k++) {
+            wumpi[k] = new LocationData(1 + random.nextInt(maxX - 1), 1 + random.nextInt(maxY - 1));
+        }
+        return wumpi;
+    }
+
+    /**
+     * The number of seeds checked by default
+     */
+    private static final int SEEDS = 400;
+}
@@ -0,0 +1,284 @@
+package edu.ksu.cis.macr.simulator.check;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.capabilities.map.Map;
+import edu.ksu.cis.macr.simulator.capabilities.map.MapDelta;
+import edu.ksu.cis.macr.simulator.capabilities.map.MapMessage;
+
+/**
+ * Checks that every {@link MapMessage} decodes to what was encoded. For random
+ * maps, a snapshot is sent through its binary form and compared tile by tile
+ * with the original, and a series of deltas is sent both encoded and as they
+ * are, merging each into its own receiving map and comparing the two.
+ * <p>
+ * Every message cut short, and messages with random bytes changed, must be
+ * rejected with an IllegalArgumentException and nothing else, since they are
+ * read straight from other agents.
+ * <p>
+ * The size of the messages, and the time taken to encode and decode them, are
+ * reported against sending the same contents with Java serialization, as
+ * messages used to be sent.
+ * <p>
+ * Usage: MessageCheck [number of seeds]. Exits with status 1 on the first
+ * difference found.
+ * 
+ * @author Kyle Hill
+ */
+public final class MessageCheck {
+    /**
+     * The message agents sent each other before {@link MapMessage}, which was
+     * sent with Java serialization. Kept to compare against.
+     * 
+     * @author Kyle Hill
+     * 
+     */
+    private static final class SerializedMessage implements Serializable {
+        /**
+         * Constructs a new SerializedMessage
+         * 
+         * @param s
+         *            the sending agent
+         * @param n
+         *            the sender's sequence number for this message
+         * @param c
+         *            the map or delta sent
+         */
+        SerializedMessage(final String s, final long n, final Object c) {
+            sender = s;
+            sequence = n;
+            contents = c;
+        }
+
+        /**
+         * The serialVersionUID
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The map or delta sent
+         */
+        private final Object contents;
+
+        /**
+         * The sending agent
+         */
+        private final String sender;
+
+        /**
+         * The sender's sequence number for this message
+         */
+        private final long sequence;
+    }
+
+    /**
+     * Constructor
+     */
+    private MessageCheck() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Runs the check
+     * 
+     * @param args
+     *            the number of seeds to check, by default {@value #SEEDS}
+     */
+    public static void main(final String[] args) {
+        final int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : SEEDS;
+        for (int seed = 0; seed < seeds; seed++) {
+            final Random random = new Random(seed);
+            final String sender = "agent" + seed;
+            final int maxX = 2 + random.nextInt(100);
+            final int maxY = 2 + random.nextInt(100);
+
+            // Snapshots
+            final Map world = MergeCheck.randomMap(maxX, maxY, random, ((seed % 2) == 1) ? MergeCheck.randomWumpi(maxX, maxY, random) : new LocationData[0]);
+            final byte[] snapshot = encode(new MapMessage(sender, seed, world), world, SNAPSHOT);
+            final MapMessage decoded = check(seed, "snapshot", snapshot, MapMessage.Type.SNAPSHOT, sender, seed);
+            MergeCheck.compare(seed, "after decoding a snapshot", world, decoded.getSnapshot());
+            checkRejected(seed, "snapshot", snapshot, random);
+
+            // Deltas, one per step of changes
+            final Map from = new Map(maxX, maxY);
+            final Map direct = new Map(maxX, maxY);
+            final Map viaBytes = new Map(maxX, maxY);
+            for (int step = 0; step < DELTA_STEPS; step++) {
+                MergeCheck.change(from, random);
+                final MapDelta delta = from.takeDelta();
+                final byte[] bytes = encode(new MapMessage(sender, step, delta), delta, DELTA);
+                final MapMessage message = check(seed, "delta", bytes, MapMessage.Type.DELTA, sender, step);
+                if (message.getDelta().size() != delta.size()) {
+                    MergeCheck.fail(seed, "decoding a delta", message.getDelta().size() + " tiles, expected " + delta.size());
+                }
+
+                direct.mergeFrom(delta);
+                viaBytes.mergeFrom(message.getDelta());
+                MergeCheck.compare(seed, "after merging delta " + step, direct, viaBytes);
+                checkRejected(seed, "delta", bytes, random);
+            }
+        }
+        System.out.println("Checked " + seeds + " seeds, no differences");
+
+        System.out.println(String.format("%-10s %14s %14s %16s %16s", "message", "MapMessage B", "serialized B", "MapMessage us", "serialized us"));
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            System.out.println(String.format("%-10s %14.1f %14.1f %16.2f %16.2f", KINDS[kind], (double) bytes[kind][0] / counts[kind], (double) bytes[kind][1] / counts[kind], nanos[kind][0] / 1000.0 / counts[kind], nanos[kind][1] / 1000.0 / counts[kind]));
+        }
+    }
+
+    /**
+     * Decode a message and check its header
+     * 
+     * @param seed
+     *            the seed the message was built from
+     * @param what
+     *            what the message holds
+     * @param bytes
+     *            the encoded message
+     * @param type
+     *            the expected type
+     * @param sender
+     *            the expected sender
+     * @param sequence
+     *            the expected sequence number
+     * @return the decoded message
+     */
+    private static MapMessage check(final int seed, final String what, final byte[] bytes, final MapMessage.Type type, final String sender, final long sequence) {
+        final MapMessage message = MapMessage.fromBytes(bytes);
+        if ((message.getType() != type) || !message.getSender().equals(sender) || (message.getSequence() != sequence)) {
+            MergeCheck.fail(seed, "decoding a " + what, "header is " + message.getType() + " from " + message.getSender() + " #" + message.getSequence());
+        }
+        return message;
+    }
+
+    /**
+     * Check that a message cut short at every length is rejected, and that
+     * corrupting it is rejected if it is noticed at all
+     * 
+     * @param seed
+     *            the seed the message was built from
+     * @param what
+     *            what the message holds
+     * @param bytes
+     *            the encoded message
+     * @param random
+     *            the random number generator
+     */
+    private static void checkRejected(final int seed, final String what, final byte[] bytes, final Random random) {
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                MapMessage.fromBytes(Arrays.copyOf(bytes, length));
+                MergeCheck.fail(seed, "decoding a " + what, "accepted when cut to " + length + " of " + bytes.length + " bytes");
+            } catch (final IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        for (int k = 0; k < CORRUPTIONS; k++) {
+            final byte[] corrupt = bytes.clone();
+            corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+            try {
+                MapMessage.fromBytes(corrupt);
+            } catch (final IllegalArgumentException e) {
+                // Expected, if the corruption is noticed
+            } catch (final RuntimeException e) {
+                MergeCheck.fail(seed, "decoding a corrupt " + what, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Encode a message, and for comparison send the same contents with Java
+     * serialization, adding the sizes and times of both to the totals
+     * 
+     * @param message
+     *            the message
+     * @param contents
+     *            the map or delta it holds
+     * @param kind
+     *            the kind of message, SNAPSHOT or DELTA
+     * @return the encoded message
+     */
+    private static byte[] encode(final MapMessage message, final Object contents, final int kind) {
+        long start = System.nanoTime();
+        final byte[] encoded = message.toBytes();
+        MapMessage.fromBytes(encoded);
+        nanos[kind][0] += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final byte[] serialized;
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ObjectOutputStream objects = new ObjectOutputStream(out);
+            objects.writeObject(new SerializedMessage(message.getSender(), message.getSequence(), contents));
+            objects.close();
+            serialized = out.toByteArray();
+            new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        } catch (final ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+        nanos[kind][1] += System.nanoTime() - start;
+
+        bytes[kind][0] += encoded.length;
+        bytes[kind][1] += serialized.length;
+        counts[kind]++;
+        return encoded;
+    }
+
+    /**
+     * The number of corrupt copies of each message to decode
+     */
+    private static final int CORRUPTIONS = 20;
+
+    /**
+     * The kind of message that holds changed tiles
+     */
+    private static final int DELTA = 1;
+
+    /**
+     * The number of deltas sent for each seed
+     */
+    private static final int DELTA_STEPS = 5;
+
+    /**
+     * The names of the kinds of message
+     */
+    private static final String[] KINDS = { "snapshot", "delta" };
+
+    /**
+     * The number of seeds checked by default
+     */
+    private static final int SEEDS = 200;
+
+    /**
+     * The kind of message that holds a whole map
+     */
+    private static final int SNAPSHOT = 0;
+
+    /**
+     * The total size of each kind of message, in bytes, as a MapMessage and
+     * serialized
+     */
+    private static final long[][] bytes = new long[KINDS.length][2];
+
+    /**
+     * The number of each kind of message sent
+     */
+    private static final int[] counts = new int[KINDS.length];
+
+    /**
+     * The total time taken to encode and decode each kind of message, in
+     * nanoseconds, as a MapMessage and serialized
+     */
+    private static final long[][] nanos = new long[KINDS.length][2];
+}
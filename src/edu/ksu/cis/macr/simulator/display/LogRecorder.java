@@ -0,0 +1,77 @@
+package edu.ksu.cis.macr.simulator.display;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+import edu.ksu.cis.macr.simulator.environment.Environment;
+
+/**
+ * Records a simulation as tab separated lines of text, one per event, each
+ * starting with the turn it happened in
+ * 
+ * @author Kyle Hill
+ */
+public class LogRecorder implements SimulationRecorder {
+    /**
+     * Constructs a new LogRecorder
+     * 
+     * @param file
+     *            the file to write to, which is replaced
+     * @param seed
+     *            the seed the simulation's random choices come from, which is
+     *            written first so the simulation can be repeated
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public LogRecorder(final File file, final long seed) throws IOException {
+        out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        out.println(turn() + "\tseed\t" + seed);
+    }
+
+    @Override
+    public final synchronized void agentStepped(final String agent, final LocationData location, final boolean done) {
+        out.println(turn() + "\tagent\t" + agent + "\t" + location.getX() + "\t" + location.getY() + "\t" + done);
+    }
+
+    /**
+     * Write out any events not yet written, and close the file
+     */
+    public final synchronized void close() {
+        out.close();
+    }
+
+    @Override
+    public final synchronized void objectsChanged(final Collection<DisplayInformation> updated, final Collection<DisplayInformation> removed) {
+        final long turn = turn();
+        for (final DisplayInformation info : updated) {
+            out.println(turn + "\tobject\t" + info.getIdentifier() + "\t" + info.x1 + "\t" + info.y1 + "\t" + info.x2 + "\t" + info.y2);
+        }
+        for (final DisplayInformation info : removed) {
+            out.println(turn + "\tremoved\t" + info.getIdentifier());
+        }
+    }
+
+    @Override
+    public final synchronized void scoreChanged(final int score) {
+        out.println(turn() + "\tscore\t" + score);
+    }
+
+    /**
+     * Get the current turn
+     * 
+     * @return the number of turns the environment has taken
+     */
+    private static long turn() {
+        return Environment.getEnvironment().getTurns();
+    }
+
+    /**
+     * The file being written to
+     */
+    private final PrintWriter out;
+}
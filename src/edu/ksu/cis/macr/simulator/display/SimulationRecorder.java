@@ -0,0 +1,43 @@
+package edu.ksu.cis.macr.simulator.display;
+
+import java.util.Collection;
+
+import edu.ksu.cis.macr.simulator.capabilities.LocationData;
+
+/**
+ * Receives the state of a running simulation that would otherwise only be
+ * shown on screen, so that headless runs can still be followed or replayed
+ * 
+ * @author Kyle Hill
+ */
+public interface SimulationRecorder {
+    /**
+     * Called each time an agent would redraw its own view of the world
+     * 
+     * @param agent
+     *            the agent's identifier
+     * @param location
+     *            the agent's current location
+     * @param done
+     *            true if the agent has no more assignments, false otherwise
+     */
+    void agentStepped(String agent, LocationData location, boolean done);
+
+    /**
+     * Called with the changes the environment would have drawn
+     * 
+     * @param updated
+     *            the objects that were added or changed
+     * @param removed
+     *            the objects that were removed
+     */
+    void objectsChanged(Collection<DisplayInformation> updated, Collection<DisplayInformation> removed);
+
+    /**
+     * Called whenever the score changes
+     * 
+     * @param score
+     *            the new score
+     */
+    void scoreChanged(int score);
+}
@@ -0,0 +1,213 @@
+package edu.ksu.cis.macr.simulator.display;
+
+import java.awt.HeadlessException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JTextField;
+
+import edu.ksu.cis.macr.simulator.GaaLauncher;
+
+/**
+ * The Wumpi World display, which keeps the score on its status bar. The score,
+ * and a count of each kind of event scored, are kept whether or not a display
+ * has been created, so that headless runs are scored the same way. Every
+ * change is passed on to the launcher's recorder, if there is one.
+ * 
+ * @author Kyle Hill
+ */
+public class WumpiWorldDisplay extends GUIDisplay {
+    /**
+     * Constructs a new WumpiWorldDisplay
+     * 
+     * @throws HeadlessException
+     *             if there is no screen to display on
+     */
+    public WumpiWorldDisplay() throws HeadlessException {
+        super("Wumpi World");
+        statusBar = getStatusBar();
+        statusBar.setText("Score: " + score);
+        display = this;
+    }
+
+    /**
+     * An agent has been killed
+     */
+    public static void agentKilled() {
+        agentsKilled.incrementAndGet();
+        addPoints(-AGENT_KILLED_POINTS);
+    }
+
+    /**
+     * An agent has taken an action
+     */
+    public static void action() {
+        actions.incrementAndGet();
+        addPoints(-ACTION_POINTS);
+    }
+
+    /**
+     * An agent has communicated
+     */
+    public static void communication() {
+        communications.incrementAndGet();
+        addPoints(-COMMUNICATION_POINTS);
+    }
+
+    /**
+     * Get the number of actions taken
+     * 
+     * @return the number of actions
+     */
+    public static int getActions() {
+        return actions.get();
+    }
+
+    /**
+     * Get the number of agents killed
+     * 
+     * @return the number of agents killed
+     */
+    public static int getAgentsKilled() {
+        return agentsKilled.get();
+    }
+
+    /**
+     * Get the number of communications
+     * 
+     * @return the number of communications
+     */
+    public static int getCommunications() {
+        return communications.get();
+    }
+
+    /**
+     * Get the number of pieces of gold brought back
+     * 
+     * @return the number of pieces of gold
+     */
+    public static int getGoldRetrieved() {
+        return goldRetrieved.get();
+    }
+
+    /**
+     * Get the current score
+     * 
+     * @return the score
+     */
+    public static int getScore() {
+        return score.get();
+    }
+
+    /**
+     * Get the number of Wumpi killed
+     * 
+     * @return the number of Wumpi killed
+     */
+    public static int getWumpiKilled() {
+        return wumpiKilled.get();
+    }
+
+    /**
+     * Gold has been brought back
+     */
+    public static void goldRetrieved() {
+        goldRetrieved.incrementAndGet();
+        addPoints(GOLD_RETRIEVED_POINTS);
+    }
+
+    /**
+     * A Wumpus has been killed
+     */
+    public static void wumpusKilled() {
+        wumpiKilled.incrementAndGet();
+        addPoints(WUMPUS_KILLED_POINTS);
+    }
+
+    /**
+     * Add to the score, and show the new score
+     * 
+     * @param points
+     *            the points to add, negative to take points away
+     */
+    private static void addPoints(final int points) {
+        final int s = score.addAndGet(points);
+        final WumpiWorldDisplay d = display;
+        if (d != null) {
+            d.statusBar.setText("Score: " + s);
+        }
+        final SimulationRecorder recorder = GaaLauncher.getRecorder();
+        if (recorder != null) {
+            recorder.scoreChanged(s);
+        }
+    }
+
+    /**
+     * Points lost for each action
+     */
+    private static final int ACTION_POINTS = 1;
+
+    /**
+     * Points lost for each agent killed
+     */
+    private static final int AGENT_KILLED_POINTS = 1000;
+
+    /**
+     * Points lost for each communication
+     */
+    private static final int COMMUNICATION_POINTS = 1;
+
+    /**
+     * Points gained for each piece of gold brought back
+     */
+    private static final int GOLD_RETRIEVED_POINTS = 1000;
+
+    /**
+     * Points gained for each Wumpus killed
+     */
+    private static final int WUMPUS_KILLED_POINTS = 5000;
+
+    /**
+     * The number of actions taken
+     */
+    private static final AtomicInteger actions = new AtomicInteger();
+
+    /**
+     * The number of agents killed
+     */
+    private static final AtomicInteger agentsKilled = new AtomicInteger();
+
+    /**
+     * The number of communications
+     */
+    private static final AtomicInteger communications = new AtomicInteger();
+
+    /**
+     * The display, once one has been created
+     */
+    private static volatile WumpiWorldDisplay display = null;
+
+    /**
+     * The number of pieces of gold brought back
+     */
+    private static final AtomicInteger goldRetrieved = new AtomicInteger();
+
+    /**
+     * The score
+     */
+    private static final AtomicInteger score = new AtomicInteger();
+
+    /**
+     * The serialVersionUID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of Wumpi killed
+     */
+    private static final AtomicInteger wumpiKilled = new AtomicInteger();
+
+    /**
+     * The status bar the score is shown on
+     */
+    private final JTextField statusBar;
+}
@@ -0,0 +1,70 @@
+package edu.ksu.cis.macr.simulator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up, such as the number of times something happened
+ * 
+ * @author Kyle Hill
+ */
+public final class Counter implements Metric {
+    /**
+     * Constructs a new Counter
+     * 
+     * @param n
+     *            the counter's name
+     */
+    Counter(final String n) {
+        name = n;
+    }
+
+    /**
+     * Add to the count
+     * 
+     * @param n
+     *            the amount to add
+     */
+    public void add(final long n) {
+        count.addAndGet(n);
+    }
+
+    @Override
+    public void appendTo(final StringBuilder out, final boolean json) {
+        if (json) {
+            out.append("{\"type\": \"counter\", \"count\": ").append(count.get()).append('}');
+        } else {
+            out.append("count=").append(count.get());
+        }
+    }
+
+    /**
+     * Get the count
+     * 
+     * @return the count
+     */
+    public long get() {
+        return count.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Add one to the count
+     */
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    /**
+     * The count
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The counter's name
+     */
+    private final String name;
+}
@@ -0,0 +1,143 @@
+package edu.ksu.cis.macr.simulator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The distribution of a value that is recorded many times, such as the number
+ * of nodes a search expands. Values are counted in buckets by their number of
+ * bits, so recording one is a few atomic adds, and percentiles are accurate to
+ * within a factor of two.
+ * 
+ * @author Kyle Hill
+ */
+public final class Histogram implements Metric {
+    /**
+     * Constructs a new Histogram
+     * 
+     * @param n
+     *            the histogram's name
+     * @param u
+     *            the unit values are recorded in, null if they have none
+     */
+    Histogram(final String n, final String u) {
+        name = n;
+        unit = u;
+    }
+
+    @Override
+    public void appendTo(final StringBuilder out, final boolean json) {
+        // Values are read one at a time, so a snapshot taken while values are
+        // being recorded may be very slightly inconsistent
+        final long n = count.get();
+        final long total = sum.get();
+        final String[] keys = { "count", "sum", "mean", "p50", "p90", "p99", "max" };
+        final long[] values = { n, total, (n == 0) ? 0 : (total / n), percentile(0.5), percentile(0.9), percentile(0.99), max.get() };
+
+        if (json) {
+            out.append("{\"type\": \"histogram\"");
+            if (unit != null) {
+                out.append(", \"unit\": \"").append(unit).append('"');
+            }
+            for (int k = 0; k < keys.length; k++) {
+                out.append(", \"").append(keys[k]).append("\": ").append(values[k]);
+            }
+            out.append('}');
+        } else {
+            for (int k = 0; k < keys.length; k++) {
+                out.append((k == 0) ? "" : " ").append(keys[k]).append('=').append(values[k]);
+            }
+            if (unit != null) {
+                out.append(" unit=").append(unit);
+            }
+        }
+    }
+
+    /**
+     * Get the number of values recorded
+     * 
+     * @return the number of values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Estimate the value the given fraction of recorded values are no greater
+     * than
+     * 
+     * @param q
+     *            the fraction, between 0 and 1
+     * @return the value, rounded up to one less than a power of two, 0 if
+     *         nothing has been recorded
+     */
+    public long percentile(final double q) {
+        final long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int b = 0; b < buckets.length(); b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) {
+                return Math.min(max.get(), (b == 64) ? Long.MAX_VALUE : ((1L << b) - 1));
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Record a value
+     * 
+     * @param value
+     *            the value, which should not be negative
+     */
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+
+        long m = max.get();
+        while ((v > m) && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * The number of values recorded with each number of bits
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+    /**
+     * The number of values recorded
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The largest value recorded
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * The histogram's name
+     */
+    private final String name;
+
+    /**
+     * The total of the values recorded
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * The unit values are recorded in, null if they have none
+     */
+    private final String unit;
+}
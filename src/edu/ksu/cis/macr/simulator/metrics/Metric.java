@@ -0,0 +1,26 @@
+package edu.ksu.cis.macr.simulator.metrics;
+
+/**
+ * A named measurement kept by {@link Metrics}
+ * 
+ * @author Kyle Hill
+ */
+public interface Metric {
+    /**
+     * Write the metric's current values, without its name
+     * 
+     * @param out
+     *            where to write the values
+     * @param json
+     *            true to write a JSON object, false to write space separated
+     *            key=value pairs
+     */
+    void appendTo(StringBuilder out, boolean json);
+
+    /**
+     * Get the metric's name
+     * 
+     * @return the name
+     */
+    String getName();
+}
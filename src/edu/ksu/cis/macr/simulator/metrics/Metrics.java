@@ -0,0 +1,234 @@
+package edu.ksu.cis.macr.simulator.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registry of every metric kept by the simulation, and the means of
+ * dumping them.
+ * <p>
+ * Metrics are only kept when the gaa.metrics system property is true. The
+ * switch is a constant, so when it is off the JIT removes every guarded
+ * measurement and the simulation pays nothing for them. Metrics are looked up
+ * once, usually into static fields, and are lock free to update afterwards.
+ * <p>
+ * While the simulation runs, the metrics are dumped every gaa.metrics.period
+ * seconds (10 by default), and once more as the JVM exits. They are dumped as
+ * text, or as JSON if gaa.metrics.format is json, to the file given by
+ * gaa.metrics.file, which is replaced each time, or to standard output.
+ * 
+ * @author Kyle Hill
+ */
+public final class Metrics {
+    /**
+     * Constructor
+     */
+    private Metrics() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Get the counter with the given name, creating it if needed
+     * 
+     * @param name
+     *            the counter's name
+     * @return the counter
+     * @throws IllegalArgumentException
+     *             if a metric of another kind has the name
+     */
+    public static Counter counter(final String name) {
+        final Metric metric = register(new Counter(name));
+        if (!(metric instanceof Counter)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a counter");
+        }
+        return (Counter) metric;
+    }
+
+    /**
+     * Write every metric's current values, in order of name
+     * 
+     * @param json
+     *            true to write a JSON object keyed by name, false to write a
+     *            line of text per metric
+     * @return the metrics
+     */
+    public static String dump(final boolean json) {
+        final Map<String, Metric> sorted = new TreeMap<String, Metric>(METRICS);
+        final StringBuilder out = new StringBuilder();
+        if (json) {
+            out.append("{\n");
+        }
+        int k = 0;
+        for (final Metric metric : sorted.values()) {
+            if (json) {
+                out.append("  \"").append(metric.getName()).append("\": ");
+                metric.appendTo(out, true);
+                out.append((++k < sorted.size()) ? ",\n" : "\n");
+            } else {
+                out.append(metric.getName()).append(' ');
+                metric.appendTo(out, false);
+                out.append('\n');
+            }
+        }
+        if (json) {
+            out.append("}\n");
+        }
+        return out.toString();
+    }
+
+    /**
+     * Get the histogram with the given name, creating it if needed
+     * 
+     * @param name
+     *            the histogram's name
+     * @return the histogram
+     * @throws IllegalArgumentException
+     *             if a metric of another kind has the name
+     */
+    public static Histogram histogram(final String name) {
+        final Metric metric = register(new Histogram(name, null));
+        if (!(metric instanceof Histogram)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a histogram");
+        }
+        return (Histogram) metric;
+    }
+
+    /**
+     * Start dumping the metrics periodically, as the system properties
+     * describe, if metrics are being kept
+     */
+    public static synchronized void startReporting() {
+        if (!ENABLED || (reporter != null)) {
+            return;
+        }
+
+        final String fileName = System.getProperty(FILE_PROPERTY);
+        final File file = (fileName == null) ? null : new File(fileName);
+        final boolean json = "json".equalsIgnoreCase(System.getProperty(FORMAT_PROPERTY));
+        final long period = Long.getLong(PERIOD_PROPERTY, DEFAULT_PERIOD);
+        final Runnable report = new Runnable() {
+            @Override
+            public void run() {
+                write(file, dump(json));
+            }
+        };
+
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Metrics Reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(report, period, period, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(report, "Metrics Shutdown"));
+    }
+
+    /**
+     * Get the timer with the given name, creating it if needed
+     * 
+     * @param name
+     *            the timer's name
+     * @return the timer
+     * @throws IllegalArgumentException
+     *             if a metric of another kind has the name
+     */
+    public static Timer timer(final String name) {
+        final Metric metric = register(new Timer(name));
+        if (!(metric instanceof Timer)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a timer");
+        }
+        return (Timer) metric;
+    }
+
+    /**
+     * Add a metric, unless one with the same name already exists
+     * 
+     * @param metric
+     *            the metric
+     * @return the metric with the name
+     */
+    private static Metric register(final Metric metric) {
+        final Metric existing = METRICS.putIfAbsent(metric.getName(), metric);
+        return (existing == null) ? metric : existing;
+    }
+
+    /**
+     * Write a dump of the metrics
+     * 
+     * @param file
+     *            the file to replace, null to write to standard output
+     * @param dump
+     *            the dump
+     */
+    private static synchronized void write(final File file, final String dump) {
+        if (file == null) {
+            System.out.print(dump);
+            return;
+        }
+
+        // Write to the side first, so the file is never seen half written
+        final File temporary = new File(file.getPath() + ".tmp");
+        try {
+            final Writer out = new FileWriter(temporary);
+            try {
+                out.write(dump);
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!temporary.renameTo(file)) {
+                System.err.println("Unable to write metrics file: " + file.getPath());
+            }
+        } catch (final IOException e) {
+            System.err.println("Unable to write metrics file: " + file.getPath());
+        }
+    }
+
+    /**
+     * true if metrics are being kept. Every measurement should be guarded by
+     * this, so that it costs nothing when metrics are off.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("gaa.metrics");
+
+    /**
+     * The number of seconds between dumps, when not given
+     */
+    private static final long DEFAULT_PERIOD = 10;
+
+    /**
+     * The system property giving the file to dump to
+     */
+    private static final String FILE_PROPERTY = "gaa.metrics.file";
+
+    /**
+     * The system property giving the format to dump in, text or json
+     */
+    private static final String FORMAT_PROPERTY = "gaa.metrics.format";
+
+    /**
+     * Every metric, by name
+     */
+    private static final ConcurrentMap<String, Metric> METRICS = new ConcurrentHashMap<String, Metric>();
+
+    /**
+     * The system property giving the number of seconds between dumps
+     */
+    private static final String PERIOD_PROPERTY = "gaa.metrics.period";
+
+    /**
+     * The thread that dumps the metrics, null if it has not been started
+     */
+    private static ScheduledExecutorService reporter = null;
+}
@@ -0,0 +1,61 @@
+package edu.ksu.cis.macr.simulator.metrics;
+
+/**
+ * The distribution of how long something takes, in nanoseconds. Callers take
+ * the start time themselves, only when {@link Metrics#ENABLED} is true:
+ * 
+ * <pre>
+ * final long start = Metrics.ENABLED ? System.nanoTime() : 0;
+ * ...
+ * if (Metrics.ENABLED) {
+ *     TIMER.stop(start);
+ * }
+ * </pre>
+ * 
+ * @author Kyle Hill
+ */
+public final class Timer implements Metric {
+    /**
+     * Constructs a new Timer
+     * 
+     * @param n
+     *            the timer's name
+     */
+    Timer(final String n) {
+        times = new Histogram(n, "ns");
+    }
+
+    @Override
+    public void appendTo(final StringBuilder out, final boolean json) {
+        times.appendTo(out, json);
+    }
+
+    @Override
+    public String getName() {
+        return times.getName();
+    }
+
+    /**
+     * Get the distribution of the times recorded
+     * 
+     * @return the times, in nanoseconds
+     */
+    public Histogram getTimes() {
+        return times;
+    }
+
+    /**
+     * Record the time since the given start
+     * 
+     * @param start
+     *            the start time, as returned by System.nanoTime()
+     */
+    public void stop(final long start) {
+        times.record(System.nanoTime() - start);
+    }
+
+    /**
+     * The times recorded
+     */
+    private final Histogram times;
+}
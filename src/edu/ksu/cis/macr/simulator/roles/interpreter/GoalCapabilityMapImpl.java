@@ -11,6 +11,8 @@ import java.util.Map;
 import edu.ksu.cis.macr.goal.model.InstanceParameters;
 import edu.ksu.cis.macr.organization.model.InstanceGoal;
 import edu.ksu.cis.macr.organization.model.identifiers.StringIdentifier;
+import edu.ksu.cis.macr.simulator.metrics.Metrics;
+import edu.ksu.cis.macr.simulator.metrics.Timer;
 
 /**
  * A Goal Capability Map
@@ -33,13 +35,16 @@ public class GoalCapabilityMapImpl implements GoalCapabilityMap {
          *            the capability
          * @param m
          *            the method
+         * @param t
+         *            the timer for invocations of the method
          */
-        public CapabilityMapEntry(final Method m, final Object c) {
+        public CapabilityMapEntry(final Method m, final Object c, final Timer t) {
             if ((m == null) || (c == null)) {
                 throw new IllegalArgumentException();
             }
             method = m;
             capability = c;
+            timer = t;
         }
 
         /**
@@ -60,6 +65,15 @@ public class GoalCapabilityMapImpl implements GoalCapabilityMap {
             return method;
         }
 
+        /**
+         * Returns the timer for invocations of this entry's method.
+         * 
+         * @return the timer.
+         */
+        public Timer getTimer() {
+            return timer;
+        }
+
         /**
          * This entry's capability.
          */
@@ -69,6 +83,11 @@ public class GoalCapabilityMapImpl implements GoalCapabilityMap {
          * This entry's method.
          */
         private final Method method;
+
+        /**
+         * The timer for invocations of this entry's method.
+         */
+        private final Timer timer;
     }
 
     @Override
@@ -76,7 +95,7 @@ public class GoalCapabilityMapImpl implements GoalCapabilityMap {
         if ((goalName == null) || (goalName.length() < 1) || (method == null) || (capability == null)) {
             throw new IllegalArgumentException();
         }
-        map.put(goalName, new CapabilityMapEntry(method, capability));
+        map.put(goalName, new CapabilityMapEntry(method, capability, Metrics.timer("goal." + goalName + ".time")));
     }
 
     @Override
@@ -109,7 +128,15 @@ public class GoalCapabilityMapImpl implements GoalCapabilityMap {
             }
 
             // Invoke the method call
-            return method.invoke(entry.getCapability(), actualParameters.toArray());
+            if (!Metrics.ENABLED) {
+                return method.invoke(entry.getCapability(), actualParameters.toArray());
+            }
+            final long start = System.nanoTime();
+            try {
+                return method.invoke(entry.getCapability(), actualParameters.toArray());
+            } finally {
+                entry.getTimer().stop(start);
+            }
         }
         throw new NoSuchMethodException();
     }